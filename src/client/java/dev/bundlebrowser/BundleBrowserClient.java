@@ -1,6 +1,28 @@
 package dev.bundlebrowser;
 
+import com.mojang.blaze3d.platform.InputConstants;
+import dev.bundlebrowser.config.BundleBrowserConfig;
+import dev.bundlebrowser.config.PacingStore;
+import dev.bundlebrowser.config.UsageStore;
+import dev.bundlebrowser.metrics.BundleMetrics;
+import dev.bundlebrowser.metrics.MetricsOverlay;
+import dev.bundlebrowser.operation.InputPacer;
+import dev.bundlebrowser.operation.JobScheduler;
+import dev.bundlebrowser.operation.OperationRunner;
+import dev.bundlebrowser.util.BundleIndex;
+import dev.bundlebrowser.util.MenuSlotEvents;
 import net.fabricmc.api.ClientModInitializer;
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
+import net.fabricmc.fabric.api.client.keymapping.v1.KeyMappingHelper;
+import net.fabricmc.fabric.api.client.networking.v1.ClientPlayConnectionEvents;
+import net.minecraft.client.KeyMapping;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.gui.GuiGraphicsExtractor;
+import net.minecraft.client.multiplayer.PlayerInfo;
+import net.minecraft.client.multiplayer.ServerData;
+import net.minecraft.client.player.LocalPlayer;
+import net.minecraft.resources.Identifier;
+import org.lwjgl.glfw.GLFW;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -9,8 +31,137 @@ public class BundleBrowserClient implements ClientModInitializer {
     public static final String MOD_ID = "bundlebrowser";
     public static final Logger LOGGER = LoggerFactory.getLogger(MOD_ID);
 
+    private static BundleBrowserConfig config = new BundleBrowserConfig();
+    private static PacingStore pacingStore;
+    private static UsageStore usage;
+    private static InputPacer pacer;
+    private static OperationRunner operations;
+    private static JobScheduler jobs;
+    private static String currentServer = "singleplayer";
+    private static KeyMapping pullKey;
+    private static KeyMapping metricsKey;
+    // Bundles in the player's inventory, for whichever menu the player has open
+    private static BundleIndex bundleIndex;
+
+    public static BundleBrowserConfig config() {
+        return config;
+    }
+
+    public static OperationRunner operations() {
+        return operations;
+    }
+
+    /** Multi-bundle jobs (merge, split, fill), run one at a time on top of {@link #operations}. */
+    public static JobScheduler jobs() {
+        return jobs;
+    }
+
+    public static UsageStore usage() {
+        return usage;
+    }
+
+    /** Pulls the hovered item out of whichever bundle holds it shallowest; works in any container screen. */
+    public static KeyMapping pullKey() {
+        return pullKey;
+    }
+
+    /** Toggles the operation metrics overlay; works in container screens and the browser. */
+    public static KeyMapping metricsKey() {
+        return metricsKey;
+    }
+
+    /**
+     * Operation metrics: running totals, recent operations and a listener hook, for other mods
+     * as much as for the overlay. The same as {@link BundleMetrics#get}.
+     */
+    public static BundleMetrics metrics() {
+        return BundleMetrics.get();
+    }
+
+    /** Counts the frame and draws the metrics overlay if it is on; screens call this last when rendering. */
+    public static void renderMetricsOverlay(GuiGraphicsExtractor context) {
+        BundleMetrics.get().onFrame();
+        if (MetricsOverlay.isVisible()) {
+            MetricsOverlay.render(context, Minecraft.getInstance().font, pacer.rate(), pacer.rttTicks());
+        }
+    }
+
+    /** The index for the player's open menu, or null when there is no player. */
+    public static BundleIndex bundleIndex() {
+        return bundleIndex;
+    }
+
     @Override
     public void onInitializeClient() {
+        config = BundleBrowserConfig.load();
+        pacingStore = PacingStore.load();
+        usage = UsageStore.load();
+        pacer = new InputPacer(config.burstInputsPerTick(), config.maxInputsPerTick(), config.adaptivePacing());
+        operations = new OperationRunner(pacer);
+        jobs = new JobScheduler(operations);
+        KeyMapping.Category category = KeyMapping.Category.register(Identifier.fromNamespaceAndPath(MOD_ID, "main"));
+        pullKey = KeyMappingHelper.registerKeyMapping(new KeyMapping(
+                "key.bundlebrowser.pull", InputConstants.Type.KEYSYM, GLFW.GLFW_KEY_G, category));
+        metricsKey = KeyMappingHelper.registerKeyMapping(new KeyMapping(
+                "key.bundlebrowser.metrics", InputConstants.Type.KEYSYM, GLFW.GLFW_KEY_F7, category));
+        MetricsOverlay.setVisible(config.showMetricsOverlay());
+
+        ClientTickEvents.START_CLIENT_TICK.register(client -> {
+            pacer.onTick();
+            sampleLatency(client);
+        });
+        ClientTickEvents.END_CLIENT_TICK.register(client -> {
+            operations.tick();
+            // A stage that finished just now hands over to the next within the same tick
+            jobs.tick(client);
+            updateBundleIndex(client);
+        });
+
+        // Each server gets the rate learned for it last time instead of relearning from scratch
+        ClientPlayConnectionEvents.JOIN.register((handler, sender, client) -> {
+            currentServer = serverAddress(client);
+            pacer.reset(pacingStore.rateFor(currentServer, config.burstInputsPerTick()));
+        });
+        // The address is captured on join; by disconnect the client may already have dropped it
+        ClientPlayConnectionEvents.DISCONNECT.register((handler, client) -> {
+            if (config.adaptivePacing()) {
+                pacingStore.remember(currentServer, pacer.rate());
+            }
+            usage.save();
+        });
+
         LOGGER.info("Bundle Browser initialized! Right-click any bundle in your inventory to open it.");
     }
+
+    /** Follows the player's open menu, rebuilding the index only when that menu changes. */
+    private static void updateBundleIndex(Minecraft client) {
+        LocalPlayer player = client.player;
+        if (player == null) {
+            if (bundleIndex != null) {
+                MenuSlotEvents.unregister(bundleIndex);
+                bundleIndex = null;
+            }
+            return;
+        }
+        if (bundleIndex == null || bundleIndex.menu() != player.containerMenu) {
+            if (bundleIndex != null) {
+                MenuSlotEvents.unregister(bundleIndex);
+            }
+            bundleIndex = BundleIndex.forMenu(player.containerMenu, player);
+            MenuSlotEvents.register(bundleIndex);
+        }
+    }
+
+    private static void sampleLatency(Minecraft client) {
+        if (client.player == null || client.getConnection() == null) return;
+        PlayerInfo info = client.getConnection().getPlayerInfo(client.player.getUUID());
+        if (info != null) {
+            pacer.sampleRtt(info.getLatency());
+        }
+    }
+
+    private static String serverAddress(Minecraft client) {
+        ServerData server = client.getCurrentServer();
+        return server != null ? server.ip : "singleplayer";
+    }
 }
@@ -0,0 +1,116 @@
+package dev.bundlebrowser.config;
+
+import dev.bundlebrowser.BundleBrowserClient;
+import dev.bundlebrowser.operation.InputPacer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import net.fabricmc.loader.api.FabricLoader;
+
+/**
+ * Settings read from config/bundlebrowser.properties. A missing or unreadable file falls
+ * back to defaults and is rewritten, so a bad edit can never stop the mod from loading.
+ */
+public class BundleBrowserConfig {
+    private static final String FILE_NAME = BundleBrowserClient.MOD_ID + ".properties";
+
+    // Hard limit regardless of what the file says; well under common anti-spam thresholds
+    public static final int INPUT_CEILING = 32;
+
+    /** Container inputs sent per client tick while an operation runs (starting rate when adaptive). */
+    private int burstInputsPerTick = 4;
+    /** Upper bound for burstInputsPerTick; keep it under the server's packet-rate limit. */
+    private int maxInputsPerTick = 8;
+    /** Tune the rate per server from how it reacts, and remember what was learned. */
+    private boolean adaptivePacing = true;
+    /** Leave a single extracted item on the cursor, as vanilla does, instead of placing it. */
+    private boolean keepTargetOnCursor = false;
+    /** Start with the operation metrics overlay shown; its key toggles it either way. */
+    private boolean showMetricsOverlay = false;
+    /** Write every operation's clicks and slot updates to bundlebrowser-traces/ for replay. */
+    private boolean recordTraces = false;
+
+    public int burstInputsPerTick() {
+        return burstInputsPerTick;
+    }
+
+    public int maxInputsPerTick() {
+        return maxInputsPerTick;
+    }
+
+    public boolean adaptivePacing() {
+        return adaptivePacing;
+    }
+
+    public boolean keepTargetOnCursor() {
+        return keepTargetOnCursor;
+    }
+
+    public boolean showMetricsOverlay() {
+        return showMetricsOverlay;
+    }
+
+    public boolean recordTraces() {
+        return recordTraces;
+    }
+
+    public static BundleBrowserConfig load() {
+        BundleBrowserConfig config = new BundleBrowserConfig();
+        Path path = FabricLoader.getInstance().getConfigDir().resolve(FILE_NAME);
+
+        if (Files.isRegularFile(path)) {
+            Properties properties = new Properties();
+            try (Reader reader = Files.newBufferedReader(path)) {
+                properties.load(reader);
+                config.burstInputsPerTick = readInt(properties, "burstInputsPerTick", config.burstInputsPerTick);
+                config.maxInputsPerTick = readInt(properties, "maxInputsPerTick", config.maxInputsPerTick);
+                config.adaptivePacing = readBoolean(properties, "adaptivePacing", config.adaptivePacing);
+                config.keepTargetOnCursor = readBoolean(properties, "keepTargetOnCursor", config.keepTargetOnCursor);
+                config.showMetricsOverlay = readBoolean(properties, "showMetricsOverlay", config.showMetricsOverlay);
+                config.recordTraces = readBoolean(properties, "recordTraces", config.recordTraces);
+            } catch (IOException | IllegalArgumentException e) {
+                BundleBrowserClient.LOGGER.warn("Could not read {}, using defaults", path, e);
+            }
+        }
+
+        // Below the pacer's floor, one pick-up/place step would no longer fit in a tick
+        config.maxInputsPerTick = Math.clamp(config.maxInputsPerTick, InputPacer.MIN_INPUTS_PER_TICK, INPUT_CEILING);
+        config.burstInputsPerTick = Math.clamp(config.burstInputsPerTick, InputPacer.MIN_INPUTS_PER_TICK,
+                config.maxInputsPerTick);
+
+        config.save(path);
+        return config;
+    }
+
+    private void save(Path path) {
+        Properties properties = new Properties();
+        properties.setProperty("burstInputsPerTick", Integer.toString(burstInputsPerTick));
+        properties.setProperty("maxInputsPerTick", Integer.toString(maxInputsPerTick));
+        properties.setProperty("adaptivePacing", Boolean.toString(adaptivePacing));
+        properties.setProperty("keepTargetOnCursor", Boolean.toString(keepTargetOnCursor));
+        properties.setProperty("showMetricsOverlay", Boolean.toString(showMetricsOverlay));
+        properties.setProperty("recordTraces", Boolean.toString(recordTraces));
+        try {
+            Files.createDirectories(path.getParent());
+            try (Writer writer = Files.newBufferedWriter(path)) {
+                properties.store(writer, "Bundle Browser settings (inputs are container clicks sent to the server)");
+            }
+        } catch (IOException e) {
+            BundleBrowserClient.LOGGER.warn("Could not write {}", path, e);
+        }
+    }
+
+    private static int readInt(Properties properties, String key, int fallback) {
+        String value = properties.getProperty(key);
+        return value == null ? fallback : Integer.parseInt(value.trim());
+    }
+
+    private static boolean readBoolean(Properties properties, String key, boolean fallback) {
+        String value = properties.getProperty(key);
+        return value == null ? fallback : Boolean.parseBoolean(value.trim());
+    }
+}
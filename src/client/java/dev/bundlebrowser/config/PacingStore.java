@@ -0,0 +1,62 @@
+package dev.bundlebrowser.config;
+
+import dev.bundlebrowser.BundleBrowserClient;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Properties;
+import net.fabricmc.loader.api.FabricLoader;
+
+/**
+ * Input rates learned per server address, kept in config/bundlebrowser-pacing.properties
+ * so a server's tolerance only has to be discovered once.
+ */
+public class PacingStore {
+    private static final String FILE_NAME = BundleBrowserClient.MOD_ID + "-pacing.properties";
+
+    private final Path path;
+    private final Properties rates = new Properties();
+
+    private PacingStore(Path path) {
+        this.path = path;
+    }
+
+    public static PacingStore load() {
+        PacingStore store = new PacingStore(FabricLoader.getInstance().getConfigDir().resolve(FILE_NAME));
+        if (Files.isRegularFile(store.path)) {
+            try (Reader reader = Files.newBufferedReader(store.path)) {
+                store.rates.load(reader);
+            } catch (IOException | IllegalArgumentException e) {
+                BundleBrowserClient.LOGGER.warn("Could not read {}, relearning pacing", store.path, e);
+            }
+        }
+        return store;
+    }
+
+    /** The learned rate for this server, or the fallback if it has never been measured. */
+    public double rateFor(String serverAddress, double fallback) {
+        String value = rates.getProperty(serverAddress);
+        if (value == null) return fallback;
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    public void remember(String serverAddress, double rate) {
+        rates.setProperty(serverAddress, String.format(Locale.ROOT, "%.2f", rate));
+        try {
+            Files.createDirectories(path.getParent());
+            try (Writer writer = Files.newBufferedWriter(path)) {
+                rates.store(writer, "Bundle Browser learned input rates (inputs per tick) per server");
+            }
+        } catch (IOException e) {
+            BundleBrowserClient.LOGGER.warn("Could not write {}", path, e);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package dev.bundlebrowser.config;
+
+import dev.bundlebrowser.BundleBrowserClient;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import net.fabricmc.loader.api.FabricLoader;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.world.item.Item;
+
+/**
+ * How often each item type has been taken out of a bundle, kept in
+ * config/bundlebrowser-usage.properties for the "most used first" sort.
+ */
+public class UsageStore {
+    private static final String FILE_NAME = BundleBrowserClient.MOD_ID + "-usage.properties";
+
+    private final Path path;
+    private final Properties uses = new Properties();
+    private boolean dirty;
+
+    private UsageStore(Path path) {
+        this.path = path;
+    }
+
+    public static UsageStore load() {
+        UsageStore store = new UsageStore(FabricLoader.getInstance().getConfigDir().resolve(FILE_NAME));
+        if (Files.isRegularFile(store.path)) {
+            try (Reader reader = Files.newBufferedReader(store.path)) {
+                store.uses.load(reader);
+            } catch (IOException | IllegalArgumentException e) {
+                BundleBrowserClient.LOGGER.warn("Could not read {}, starting usage counts over", store.path, e);
+            }
+        }
+        return store;
+    }
+
+    public int uses(Item item) {
+        String value = uses.getProperty(key(item));
+        if (value == null) return 0;
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    public void recordUse(Item item) {
+        uses.setProperty(key(item), Integer.toString(uses(item) + 1));
+        dirty = true;
+    }
+
+    /** Writes the counts if anything changed since the last save. */
+    public void save() {
+        if (!dirty) return;
+        dirty = false;
+        try {
+            Files.createDirectories(path.getParent());
+            try (Writer writer = Files.newBufferedWriter(path)) {
+                uses.store(writer, "Bundle Browser extractions per item type");
+            }
+        } catch (IOException e) {
+            BundleBrowserClient.LOGGER.warn("Could not write {}", path, e);
+        }
+    }
+
+    private static String key(Item item) {
+        return BuiltInRegistries.ITEM.getKey(item).toString();
+    }
+}
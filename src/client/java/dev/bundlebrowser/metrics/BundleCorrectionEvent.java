@@ -0,0 +1,25 @@
+package dev.bundlebrowser.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** Flight Recorder event for a server correction or a replan inside a running bundle operation. */
+@Name("dev.bundlebrowser.Correction")
+@Label("Bundle Operation Correction")
+@Category("Bundle Browser")
+@Description("The server contradicted steps in flight, or the bundle changed and the operation replanned")
+@StackTrace(false)
+public class BundleCorrectionEvent extends jdk.jfr.Event {
+    @Label("Kind")
+    public String kind;
+
+    @Label("Replan")
+    @Description("True for a replan after the bundle changed, false for a server correction")
+    public boolean replan;
+
+    @Label("Steps In Flight")
+    public int stepsInFlight;
+}
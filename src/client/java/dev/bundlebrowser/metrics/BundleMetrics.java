@@ -0,0 +1,119 @@
+package dev.bundlebrowser.metrics;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Running totals over every bundle operation since the game started, the last few
+ * operations in full, and a hook for other mods. Read it through {@link #get}; all of it
+ * lives on the client thread, so read it from there too (a tick or render callback).
+ *
+ * A nested extraction counts as one operation: the inner operation working on the nested
+ * bundle records into its outer one's totals.
+ */
+public final class BundleMetrics {
+    private static final int RECENT_SIZE = 16;
+    private static final BundleMetrics INSTANCE = new BundleMetrics();
+
+    private final ArrayDeque<OperationStats> recent = new ArrayDeque<>();
+    private final List<Consumer<OperationStats>> listeners = new ArrayList<>();
+    private long frames;
+    private int running;
+    private long started;
+    private long completed;
+    private long failed;
+    private long aborted;
+    private long clicks;
+    private long corrections;
+    private long replans;
+
+    private BundleMetrics() {}
+
+    public static BundleMetrics get() {
+        return INSTANCE;
+    }
+
+    /** Called with the stats of every operation as it finishes, on the client thread. */
+    public void addListener(Consumer<OperationStats> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Consumer<OperationStats> listener) {
+        listeners.remove(listener);
+    }
+
+    /** Counts a rendered frame; the container screens and the browser call this once per frame. */
+    public void onFrame() {
+        frames++;
+    }
+
+    void onStarted() {
+        started++;
+        running++;
+    }
+
+    void record(OperationStats stats) {
+        running--;
+        if (stats.succeeded()) completed++; else failed++;
+        if (stats.aborted()) aborted++;
+        corrections += stats.corrections();
+        replans += stats.replans();
+        clicks += stats.clicks();
+        if (recent.size() == RECENT_SIZE) {
+            recent.removeFirst();
+        }
+        recent.addLast(stats);
+        for (Consumer<OperationStats> listener : List.copyOf(listeners)) {
+            listener.accept(stats);
+        }
+    }
+
+    public long frames() {
+        return frames;
+    }
+
+    /** Operations started and not yet finished, suspended ones included. */
+    public int running() {
+        return running;
+    }
+
+    public long started() {
+        return started;
+    }
+
+    public long completed() {
+        return completed;
+    }
+
+    public long failed() {
+        return failed;
+    }
+
+    public long aborted() {
+        return aborted;
+    }
+
+    public long clicks() {
+        return clicks;
+    }
+
+    public long corrections() {
+        return corrections;
+    }
+
+    public long replans() {
+        return replans;
+    }
+
+    /** The last operation to finish, or null before the first one has. */
+    public OperationStats last() {
+        return recent.peekLast();
+    }
+
+    /** The most recent finished operations, oldest first. */
+    public List<OperationStats> recent() {
+        return List.copyOf(recent);
+    }
+}
@@ -0,0 +1,58 @@
+package dev.bundlebrowser.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event spanning one bundle operation, from construction to its final step.
+ * Costs nothing unless a recording has it enabled; start one with
+ * {@code jcmd <pid> JFR.start} or {@code -XX:StartFlightRecording} and look under
+ * "Bundle Browser".
+ */
+@Name("dev.bundlebrowser.Operation")
+@Label("Bundle Operation")
+@Category("Bundle Browser")
+@Description("A bundle extraction, Empty All, reorder or job stage, with the inputs it sent")
+@StackTrace(false)
+public class BundleOperationEvent extends jdk.jfr.Event {
+    @Label("Kind")
+    public String kind;
+
+    @Label("Outcome")
+    public String outcome;
+
+    @Label("Clicks")
+    public int clicks;
+
+    @Label("Expected Clicks")
+    public int expectedClicks;
+
+    @Label("Ticks")
+    public int ticks;
+
+    @Label("Frames")
+    public int frames;
+
+    @Label("Server Updates")
+    public int serverUpdates;
+
+    @Label("Corrections")
+    public int corrections;
+
+    @Label("Retries")
+    public int retries;
+
+    @Label("Replans")
+    public int replans;
+
+    @Label("Aborted")
+    public boolean aborted;
+
+    @Label("First Click to Settled")
+    @Timespan(Timespan.NANOSECONDS)
+    public long clickToSettled;
+}
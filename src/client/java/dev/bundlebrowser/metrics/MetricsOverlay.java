@@ -0,0 +1,102 @@
+package dev.bundlebrowser.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import net.minecraft.client.gui.Font;
+import net.minecraft.client.gui.GuiGraphicsExtractor;
+import net.minecraft.network.chat.Component;
+
+/**
+ * A few lines of numbers in the top-left corner of container screens and the browser: what
+ * is running, the pacer's current rate and round trip, the totals so far and the last
+ * operation in full. A debug aid like F3, so the text is not translated.
+ */
+public final class MetricsOverlay {
+    private static final int MARGIN = 2;
+    private static final int PADDING = 2;
+
+    private static boolean visible;
+    // The numbers the lines were built from. Totals only move when an operation starts or
+    // finishes, and the live line only as shown (the rate to a tenth), so a frame that finds
+    // them unchanged formats nothing and measures nothing
+    private static int shownRunning = -1;
+    private static long shownRateTenths = -1;
+    private static int shownRtt = -1;
+    private static long shownStarted = -1;
+    private static long shownFinished = -1;
+    private static OperationStats shownLast;
+    private static final List<Component> lines = new ArrayList<>();
+    private static Component liveComponent = Component.empty();
+    private static int width;
+
+    private MetricsOverlay() {}
+
+    public static boolean isVisible() {
+        return visible;
+    }
+
+    public static void setVisible(boolean show) {
+        visible = show;
+    }
+
+    public static void toggle() {
+        visible = !visible;
+    }
+
+    public static void render(GuiGraphicsExtractor context, Font font, double inputsPerTick, int rttTicks) {
+        BundleMetrics metrics = BundleMetrics.get();
+        boolean changed = false;
+        long rateTenths = Math.round(inputsPerTick * 10);
+        if (metrics.running() != shownRunning || rateTenths != shownRateTenths || rttTicks != shownRtt) {
+            shownRunning = metrics.running();
+            shownRateTenths = rateTenths;
+            shownRtt = rttTicks;
+            liveComponent = Component.literal(String.format(Locale.ROOT,
+                    "Bundle Browser: %d running, %.1f inputs/tick, rtt %d ticks",
+                    shownRunning, rateTenths / 10.0, rttTicks));
+            changed = true;
+        }
+        long finished = metrics.completed() + metrics.failed();
+        if (metrics.started() != shownStarted || finished != shownFinished || metrics.last() != shownLast) {
+            shownStarted = metrics.started();
+            shownFinished = finished;
+            shownLast = metrics.last();
+            rebuild(metrics);
+            changed = true;
+        }
+        if (changed) {
+            width = font.width(liveComponent);
+            for (Component line : lines) {
+                width = Math.max(width, font.width(line));
+            }
+        }
+
+        int height = (lines.size() + 1) * font.lineHeight;
+        context.fill(MARGIN, MARGIN, MARGIN + width + PADDING * 2, MARGIN + height + PADDING * 2, 0x90000000);
+        int y = MARGIN + PADDING;
+        context.text(font, liveComponent, MARGIN + PADDING, y, 0xFFFFFFFF, false);
+        for (Component line : lines) {
+            y += font.lineHeight;
+            context.text(font, line, MARGIN + PADDING, y, 0xFFE0E0E0, false);
+        }
+    }
+
+    private static void rebuild(BundleMetrics metrics) {
+        lines.clear();
+        lines.add(Component.literal(String.format(Locale.ROOT,
+                "%d ops (%d done, %d failed, %d aborted), %d clicks, %d corrections, %d replans",
+                metrics.started(), metrics.completed(), metrics.failed(), metrics.aborted(),
+                metrics.clicks(), metrics.corrections(), metrics.replans())));
+        OperationStats last = metrics.last();
+        if (last == null) return;
+        lines.add(Component.literal(String.format(Locale.ROOT,
+                "last %s %s: %d/%d clicks, %d ticks, %d frames, %.0f ms to settle",
+                last.kind(), last.outcome(), last.clicks(), last.expectedClicks(), last.ticks(), last.frames(),
+                last.clickToSettledNanos() / 1e6)));
+        lines.add(Component.literal(String.format(Locale.ROOT,
+                "  %d server updates, %d corrections, %d retries, %d replans%s",
+                last.serverUpdates(), last.corrections(), last.retries(), last.replans(),
+                last.aborted() ? ", aborted" : "")));
+    }
+}
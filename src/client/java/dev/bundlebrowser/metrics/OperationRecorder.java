@@ -0,0 +1,99 @@
+package dev.bundlebrowser.metrics;
+
+/**
+ * Counts what one running operation does, and on finish hands the totals to
+ * {@link BundleMetrics} and commits them as a {@link BundleOperationEvent}. Owned by the
+ * operation and shared with the inner operation of a nested one, so the outer totals cover
+ * the whole sequence. Every call is a field update, so recording is always on.
+ */
+public final class OperationRecorder {
+    private final String kind;
+    private final BundleOperationEvent event = new BundleOperationEvent();
+    private final long startFrame;
+
+    private int clicks;
+    private int serverUpdates;
+    private int corrections;
+    private int retries;
+    private int replans;
+    private boolean aborted;
+    private long firstClickNanos;
+    // The later of the last click and the last slot update seen; the operation's final state
+    private long settledNanos;
+
+    public OperationRecorder(String kind) {
+        this.kind = kind;
+        this.startFrame = BundleMetrics.get().frames();
+        BundleMetrics.get().onStarted();
+        event.begin();
+    }
+
+    public String kind() {
+        return kind;
+    }
+
+    public void onClick() {
+        long now = System.nanoTime();
+        if (clicks++ == 0) {
+            firstClickNanos = now;
+        }
+        settledNanos = now;
+    }
+
+    public void onServerUpdate() {
+        serverUpdates++;
+        settledNanos = System.nanoTime();
+    }
+
+    public void onCorrection(int stepsInFlight) {
+        corrections++;
+        commitCorrection(false, stepsInFlight);
+    }
+
+    public void onReplan(int stepsInFlight) {
+        replans++;
+        commitCorrection(true, stepsInFlight);
+    }
+
+    public void onRetry() {
+        retries++;
+    }
+
+    public void onAbort() {
+        aborted = true;
+    }
+
+    private void commitCorrection(boolean replan, int stepsInFlight) {
+        BundleCorrectionEvent correction = new BundleCorrectionEvent();
+        if (!correction.shouldCommit()) return;
+        correction.kind = kind;
+        correction.replan = replan;
+        correction.stepsInFlight = stepsInFlight;
+        correction.commit();
+    }
+
+    /** Ends the recording; called once, by the operation that created the recorder. */
+    public OperationStats finish(String outcome, int expectedClicks, int ticks) {
+        OperationStats stats = new OperationStats(kind, outcome, clicks, expectedClicks, ticks,
+                (int) (BundleMetrics.get().frames() - startFrame), serverUpdates, corrections, retries, replans,
+                aborted, clicks == 0 ? 0 : settledNanos - firstClickNanos);
+        event.end();
+        if (event.shouldCommit()) {
+            event.kind = stats.kind();
+            event.outcome = stats.outcome();
+            event.clicks = stats.clicks();
+            event.expectedClicks = stats.expectedClicks();
+            event.ticks = stats.ticks();
+            event.frames = stats.frames();
+            event.serverUpdates = stats.serverUpdates();
+            event.corrections = stats.corrections();
+            event.retries = stats.retries();
+            event.replans = stats.replans();
+            event.aborted = stats.aborted();
+            event.clickToSettled = stats.clickToSettledNanos();
+            event.commit();
+        }
+        BundleMetrics.get().record(stats);
+        return stats;
+    }
+}
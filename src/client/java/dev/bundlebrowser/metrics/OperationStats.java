@@ -0,0 +1,25 @@
+package dev.bundlebrowser.metrics;
+
+/**
+ * What one finished bundle operation cost, as handed to {@link BundleMetrics} listeners.
+ *
+ * @param kind what the operation did: extract, empty_all, empty_into, reorder, route or load, with
+ *             "nested_" in front when it reached into a bundle inside a bundle
+ * @param outcome DONE or FAILED
+ * @param clicks container inputs sent, including those of a nested inner operation
+ * @param expectedClicks inputs the plan was expected to cost, after any replans
+ * @param ticks client ticks from start to finish
+ * @param frames frames rendered over a container screen or the browser meanwhile
+ * @param serverUpdates menu updates the server sent while it ran; a silent server agreed
+ * @param corrections server updates that contradicted steps still in flight
+ * @param retries verifications that found steps lost to a correction
+ * @param replans times the bundle changed under the operation and the rest was planned again
+ * @param aborted whether it gave up on its plan and put everything back
+ * @param clickToSettledNanos from the first click to the last step confirmed; 0 if nothing was sent
+ */
+public record OperationStats(String kind, String outcome, int clicks, int expectedClicks, int ticks, int frames,
+        int serverUpdates, int corrections, int retries, int replans, boolean aborted, long clickToSettledNanos) {
+    public boolean succeeded() {
+        return "DONE".equals(outcome);
+    }
+}
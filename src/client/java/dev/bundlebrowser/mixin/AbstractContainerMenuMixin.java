@@ -0,0 +1,29 @@
+package dev.bundlebrowser.mixin;
+
+import dev.bundlebrowser.util.MenuSlotEvents;
+
+import java.util.List;
+import net.minecraft.world.inventory.AbstractContainerMenu;
+import net.minecraft.world.item.ItemStack;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+/**
+ * Reports server-driven slot updates. Both methods are only called from the client packet
+ * listener (set-slot and set-content packets); local click prediction writes slots directly.
+ */
+@Mixin(AbstractContainerMenu.class)
+public abstract class AbstractContainerMenuMixin {
+
+    @Inject(method = "setItem(IILnet/minecraft/world/item/ItemStack;)V", at = @At("TAIL"))
+    private void bundlebrowser$onSetItem(int slotId, int stateId, ItemStack stack, CallbackInfo ci) {
+        MenuSlotEvents.slotChanged((AbstractContainerMenu) (Object) this, slotId);
+    }
+
+    @Inject(method = "initializeContents", at = @At("TAIL"))
+    private void bundlebrowser$onInitializeContents(int stateId, List<ItemStack> items, ItemStack carried, CallbackInfo ci) {
+        MenuSlotEvents.contentsReplaced((AbstractContainerMenu) (Object) this);
+    }
+}
@@ -1,27 +1,41 @@
 package dev.bundlebrowser.mixin;
 
 import dev.bundlebrowser.BundleBrowserClient;
+import dev.bundlebrowser.metrics.MetricsOverlay;
+import dev.bundlebrowser.operation.BundleOperation;
+import dev.bundlebrowser.operation.ExtractionPlan;
+import dev.bundlebrowser.operation.MenuView;
 import dev.bundlebrowser.screen.BundleBrowserScreen;
 import dev.bundlebrowser.util.BundleHelper;
+import dev.bundlebrowser.util.BundleIndex;
 import net.minecraft.client.Minecraft;
+import net.minecraft.client.gui.GuiGraphicsExtractor;
 import net.minecraft.client.gui.screens.inventory.AbstractContainerScreen;
 import net.minecraft.client.gui.screens.inventory.CreativeModeInventoryScreen;
+import net.minecraft.client.input.KeyEvent;
 import net.minecraft.world.inventory.AbstractContainerMenu;
 import net.minecraft.world.inventory.ContainerInput;
 import net.minecraft.world.inventory.Slot;
 import net.minecraft.world.item.ItemStack;
 import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
 import org.spongepowered.asm.mixin.Unique;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
 
 /**
- * Mixin to intercept right-clicks on bundle slots and open our Bundle Browser.
+ * Mixin to intercept right-clicks on bundle slots and open our Bundle Browser, to pull
+ * the hovered item out of the player's bundles with the pull key, and to draw the metrics
+ * overlay over container screens.
  */
 @Mixin(AbstractContainerScreen.class)
 public abstract class HandledScreenMixin {
 
+    @Shadow
+    protected Slot hoveredSlot;
+
     @Unique
     private static boolean bundlebrowser$failureLogged = false;
 
@@ -76,4 +90,59 @@ public abstract class HandledScreenMixin {
             }
         }
     }
+
+    @Inject(method = "keyPressed(Lnet/minecraft/client/input/KeyEvent;)Z", at = @At("HEAD"), cancellable = true)
+    private void onKeyPressed(KeyEvent input, CallbackInfoReturnable<Boolean> cir) {
+        try {
+            if (BundleBrowserClient.pullKey().matches(input) && bundlebrowser$tryPull()) {
+                cir.setReturnValue(true);
+            } else if (BundleBrowserClient.metricsKey().matches(input)) {
+                MetricsOverlay.toggle();
+                cir.setReturnValue(true);
+            }
+        } catch (Exception e) {
+            if (!bundlebrowser$failureLogged) {
+                bundlebrowser$failureLogged = true;
+                BundleBrowserClient.LOGGER.error("Bundle browser failed to pull from a bundle, declining", e);
+            }
+        }
+    }
+
+    @Inject(method = "extractRenderState(Lnet/minecraft/client/gui/GuiGraphicsExtractor;IIF)V", at = @At("TAIL"))
+    private void onRender(GuiGraphicsExtractor context, int mouseX, int mouseY, float delta, CallbackInfo ci) {
+        try {
+            BundleBrowserClient.renderMetricsOverlay(context);
+        } catch (Exception e) {
+            if (!bundlebrowser$failureLogged) {
+                bundlebrowser$failureLogged = true;
+                BundleBrowserClient.LOGGER.error("Bundle browser failed to draw its metrics overlay", e);
+            }
+            MetricsOverlay.setVisible(false);
+        }
+    }
+
+    /** Extracts another copy of the hovered item from the bundle holding it shallowest. */
+    @Unique
+    private boolean bundlebrowser$tryPull() {
+        if (hoveredSlot == null || !hoveredSlot.hasItem()) return false;
+        if (((Object) this) instanceof CreativeModeInventoryScreen) return false;
+
+        Minecraft client = Minecraft.getInstance();
+        AbstractContainerMenu menu = ((AbstractContainerScreen<?>) (Object) this).getMenu();
+        if (client.player == null || client.gameMode == null || client.player.containerMenu != menu) return false;
+        if (!menu.getCarried().isEmpty() || BundleBrowserClient.operations().isBusy(menu)) return false;
+
+        BundleIndex index = BundleBrowserClient.bundleIndex();
+        if (index == null || index.menu() != menu) return false;
+        BundleIndex.Location location = index.locate(hoveredSlot.getItem());
+        if (location == null) return false;
+
+        // The shallowest copy needs the fewest pops; the strategy picks the cheapest clicks for it
+        BundleBrowserClient.LOGGER.debug("Pulling {} from the bundle in slot {} at depth {}",
+                hoveredSlot.getItem().getItem(), location.slotId(), location.depth());
+        BundleBrowserClient.usage().recordUse(hoveredSlot.getItem().getItem());
+        BundleBrowserClient.operations().start(BundleOperation.extract(MenuView.of(client, client.player, menu),
+                location.slotId(), ExtractionPlan.forTargets(location.depth()), () -> {}));
+        return true;
+    }
 }
@@ -0,0 +1,170 @@
+package dev.bundlebrowser.operation;
+
+import dev.bundlebrowser.BundleBrowserClient;
+import dev.bundlebrowser.util.BundleFingerprint;
+
+import java.util.List;
+import java.util.function.Supplier;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.player.LocalPlayer;
+import net.minecraft.world.inventory.AbstractContainerMenu;
+
+/**
+ * A multi-bundle job: the stages from one {@link JobPlanner} run, each a routed
+ * {@link BundleOperation}, started one at a time on the job's menu once the previous one is
+ * done. Like {@link MenuView#isOpen}, every stage first checks by identity that
+ * the job's menu is the open one, so a job whose menu went away waits for it to come back
+ * instead of clicking into another one.
+ *
+ * Each stage carries the fingerprint its source bundle should have when it starts. If the
+ * source changed in between (a stage that stopped early, a hopper, the player), the rest of
+ * the job is planned again from the inventory as it is, rather than run against stale routes.
+ */
+public final class BundleJob {
+    public enum State { QUEUED, RUNNING, DONE, CANCELLED, FAILED }
+
+    private static final int MAX_REPLANS = 3;
+
+    private final JobPlanner.Kind kind;
+    private final AbstractContainerMenu menu;
+    private final Supplier<List<JobPlanner.Stage>> planner;
+
+    private List<JobPlanner.Stage> stages;
+    private int expectedClicks;
+    private int replans;
+    private int waitingTicks;
+
+    private State state = State.QUEUED;
+    private int nextStage;
+    private int finishedClicks;
+    private BundleOperation current;
+    private boolean cancelRequested;
+
+    /**
+     * @param planner plans the job against the inventory as it is when called; called once
+     *                here and again whenever a stage finds its source changed
+     */
+    public BundleJob(JobPlanner.Kind kind, AbstractContainerMenu menu, Supplier<List<JobPlanner.Stage>> planner) {
+        this.kind = kind;
+        this.menu = menu;
+        this.planner = planner;
+        setStages(planner.get());
+    }
+
+    private void setStages(List<JobPlanner.Stage> planned) {
+        stages = List.copyOf(planned);
+        nextStage = 0;
+        int clicks = 0;
+        for (JobPlanner.Stage stage : stages) {
+            clicks += stage.expectedClicks();
+        }
+        expectedClicks = finishedClicks + clicks;
+    }
+
+    public JobPlanner.Kind kind() {
+        return kind;
+    }
+
+    public AbstractContainerMenu menu() {
+        return menu;
+    }
+
+    public State state() {
+        return state;
+    }
+
+    public boolean isFinished() {
+        return state == State.DONE || state == State.CANCELLED || state == State.FAILED;
+    }
+
+    public int stageCount() {
+        return stages.size();
+    }
+
+    /** Whether the plan had anything to move; an empty job finishes on its first tick. */
+    public boolean isEmpty() {
+        return stages.isEmpty();
+    }
+
+    /** Rough completion, 0 to 1, from inputs sent against inputs planned for the whole job. */
+    public float progress() {
+        if (expectedClicks == 0) return 1;
+        int sent = finishedClicks + (current != null ? current.inputsSent() : 0);
+        return Math.min(1, (float) sent / expectedClicks);
+    }
+
+    /** Stops after the running stage has put back what it stashed; no further stage starts. */
+    public void cancel() {
+        if (isFinished()) return;
+        cancelRequested = true;
+        if (current != null) {
+            current.cancel();
+        } else {
+            state = State.CANCELLED;
+        }
+    }
+
+    /** Starts the next stage once the running one is done; called once per client tick. */
+    public void tick(Minecraft client, OperationRunner runner) {
+        if (isFinished()) return;
+        if (current != null && !current.isFinished()) return;
+
+        if (current != null) {
+            finishedClicks += current.inputsSent();
+            boolean failed = current.phase() == BundleOperation.Phase.FAILED;
+            current = null;
+            if (failed) {
+                BundleBrowserClient.LOGGER.debug("Bundle job {} stopped: stage {} failed", kind, nextStage);
+                state = State.FAILED;
+                return;
+            }
+        }
+        if (cancelRequested) {
+            state = State.CANCELLED;
+            return;
+        }
+        if (nextStage == stages.size()) {
+            BundleBrowserClient.LOGGER.debug("Bundle job {} done: {} inputs sent, {} expected",
+                    kind, finishedClicks, expectedClicks);
+            state = State.DONE;
+            return;
+        }
+        LocalPlayer player = client.player;
+        if (player == null || client.gameMode == null) {
+            state = State.FAILED;
+            return;
+        }
+        if (player.containerMenu != menu) {
+            // Another screen is over the menu; its slots are still ours once it comes back
+            if (++waitingTicks >= BundleOperation.RESUME_TIMEOUT_TICKS) {
+                BundleBrowserClient.LOGGER.debug("Bundle job {} stopped: its menu did not come back", kind);
+                state = State.FAILED;
+            }
+            return;
+        }
+        waitingTicks = 0;
+        // Something else (the player, a single extraction) is using the cursor; wait for it
+        if (runner.isBusy(menu) || !menu.getCarried().isEmpty()) return;
+
+        JobPlanner.Stage stage = stages.get(nextStage);
+        if (BundleFingerprint.of(menu.getSlot(stage.sourceSlotId()).getItem()) != stage.sourceFingerprint()) {
+            if (++replans > MAX_REPLANS) {
+                BundleBrowserClient.LOGGER.debug("Bundle job {} stopped: the inventory keeps changing under it", kind);
+                state = State.FAILED;
+                return;
+            }
+            BundleBrowserClient.LOGGER.debug("Bundle job {}: stage {} source changed, replanning", kind, nextStage);
+            setStages(planner.get());
+            if (stages.isEmpty()) {
+                state = State.DONE;
+                return;
+            }
+            stage = stages.get(0);
+        }
+        nextStage++;
+        state = State.RUNNING;
+        current = BundleOperation.route(
+                MenuView.of(client, player, menu), stage.sourceSlotId(), stage.routes(), () -> {});
+        runner.start(current);
+    }
+}
@@ -0,0 +1,999 @@
+package dev.bundlebrowser.operation;
+
+import dev.bundlebrowser.BundleBrowserClient;
+import dev.bundlebrowser.metrics.OperationRecorder;
+import dev.bundlebrowser.metrics.OperationStats;
+import dev.bundlebrowser.trace.OperationTrace;
+import dev.bundlebrowser.util.BundleFingerprint;
+import dev.bundlebrowser.util.BundleHelper;
+import dev.bundlebrowser.util.BundleTree;
+import dev.bundlebrowser.util.MenuSlotEvents;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import net.minecraft.world.inventory.AbstractContainerMenu;
+import net.minecraft.world.item.ItemStack;
+
+/**
+ * One bundle operation (a planned extraction or Empty All) as an explicit state machine,
+ * advanced once per client tick by {@link OperationRunner}.
+ *
+ * Vanilla servers stay silent when a click matches the client's prediction and only send
+ * slot or full-content updates, each carrying a new menu stateId, when they disagree. So a
+ * step counts as acknowledged once a round trip has passed without the stateId moving. A
+ * stateId change while steps are in flight is a correction: the operation stops sending,
+ * waits for the server to go quiet, then checks every unconfirmed step against the now
+ * authoritative slots and redoes the ones that did not land.
+ *
+ * The inputs behind each step come from the {@link ClickStrategy} chosen for the plan. Slots
+ * are read and inputs sent through a {@link MenuView}, the game's open menu or a simulated one.
+ *
+ * A target inside a nested bundle is reached in one combined sequence: the outer bundle is
+ * unwound down to the nested one, an inner operation works on the nested bundle while it
+ * sits in a free slot, and then the nested bundle goes back first and everything above it
+ * after, leaving the outer bundle exactly as it was. That costs one unwind per level, with
+ * nothing popped twice.
+ *
+ * Before every pop the bundle is checked against a fingerprint of what the plan expects it
+ * to hold ({@link BundleFingerprint}). If something else changed it (a hopper, a plugin, a
+ * correction that moved more than our own steps), the rest of the plan is worked out again
+ * from what is there now, keeping the pops already made. If the menu goes away mid-operation
+ * the operation waits for it to come back and carries on from what it finds.
+ *
+ * A routed operation ({@link #route}) moves entries into other bundles instead of slots: each
+ * popped entry is left-clicked straight onto its target bundle, two inputs per entry with no
+ * stash in between. This is the building block of {@link BundleJob}.
+ *
+ * A load ({@link #insert}) runs the other way: the bundle is carried along an {@link InsertPlan}
+ * and left-clicked onto each planned inventory stack, one input per stack, then put back.
+ */
+public class BundleOperation {
+    // Verifications that found lost steps before the operation stops where it is
+    private static final int MAX_RETRIES = 3;
+    // Longest wait for the server to go quiet after a correction before verifying anyway
+    private static final int SETTLE_TIMEOUT_TICKS = 100;
+    // Replans before a bundle that keeps changing under the operation counts as a lost cause
+    private static final int MAX_REPLANS = 3;
+    /** How long a suspended operation waits for its menu to come back before giving up. */
+    public static final int RESUME_TIMEOUT_TICKS = 1200;
+
+    public enum Phase { EXTRACTING, RETURNING, ABORTING, SETTLING, SUSPENDED, DONE, FAILED }
+
+    private enum StepKind { TAKE_BUNDLE, POP, POP_TO_CURSOR, RETURN, PLACE_BUNDLE, INSERT }
+
+    // For a pop, the count before, which tells one that merged into a partial stack from one
+    // that never landed; for an insert, the count the slot should be down to
+    private record IssuedStep(StepKind kind, int slot, int tick, int count) {}
+
+    private final MenuView view;
+    private final int bundleSlotId;
+    private ExtractionPlan plan;
+    private ClickStrategy.Choice choice;
+    private final boolean carry;
+    private final boolean keepWhatFits;
+    private final Runnable onFinished;
+    private final SlotAllocator allocator;
+    // Pop positions of the nested bundles still to descend through below this one; empty
+    // when this operation works on the plan's own bundle
+    private final int[] innerPath;
+    private final ExtractionPlan leafPlan;
+    private final boolean leafKeepsWhatFits;
+    private final int innerEstimate;
+    // Empty All along a precomputed DestinationPlan; null to find destinations as it goes
+    private final DestinationPlan destinations;
+    // A reorder stashes every moved entry in an empty slot of its own; without enough of them
+    // it would run out partway and leave the bundle reshuffled, so it doesn't start at all
+    private final boolean lacksScratchSlots;
+
+    // Slots holding popped items, in pop order (index = pop position)
+    private final List<Integer> extractedSlots = new ArrayList<>();
+    // What each pop put into its slot, checked before taking it back
+    private final List<ItemStack> extractedStacks = new ArrayList<>();
+    // Extracted slots whose item merged into an existing stack and can't be picked up alone
+    private final BitSet mergedSlots = new BitSet();
+    // Destination slots holding another bundle, which popped entries were inserted into
+    private final BitSet bundleDestinations = new BitSet();
+    // Slots still to go back into the bundle, in return order
+    private final ArrayDeque<Integer> returnQueue = new ArrayDeque<>();
+    // Inventory stacks still to load into the carried bundle, in click order
+    private final ArrayDeque<InsertPlan.Insert> insertQueue = new ArrayDeque<>();
+    // Steps sent but not yet confirmed by a quiet round trip, oldest first
+    private final ArrayDeque<IssuedStep> unconfirmed = new ArrayDeque<>();
+
+    private Phase phase = Phase.EXTRACTING;
+    private Phase returnPhase = Phase.RETURNING;
+    private int popTarget;
+    private boolean returnsStarted;
+    private boolean bundleTaken;
+    private boolean bundlePlaced;
+    private boolean targetOnCursor;
+    private int ticks;
+    private int lastStateId;
+    private int settleStartTick;
+    private int lastServerUpdateTick;
+    private int lastSendTick;
+    private int retries;
+    private int inputsSent;
+    private boolean innerStarted;
+    private BundleOperation inner;
+    // The entries the plan was made against, from pop position fingerprintBase down, and the
+    // fingerprint of the bundle expected after each further pop
+    private List<ItemStack> expectedEntries;
+    private long[] expectedFingerprints;
+    private int fingerprintBase;
+    private int replans;
+    // A replan moved the entries the destination plan was made for; the rest find room as they go
+    private boolean destinationsStale;
+    private int suspendedAtTick;
+    // Shared with the inner operation of a nested one; only the owner finishes them
+    private final OperationRecorder recorder;
+    private final boolean ownsRecorder;
+    // Null unless recordTraces is on
+    private final OperationTrace trace;
+    private final int depth;
+
+    /**
+     * @param outer the operation this one works inside of, for the inner level of a nested
+     *              extraction; null for an operation of its own
+     */
+    private BundleOperation(MenuView view, int bundleSlotId, int[] path, ExtractionPlan leafPlan,
+            boolean keepWhatFits, boolean allowKeepOnCursor, DestinationPlan destinations, InsertPlan inserts,
+            Runnable onFinished, BundleOperation outer) {
+        this.view = view;
+        this.bundleSlotId = bundleSlotId;
+        this.plan = path.length == 0 ? leafPlan : ExtractionPlan.unwindTo(path[0]);
+        this.innerPath = path.length == 0 ? path : Arrays.copyOfRange(path, 1, path.length);
+        this.leafPlan = leafPlan;
+        this.leafKeepsWhatFits = keepWhatFits;
+        this.keepWhatFits = keepWhatFits && path.length == 0;
+        this.innerEstimate = path.length == 0 ? 0 : estimateInner(innerPath, leafPlan);
+        this.destinations = destinations;
+        this.popTarget = plan.popCount();
+        this.onFinished = onFinished;
+        this.lastStateId = view.stateId();
+        this.allocator = SlotAllocator.forMenu(view, bundleSlotId);
+        MenuSlotEvents.register(allocator);
+        this.ownsRecorder = outer == null;
+        this.depth = outer == null ? 0 : outer.depth + 1;
+        if (ownsRecorder) {
+            this.recorder = new OperationRecorder(
+                    inserts != null ? "load" : kindOf(leafPlan, keepWhatFits, destinations, path.length > 0));
+            // Only the game's menus are traced; a simulated one has no game directory to write to
+            this.trace = BundleBrowserClient.config().recordTraces() && view.menu() != null
+                    ? new OperationTrace(recorder.kind(), view) : null;
+            if (trace != null) {
+                trace.start(bundleSlotId, path, leafPlan, keepWhatFits, allowKeepOnCursor, destinations);
+            }
+        } else {
+            this.recorder = outer.recorder;
+            this.trace = outer.trace;
+        }
+
+        ItemStack bundle = view.item(bundleSlotId);
+        this.expectedEntries = BundleHelper.getContents(bundle);
+        this.expectedFingerprints = BundleFingerprint.suffixes(expectedEntries);
+        boolean canCarry = view.mayPickup(bundleSlotId) && view.mayPlace(bundleSlotId, bundle);
+        // Only popping onto the cursor can merge into partial stacks; a carried bundle pops into
+        // empty slots only, so it is off the table when those alone can't hold the kept items
+        boolean needsMerging = destinations != null
+                ? plansMerges(view, destinations) : plan.keptCount() > allocator.emptySlotCount();
+        // Working on a nested bundle needs the cursor, so the outer bundle can't be carried
+        boolean nested = path.length > 0;
+        this.lacksScratchSlots = plan.hasCustomOrder() && plan.popCount() > allocator.emptySlotCount();
+        if (inserts != null) {
+            // Loading has no pops, only inserts, and those need the bundle on the cursor
+            if (canCarry && !inserts.isEmpty()) {
+                insertQueue.addAll(inserts.inserts());
+                this.choice = new ClickStrategy.Choice(ClickStrategy.BUNDLE_ON_CURSOR, false, inserts.expectedClicks());
+            } else {
+                BundleBrowserClient.LOGGER.debug("Nothing to load, or the bundle can't be picked up");
+                this.choice = new ClickStrategy.Choice(ClickStrategy.CURSOR_ON_BUNDLE, false, 0);
+            }
+            this.returnsStarted = true;
+        } else {
+            this.choice = ClickStrategy.choose(plan, canCarry && !needsMerging && !nested, allowKeepOnCursor && !nested);
+        }
+        this.carry = choice.strategy() == ClickStrategy.BUNDLE_ON_CURSOR;
+        if (trace != null) {
+            trace.plan(depth, bundleSlotId, plan, canCarry && !needsMerging && !nested, allowKeepOnCursor && !nested,
+                    choice, false);
+        }
+        BundleBrowserClient.LOGGER.debug("Bundle operation {} using {}", plan, choice);
+    }
+
+    /** Pops down to the plan's deepest target, keeps the targets and returns the rest. */
+    public static BundleOperation extract(MenuView view, int bundleSlotId, ExtractionPlan plan,
+            Runnable onFinished) {
+        return extractNested(view, bundleSlotId, new int[0], plan, onFinished);
+    }
+
+    /**
+     * Runs the plan against a bundle nested inside the one in the slot.
+     *
+     * @param path pop positions of the nested bundles to descend through, outermost first;
+     *             empty for the slot's own bundle
+     */
+    public static BundleOperation extractNested(MenuView view, int bundleSlotId, int[] path, ExtractionPlan plan,
+            Runnable onFinished) {
+        return extractNested(view, bundleSlotId, path, plan,
+                BundleBrowserClient.config().keepTargetOnCursor(), onFinished);
+    }
+
+    /** {@link #extractNested} with keepTargetOnCursor given rather than taken from the config. */
+    public static BundleOperation extractNested(MenuView view, int bundleSlotId, int[] path, ExtractionPlan plan,
+            boolean keepTargetOnCursor, Runnable onFinished) {
+        return new BundleOperation(view, bundleSlotId, path, plan, false, keepTargetOnCursor,
+                null, null, onFinished, null);
+    }
+
+    /** Pops everything into free slots; stops (keeping what is out) when the inventory fills. */
+    public static BundleOperation emptyAll(MenuView view, int bundleSlotId, int entryCount, Runnable onFinished) {
+        return emptyNested(view, bundleSlotId, new int[0], entryCount, onFinished);
+    }
+
+    /** Empty All for a bundle nested inside the one in the slot; see {@link #extractNested}. */
+    public static BundleOperation emptyNested(MenuView view, int bundleSlotId, int[] path, int entryCount,
+            Runnable onFinished) {
+        int[] everything = new int[entryCount];
+        for (int i = 0; i < entryCount; i++) {
+            everything[i] = i;
+        }
+        return new BundleOperation(view, bundleSlotId, path,
+                ExtractionPlan.forTargets(everything), true, false, null, null, onFinished, null);
+    }
+
+    /**
+     * Empty All replaying a destination plan computed up front, into the player's inventory
+     * or the open container: pops exactly the entries the plan fits and nothing else.
+     */
+    public static BundleOperation emptyInto(MenuView view, int bundleSlotId, DestinationPlan destinations,
+            Runnable onFinished) {
+        int[] fitting = new int[destinations.fitCount()];
+        for (int i = 0; i < fitting.length; i++) {
+            fitting[i] = i;
+        }
+        return new BundleOperation(view, bundleSlotId, new int[0],
+                ExtractionPlan.forTargets(fitting), true, false, destinations, null, onFinished, null);
+    }
+
+    /**
+     * Moves entries from the bundle in the slot into other bundles along a route plan from
+     * {@link JobPlanner}. Entries routed to -1 only make way: they go to scratch slots and back
+     * in their original order once the deepest routed entry is out.
+     */
+    public static BundleOperation route(MenuView view, int bundleSlotId, DestinationPlan routes,
+            Runnable onFinished) {
+        int routed = 0;
+        int[] targets = new int[routes.fitCount()];
+        for (int i = 0; i < routes.fitCount(); i++) {
+            if (routes.destination(i) >= 0) {
+                targets[routed++] = i;
+            }
+        }
+        return new BundleOperation(view, bundleSlotId, new int[0],
+                ExtractionPlan.forTargets(Arrays.copyOf(targets, routed)), false, false, routes, null, onFinished, null);
+    }
+
+    /**
+     * Carries the bundle along an insert plan, left-clicking it onto each planned stack, and
+     * puts it back. Does nothing if the bundle can't be picked up.
+     */
+    public static BundleOperation insert(MenuView view, int bundleSlotId, InsertPlan inserts, Runnable onFinished) {
+        return new BundleOperation(view, bundleSlotId, new int[0],
+                ExtractionPlan.forTargets(), false, false, null, inserts, onFinished, null);
+    }
+
+    // The kind reported in metrics, from what the caller asked for rather than the outer unwind
+    private static String kindOf(ExtractionPlan leafPlan, boolean keepWhatFits, DestinationPlan destinations, boolean nested) {
+        String kind = leafPlan.hasCustomOrder() ? "reorder"
+                : destinations != null ? (keepWhatFits ? "empty_into" : "route")
+                : keepWhatFits ? "empty_all" : "extract";
+        return nested ? "nested_" + kind : kind;
+    }
+
+    private static boolean plansMerges(MenuView view, DestinationPlan destinations) {
+        for (int i = 0; i < destinations.fitCount(); i++) {
+            int destination = destinations.destination(i);
+            if (destination >= 0 && !view.item(destination).isEmpty()) return true;
+        }
+        return false;
+    }
+
+    // Rough cost of the levels below this one, for progress until the inner operation exists
+    private static int estimateInner(int[] innerPath, ExtractionPlan leafPlan) {
+        int clicks = ClickStrategy.choose(leafPlan, true, false).expectedClicks();
+        for (int position : innerPath) {
+            clicks += ClickStrategy.CURSOR_ON_BUNDLE.expectedClicks(ExtractionPlan.unwindTo(position), false);
+        }
+        return clicks;
+    }
+
+    public AbstractContainerMenu menu() {
+        return view.menu();
+    }
+
+    public Phase phase() {
+        return phase;
+    }
+
+    public boolean isFinished() {
+        return phase == Phase.DONE || phase == Phase.FAILED;
+    }
+
+    /** Inputs the chosen strategy expects the plan to cost, assuming nothing is lost. */
+    public int expectedClicks() {
+        return choice.expectedClicks() + (inner != null ? inner.expectedClicks() : innerEstimate);
+    }
+
+    /** The strategy this level runs with; a replan keeps the strategy and recounts its inputs. */
+    public ClickStrategy.Choice choice() {
+        return choice;
+    }
+
+    public int inputsSent() {
+        return inputsSent + (inner != null ? inner.inputsSent() : 0);
+    }
+
+    /** Rough completion, 0 to 1, from inputs sent against inputs expected. */
+    public float progress() {
+        int expected = expectedClicks();
+        return expected == 0 ? 1 : Math.min(1, (float) inputsSent() / expected);
+    }
+
+    /**
+     * Where the bundle will end up once every remaining step has landed, starting from what
+     * the client sees now. The client view already reflects every step sent (predicted by
+     * vanilla, then overwritten by any server correction), so only unsent steps are replayed
+     * here; a correction therefore reconciles the prediction on the next call.
+     */
+    public List<ItemStack> predictContents(List<ItemStack> current) {
+        PredictedBundle model = new PredictedBundle(current);
+        if (!returnsStarted) {
+            int popped = extractedSlots.size() + (targetOnCursor ? 1 : 0);
+            ItemStack[] byPosition = new ItemStack[Math.max(popTarget, popped)];
+            for (int position = 0; position < extractedSlots.size(); position++) {
+                byPosition[position] = view.item(extractedSlots.get(position));
+            }
+            for (int position = popped; position < popTarget; position++) {
+                byPosition[position] = model.pop();
+            }
+            for (int position : plan.putBackOrder()) {
+                if (position < byPosition.length && byPosition[position] != null) {
+                    model.push(byPosition[position]);
+                }
+            }
+        } else {
+            for (int slot : returnQueue) {
+                model.push(view.item(slot));
+            }
+            for (InsertPlan.Insert insert : insertQueue) {
+                model.insert(insert.stack().copyWithCount(insert.count()));
+            }
+        }
+        return model.contents();
+    }
+
+    /**
+     * Stops popping and puts back whatever is stashed, as an abort would. Entries already
+     * delivered stay where they went; once returns have started there is nothing to cut short.
+     * A load stops inserting and puts the bundle back with what it took so far.
+     */
+    public void cancel() {
+        if (isFinished()) return;
+        if (inner != null) {
+            inner.cancel();
+        }
+        if (!insertQueue.isEmpty()) {
+            BundleBrowserClient.LOGGER.debug("Load cancelled with {} inserts left", insertQueue.size());
+            insertQueue.clear();
+        }
+        if (!returnsStarted) {
+            BundleBrowserClient.LOGGER.debug("Bundle operation {} cancelled", plan);
+            abort();
+        }
+    }
+
+    /** Finishes as FAILED before the first tick, for {@link OperationRunner} to turn an operation away. */
+    void reject() {
+        if (isFinished() || ticks > 0) return;
+        finish(Phase.FAILED);
+    }
+
+    /** Advances the state machine; called once per client tick. */
+    public void tick(InputPacer pacer) {
+        if (isFinished()) return;
+        ticks++;
+        if (trace != null && ownsRecorder) {
+            trace.onTick(pacer);
+        }
+        if (ticks == 1 && lacksScratchSlots) {
+            BundleBrowserClient.LOGGER.debug("Not enough empty slots to reorder with {}, not starting", plan);
+            finish(Phase.FAILED);
+            return;
+        }
+
+        if (phase == Phase.SUSPENDED) {
+            if (!awaitMenu()) return;
+        } else if (!view.isOpen()) {
+            BundleBrowserClient.LOGGER.debug("Container changed under a running bundle operation");
+            suspend();
+            return;
+        }
+
+        if (inner != null && !inner.isFinished()) {
+            inner.tick(pacer);
+            // Menu updates during the inner operation answer its clicks, not ours
+            lastStateId = view.stateId();
+            if (!inner.isFinished()) return;
+        }
+
+        int stateId = view.stateId();
+        if (stateId != lastStateId) {
+            lastStateId = stateId;
+            lastServerUpdateTick = ticks;
+            recorder.onServerUpdate();
+            // The clicks verify() sends to finish a half-done step are not tracked as steps, but
+            // an update may still be answering one of them
+            boolean inFlight = !unconfirmed.isEmpty()
+                    || (lastSendTick > 0 && ticks - lastSendTick < pacer.rttTicks());
+            if (inFlight && phase != Phase.SETTLING) {
+                BundleBrowserClient.LOGGER.debug("Server corrected the menu mid-operation (stateId {}), settling", stateId);
+                recorder.onCorrection(unconfirmed.size());
+                traceEvent("correction");
+                pacer.onCorrection(ticks - (unconfirmed.isEmpty() ? lastSendTick : unconfirmed.peek().tick()));
+                phase = Phase.SETTLING;
+                settleStartTick = ticks;
+            }
+        }
+
+        if (phase == Phase.SETTLING) {
+            // Clicks sent after the correction may still draw their own; wait them out too
+            boolean quiet = ticks - Math.max(lastServerUpdateTick, lastSendTick) >= pacer.rttTicks();
+            if (quiet || ticks - settleStartTick >= SETTLE_TIMEOUT_TICKS) {
+                verify();
+            }
+            return;
+        }
+
+        confirmQuietSteps(pacer);
+
+        StepKind next;
+        while (!isFinished() && phase != Phase.SETTLING && (next = nextStep()) != null) {
+            phase = next == StepKind.RETURN || next == StepKind.INSERT || next == StepKind.PLACE_BUNDLE
+                    ? returnPhase : Phase.EXTRACTING;
+            if (!pacer.tryConsume(inputsFor(next))) break;
+            lastSendTick = ticks;
+            issue(next);
+        }
+
+        if (!isFinished() && phase != Phase.SETTLING && nextStep() == null && unconfirmed.isEmpty()
+                && returnsStarted && (!carry || bundlePlaced)) {
+            finish(Phase.DONE);
+        }
+    }
+
+    /** The step to send now, or null when waiting on confirmations or done. */
+    private StepKind nextStep() {
+        if (carry && !bundleTaken) return StepKind.TAKE_BUNDLE;
+        if (!returnsStarted) {
+            int popped = extractedSlots.size() + (targetOnCursor ? 1 : 0);
+            if (popped < popTarget) {
+                boolean finalPop = popped == popTarget - 1;
+                return finalPop && choice.keepLastOnCursor() ? StepKind.POP_TO_CURSOR : StepKind.POP;
+            }
+            // Returns wait until every pop is confirmed, so a lost pop is redone before
+            // anything goes back and the kept targets are exactly the planned ones
+            if (!unconfirmed.isEmpty()) return null;
+            if (innerPath.length > 0 && !innerStarted) {
+                startInner();
+                if (inner != null) return null;
+            }
+            if (inner != null && !inner.isFinished()) return null;
+            startReturning();
+        }
+        if (!returnQueue.isEmpty()) return StepKind.RETURN;
+        if (!insertQueue.isEmpty()) return StepKind.INSERT;
+        // The bundle goes back only once every return it had to swallow is confirmed
+        if (carry && !bundlePlaced && unconfirmed.isEmpty()) return StepKind.PLACE_BUNDLE;
+        return null;
+    }
+
+    private int inputsFor(StepKind kind) {
+        return switch (kind) {
+            case POP -> choice.strategy().popInputs();
+            case RETURN -> returnsBundleUnderCursor(returnQueue.peek()) ? 3 : choice.strategy().returnInputs();
+            case TAKE_BUNDLE, POP_TO_CURSOR, PLACE_BUNDLE, INSERT -> 1;
+        };
+    }
+
+    private void issue(StepKind kind) {
+        switch (kind) {
+            case TAKE_BUNDLE -> {
+                // Left-click with an empty cursor picks the bundle up
+                click(bundleSlotId, 0);
+                bundleTaken = true;
+                unconfirmed.add(new IssuedStep(kind, bundleSlotId, ticks, 0));
+            }
+            case POP -> issuePop();
+            case POP_TO_CURSOR -> {
+                if (BundleHelper.isEmpty(bundleStack())) {
+                    popTarget = extractedSlots.size();
+                    return;
+                }
+                if (!checkBeforePop() || extractedSlots.size() >= popTarget) return;
+                // Right-click pops the final target onto the cursor, where it stays
+                click(bundleSlotId, 1);
+                targetOnCursor = true;
+                unconfirmed.add(new IssuedStep(kind, bundleSlotId, ticks, 0));
+            }
+            case RETURN -> issueReturn();
+            case INSERT -> issueInsert();
+            case PLACE_BUNDLE -> {
+                // Something may have landed in the bundle's old slot meanwhile
+                int target = view.item(bundleSlotId).isEmpty()
+                        ? bundleSlotId : allocator.destinationFor(view.carried(), false);
+                if (target == -1) {
+                    BundleBrowserClient.LOGGER.warn("No slot left to put the bundle back into, leaving it on the cursor");
+                    finish(Phase.FAILED);
+                    return;
+                }
+                click(target, 0);
+                bundlePlaced = true;
+                unconfirmed.add(new IssuedStep(kind, target, ticks, 0));
+            }
+        }
+    }
+
+    /** Hands the nested bundle, now out in a slot, to an operation of its own. */
+    private void startInner() {
+        innerStarted = true;
+        int nestedSlot = extractedSlots.size() == plan.popCount() ? extractedSlots.get(plan.popCount() - 1) : -1;
+        if (nestedSlot == -1 || !BundleHelper.isBundle(view.item(nestedSlot))) {
+            BundleBrowserClient.LOGGER.debug("Nested bundle not where planned, putting everything back");
+            return;
+        }
+        inner = new BundleOperation(view, nestedSlot, innerPath, leafPlan,
+                leafKeepsWhatFits, false, null, null, () -> {}, this);
+        // Items the inner operation pops must not land on ours: returning those would
+        // take them back into the outer bundle
+        for (int slot : extractedSlots) {
+            inner.allocator.exclude(slot);
+        }
+    }
+
+    private void startReturning() {
+        returnsStarted = true;
+        for (int position : plan.putBackOrder()) {
+            if (position < extractedSlots.size()) {
+                returnQueue.add(extractedSlots.get(position));
+            }
+        }
+    }
+
+    private void issuePop() {
+        // Something else emptied the bundle; a right-click now would pick the bundle itself up
+        if (BundleHelper.isEmpty(bundleStack())) {
+            popTarget = extractedSlots.size();
+            return;
+        }
+        if (!checkBeforePop() || extractedSlots.size() >= popTarget) return;
+
+        // Look for room before popping, so a full inventory costs no inputs at all. Kept items
+        // may merge into a partial stack; temporaries need a slot of their own, since picking
+        // them back up must not take anything else along
+        ItemStack top = BundleHelper.peekTop(bundleStack());
+        boolean kept = plan.keeps(extractedSlots.size());
+        int position = extractedSlots.size();
+        boolean planned = destinations != null && !destinationsStale && position < destinations.fitCount()
+                && destinations.destination(position) >= 0;
+        int destination = planned
+                ? plannedDestination(position, top) : allocator.destinationFor(top, kept && !carry);
+        if (destination == -1) {
+            if (keepWhatFits) {
+                // Empty All keeps whatever already made it out
+                BundleBrowserClient.LOGGER.debug("Inventory full during Empty All, stopping");
+                popTarget = extractedSlots.size();
+            } else {
+                BundleBrowserClient.LOGGER.debug("No empty inventory slot for extraction, aborting");
+                abort();
+            }
+            return;
+        }
+
+        ItemStack existing = view.item(destination);
+        boolean intoBundle = planned && BundleHelper.isBundle(existing);
+        int countBefore = occupancy(existing, intoBundle);
+        if (carry) {
+            // Right-clicking an empty slot while carrying the bundle pops straight into it
+            click(destination, 1);
+        } else {
+            // Right-click to extract from bundle; the client predicts the pickup, so the
+            // item is already on the cursor for the placement below
+            click(bundleSlotId, 1);
+            click(destination, 0);
+        }
+        extractedSlots.add(destination);
+        extractedStacks.add(top.copy());
+        // An entry inside another bundle can never be picked back up on its own
+        mergedSlots.set(destination, countBefore > 0 || intoBundle);
+        bundleDestinations.set(destination, intoBundle);
+        allocator.reserve(destination);
+        unconfirmed.add(new IssuedStep(StepKind.POP, destination, ticks, countBefore));
+    }
+
+    private void issueInsert() {
+        InsertPlan.Insert insert = insertQueue.poll();
+        ItemStack inSlot = view.item(insert.slotId());
+        // The stack moved or changed since the plan was made; the plan's counts no longer hold
+        if (!ItemStack.matches(inSlot, insert.stack())) {
+            BundleBrowserClient.LOGGER.debug("Slot {} changed since the load was planned, skipping it", insert.slotId());
+            return;
+        }
+        // Left-clicking a stack with the bundle on the cursor takes in as much as fits
+        click(insert.slotId(), 0);
+        unconfirmed.add(new IssuedStep(StepKind.INSERT, insert.slotId(), ticks, inSlot.getCount() - insert.count()));
+    }
+
+    /**
+     * Compares the bundle with what the plan expects after the pops made so far, and replans
+     * on a mismatch. False if the pop must not go ahead: the operation stopped or aborted.
+     */
+    private boolean checkBeforePop() {
+        int popped = extractedSlots.size() + (targetOnCursor ? 1 : 0);
+        int index = popped - fingerprintBase;
+        if (index >= 0 && index < expectedFingerprints.length
+                && BundleFingerprint.of(bundleStack()) == expectedFingerprints[index]) {
+            return true;
+        }
+        if (replan(popped)) return true;
+        if (keepWhatFits) {
+            // Empty All keeps whatever already made it out
+            popTarget = extractedSlots.size();
+        } else {
+            abort();
+        }
+        return false;
+    }
+
+    /**
+     * The bundle no longer holds what the plan was made against. Works the rest of the plan
+     * out again from what is there now, keeping every pop already made, rather than putting
+     * it all back and starting over: the targets still to come are looked up again by item,
+     * top down; anything new above them is popped and returned like any other entry. False
+     * when the plan can't be carried over (a reorder or a route, which are tied to exact
+     * positions) or the bundle keeps changing.
+     */
+    private boolean replan(int popped) {
+        if (++replans > MAX_REPLANS || plan.hasCustomOrder() || (destinations != null && !keepWhatFits)) {
+            BundleBrowserClient.LOGGER.debug("Bundle changed under {}, not replanning", plan);
+            return false;
+        }
+        List<ItemStack> observed = BundleHelper.getContents(bundleStack());
+        List<Integer> targets = new ArrayList<>();
+        for (int position = 0; position < popped; position++) {
+            if (plan.keeps(position)) targets.add(position);
+        }
+        if (keepWhatFits) {
+            // Empty All wants whatever is in there now
+            for (int i = 0; i < observed.size(); i++) {
+                targets.add(popped + i);
+            }
+            destinationsStale = destinations != null;
+        } else {
+            boolean[] used = new boolean[observed.size()];
+            for (int position = popped; position < plan.popCount(); position++) {
+                // Below a nested level the one entry that matters is the nested bundle, popped last
+                boolean wanted = innerPath.length > 0 ? position == plan.popCount() - 1 : plan.keeps(position);
+                if (!wanted) continue;
+                int found = indexOfUnused(observed, expectedAt(position), used);
+                if (found == -1) {
+                    BundleBrowserClient.LOGGER.debug("Target at pop position {} is gone from the bundle", position);
+                    continue;
+                }
+                used[found] = true;
+                targets.add(popped + found);
+            }
+        }
+
+        int[] positions = targets.stream().mapToInt(Integer::intValue).toArray();
+        if (innerPath.length > 0) {
+            if (positions.length == 0) return false;
+            plan = ExtractionPlan.unwindTo(positions[0]);
+        } else {
+            int deepest = positions.length == 0 ? -1 : Arrays.stream(positions).max().getAsInt();
+            // Entries already out stay part of the plan, so the ones not kept still go back
+            plan = ExtractionPlan.popping(Math.max(deepest + 1, popped), positions);
+        }
+        popTarget = plan.popCount();
+        boolean keepLast = choice.keepLastOnCursor() && plan.keptCount() == plan.popCount();
+        choice = new ClickStrategy.Choice(choice.strategy(), keepLast, choice.strategy().expectedClicks(plan, keepLast));
+        expectedEntries = observed;
+        expectedFingerprints = BundleFingerprint.suffixes(observed);
+        fingerprintBase = popped;
+        recorder.onReplan(unconfirmed.size());
+        if (trace != null) {
+            trace.event("replan", unconfirmed.size());
+            trace.plan(depth, bundleSlotId, plan, carry, choice.keepLastOnCursor(), choice, true);
+        }
+        BundleBrowserClient.LOGGER.debug("Bundle changed under the operation, replanned after {} pops: {}", popped, plan);
+        return true;
+    }
+
+    private ItemStack expectedAt(int popPosition) {
+        int index = popPosition - fingerprintBase;
+        return index >= 0 && index < expectedEntries.size() ? expectedEntries.get(index) : ItemStack.EMPTY;
+    }
+
+    private static int indexOfUnused(List<ItemStack> entries, ItemStack wanted, boolean[] used) {
+        if (wanted.isEmpty()) return -1;
+        for (int i = 0; i < entries.size(); i++) {
+            if (!used[i] && ItemStack.matches(entries.get(i), wanted)) return i;
+        }
+        return -1;
+    }
+
+    /** The planned slot for a pop, or -1 if something else has filled it since planning. */
+    private int plannedDestination(int popPosition, ItemStack item) {
+        if (popPosition >= destinations.fitCount()) return -1;
+        int destination = destinations.destination(popPosition);
+        ItemStack existing = view.item(destination);
+        if (existing.isEmpty()) return view.mayPlace(destination, item) ? destination : -1;
+        // A bundle as destination takes the entry in; a partial insert would leave the rest on the cursor
+        if (BundleHelper.isBundle(existing)) return BundleSpace.fitsWhole(existing, item) ? destination : -1;
+        boolean fits = ItemStack.isSameItemSameComponents(existing, item)
+                && existing.getCount() + item.getCount() <= view.maxStackSize(destination, existing);
+        return fits ? destination : -1;
+    }
+
+    // Items in a destination: its stack count, or what it holds if it is a bundle being filled
+    private static int occupancy(ItemStack stack, boolean intoBundle) {
+        return intoBundle ? BundleTree.summarize(stack).items() : stack.getCount();
+    }
+
+    private void issueReturn() {
+        int slot = returnQueue.poll();
+        // A pop that never landed leaves its slot empty; clicking it would move the bundle
+        // itself (picked up from its slot, or dropped into the empty one while carried)
+        ItemStack inSlot = view.item(slot);
+        if (inSlot.isEmpty()) return;
+        // Only what this operation put there goes back; anything else is not the bundle's
+        int index = extractedSlots.lastIndexOf(slot);
+        if (index >= 0 && !ItemStack.matches(inSlot, extractedStacks.get(index))) {
+            BundleBrowserClient.LOGGER.debug("Slot {} no longer holds what was popped into it, leaving it", slot);
+            return;
+        }
+
+        if (carry) {
+            // Left-clicking an item while carrying the bundle inserts it
+            click(slot, 0);
+        } else if (returnsBundleUnderCursor(slot)) {
+            // A carried bundle takes in what it is clicked on, so a nested bundle picked up
+            // and clicked onto ours would swallow ours instead. Carry ours to it for this one
+            if (!view.mayPickup(bundleSlotId) || !view.mayPlace(bundleSlotId, bundleStack())) {
+                BundleBrowserClient.LOGGER.debug("Can't carry the bundle to put slot {} back into it, leaving it", slot);
+                return;
+            }
+            click(bundleSlotId, 0);
+            click(slot, 0);
+            click(bundleSlotId, 0);
+        } else {
+            // Pick up item from where we stashed it, then put it back into the bundle
+            click(slot, 0);
+            click(bundleSlotId, 0);
+        }
+        unconfirmed.add(new IssuedStep(StepKind.RETURN, slot, ticks, 0));
+    }
+
+    private boolean returnsBundleUnderCursor(int slot) {
+        return !carry && BundleHelper.isBundle(view.item(slot));
+    }
+
+    /**
+     * Puts every extracted item back, last extracted first, restoring the original order.
+     * Targets that merged into an existing stack stay out: picking one up would take the
+     * whole stack along.
+     */
+    private void abort() {
+        recorder.onAbort();
+        traceEvent("abort");
+        returnsStarted = true;
+        returnPhase = Phase.ABORTING;
+        returnQueue.clear();
+        for (int i = extractedSlots.size() - 1; i >= 0; i--) {
+            int slot = extractedSlots.get(i);
+            if (!mergedSlots.get(slot)) {
+                returnQueue.add(slot);
+            }
+        }
+        popTarget = extractedSlots.size();
+    }
+
+    private void click(int slot, int button) {
+        view.pickup(slot, button);
+        inputsSent++;
+        recorder.onClick();
+        if (trace != null) {
+            trace.onClick(slot, button);
+        }
+        allocator.refresh(slot);
+    }
+
+    /** The bundle as the client sees it right now: on the cursor while carried, else in its slot. */
+    private ItemStack bundleStack() {
+        return carry && bundleTaken && !bundlePlaced ? view.carried() : view.item(bundleSlotId);
+    }
+
+    private void confirmQuietSteps(InputPacer pacer) {
+        int rtt = pacer.rttTicks();
+        int confirmed = 0;
+        while (!unconfirmed.isEmpty() && ticks - unconfirmed.peek().tick() >= rtt) {
+            allocator.release(unconfirmed.poll().slot());
+            confirmed++;
+        }
+        pacer.onConfirmed(confirmed);
+    }
+
+    /**
+     * The server has gone quiet, so local slots are authoritative again. Keep the steps that
+     * landed, requeue the ones that did not, and finish any step left half-done on the cursor.
+     */
+    private void verify() {
+        IssuedStep last = unconfirmed.peekLast();
+        ItemStack carried = view.carried();
+        boolean lost = false;
+        List<Integer> lostReturns = new ArrayList<>();
+        List<InsertPlan.Insert> lostInserts = new ArrayList<>();
+
+        for (IssuedStep step : unconfirmed) {
+            ItemStack inSlot = view.item(step.slot());
+            boolean slotEmpty = inSlot.isEmpty();
+            boolean landed = switch (step.kind()) {
+                case TAKE_BUNDLE -> BundleHelper.isBundle(carried);
+                case POP -> occupancy(inSlot, bundleDestinations.get(step.slot())) > step.count();
+                case POP_TO_CURSOR -> !carried.isEmpty();
+                case RETURN -> slotEmpty;
+                case PLACE_BUNDLE -> BundleHelper.isBundle(view.item(step.slot()));
+                case INSERT -> inSlot.getCount() <= step.count();
+            };
+            if (landed) continue;
+
+            lost = true;
+            switch (step.kind()) {
+                case TAKE_BUNDLE -> bundleTaken = false;
+                case POP -> {
+                    int index = extractedSlots.indexOf(step.slot());
+                    extractedSlots.remove(index);
+                    extractedStacks.remove(index);
+                    // Several pops can share a slot (a partial stack, a target bundle)
+                    if (!extractedSlots.contains(step.slot())) {
+                        mergedSlots.clear(step.slot());
+                        bundleDestinations.clear(step.slot());
+                    }
+                }
+                case POP_TO_CURSOR -> targetOnCursor = false;
+                case RETURN -> lostReturns.add(step.slot());
+                case PLACE_BUNDLE -> bundlePlaced = false;
+                case INSERT -> lostInserts.add(new InsertPlan.Insert(step.slot(), inSlot.copy(),
+                        inSlot.getCount() - step.count()));
+            }
+        }
+        unconfirmed.clear();
+        allocator.releaseAll();
+        for (int i = lostReturns.size() - 1; i >= 0; i--) {
+            returnQueue.addFirst(lostReturns.get(i));
+        }
+        for (int i = lostInserts.size() - 1; i >= 0; i--) {
+            insertQueue.addFirst(lostInserts.get(i));
+        }
+
+        boolean carryingBundle = carry && bundleTaken && !bundlePlaced;
+        if (carryingBundle && !BundleHelper.isBundle(carried)) {
+            BundleBrowserClient.LOGGER.warn("Lost track of the carried bundle, stopping");
+            finish(Phase.FAILED);
+            return;
+        }
+        // A pick-up that never landed is redone on the bundle's slot, which must still hold it:
+        // a closed menu puts the cursor's stack back wherever the inventory has room
+        if (carry && !bundleTaken && !BundleHelper.isBundle(view.item(bundleSlotId))) {
+            BundleBrowserClient.LOGGER.warn("Bundle is no longer in its slot, stopping");
+            finish(Phase.FAILED);
+            return;
+        }
+        if (!carryingBundle && !targetOnCursor && !carried.isEmpty()) {
+            // A step landed halfway: an extract without its placement, or a pick-up without its insert
+            lost = true;
+            lastSendTick = ticks;
+            boolean returning = last != null ? last.kind() == StepKind.RETURN : returnsStarted;
+            int emptySlot = returning ? -1 : allocator.destinationFor(carried, false);
+            if (emptySlot != -1) {
+                ItemStack placed = carried.copy();
+                click(emptySlot, 0);
+                extractedSlots.add(emptySlot);
+                extractedStacks.add(placed);
+                allocator.reserve(emptySlot);
+                unconfirmed.add(new IssuedStep(StepKind.POP, emptySlot, ticks, 0));
+            } else {
+                click(bundleSlotId, 0);
+            }
+        }
+
+        if (lost) {
+            recorder.onRetry();
+            traceEvent("retry");
+        }
+        if (lost && ++retries > MAX_RETRIES) {
+            BundleBrowserClient.LOGGER.warn("Bundle operation kept losing steps to server corrections, stopping");
+            finish(Phase.FAILED);
+            return;
+        }
+
+        phase = returnsStarted ? returnPhase : Phase.EXTRACTING;
+    }
+
+    /**
+     * The menu went away, most often behind another screen. Nothing can be sent meanwhile,
+     * but whatever is stashed is still in the player's inventory, so rather than strand it
+     * the operation waits for the same menu to come back.
+     */
+    private void suspend() {
+        if (!view.canResume()) {
+            finish(Phase.FAILED);
+            return;
+        }
+        phase = Phase.SUSPENDED;
+        suspendedAtTick = ticks;
+        traceEvent("suspend");
+        // A nested level waits along, and once ticked again resumes through its own settle
+        if (inner != null && !inner.isFinished()) {
+            inner.suspend();
+        }
+    }
+
+    /** True once the menu is back; the operation then settles and verifies as after a correction. */
+    private boolean awaitMenu() {
+        if (!view.canResume() || ticks - suspendedAtTick >= RESUME_TIMEOUT_TICKS) {
+            BundleBrowserClient.LOGGER.debug("Menu did not come back, giving up on {}", plan);
+            finish(Phase.FAILED);
+            return false;
+        }
+        if (!view.isOpen()) return false;
+
+        BundleBrowserClient.LOGGER.debug("Menu is back, resuming {}", plan);
+        traceEvent("resume");
+        // Slots may have changed in any way meanwhile; the fingerprints catch the bundle itself
+        allocator.onContentsReplaced();
+        lastStateId = view.stateId();
+        lastServerUpdateTick = ticks;
+        settleStartTick = ticks;
+        phase = Phase.SETTLING;
+        return true;
+    }
+
+    private void finish(Phase outcome) {
+        phase = outcome;
+        // Nothing ticks a nested level once this one is done, so it ends here too rather than
+        // keep listening to a menu that is gone
+        if (inner != null && !inner.isFinished()) {
+            inner.finish(outcome);
+        }
+        MenuSlotEvents.unregister(allocator);
+        BundleBrowserClient.LOGGER.debug("Bundle operation {}: {} inputs sent, {} expected",
+                outcome, inputsSent(), expectedClicks());
+        if (ownsRecorder) {
+            OperationStats stats = recorder.finish(outcome.name(), expectedClicks(), ticks);
+            if (trace != null) {
+                trace.finish(stats);
+            }
+        }
+        onFinished.run();
+    }
+
+    private void traceEvent(String name) {
+        if (trace != null) {
+            trace.event(name, unconfirmed.size());
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package dev.bundlebrowser.operation;
+
+import net.minecraft.core.component.DataComponents;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.component.BundleContents;
+
+/**
+ * Simulated room left in a bundle, for planning inserts before any click. Uses vanilla's own
+ * insert rules (BundleContents.Mutable), so weights, nested bundles and items that may not go
+ * into bundles at all are judged exactly as the server will.
+ */
+public final class BundleSpace {
+    private BundleContents contents;
+
+    public BundleSpace(ItemStack bundle) {
+        BundleContents current = bundle.get(DataComponents.BUNDLE_CONTENTS);
+        this.contents = current != null ? current : BundleContents.EMPTY;
+    }
+
+    /** Whether the whole entry would go in, without changing the simulation. */
+    public boolean fitsWhole(ItemStack entry) {
+        return tryInsert(entry) != null;
+    }
+
+    /** Inserts the whole entry into the simulation if it fits; false (and unchanged) if not. */
+    public boolean insertWhole(ItemStack entry) {
+        BundleContents after = tryInsert(entry);
+        if (after == null) return false;
+        contents = after;
+        return true;
+    }
+
+    /** Inserts as much of the entry as fits into the simulation, as a carried bundle clicked on it would. */
+    public int insertWhatFits(ItemStack entry) {
+        BundleContents.Mutable trial = new BundleContents.Mutable(contents);
+        int inserted = trial.tryInsert(entry.copy());
+        if (inserted > 0) {
+            contents = trial.toImmutable();
+        }
+        return inserted;
+    }
+
+    private BundleContents tryInsert(ItemStack entry) {
+        BundleContents.Mutable trial = new BundleContents.Mutable(contents);
+        ItemStack copy = entry.copy();
+        int inserted = trial.tryInsert(copy);
+        return inserted == entry.getCount() ? trial.toImmutable() : null;
+    }
+
+    /** Whether a real bundle would take the whole entry right now. */
+    public static boolean fitsWhole(ItemStack bundle, ItemStack entry) {
+        return new BundleSpace(bundle).fitsWhole(entry);
+    }
+}
@@ -0,0 +1,69 @@
+package dev.bundlebrowser.operation;
+
+/**
+ * The input sequences an operation can use to move items between a bundle and free slots,
+ * and what each costs in container inputs.
+ *
+ * Vanilla bundles react to clicks from either side: right-clicking a bundle with an empty
+ * cursor pops its top entry onto the cursor, and right-clicking an empty slot while
+ * carrying the bundle pops the top entry straight into that slot. Left-clicking an item
+ * while carrying the bundle inserts it. So carrying the bundle halves the per-item cost at
+ * the price of picking it up and putting it back once.
+ */
+public enum ClickStrategy {
+    /** Bundle stays in its slot: pop onto the cursor and place, or pick up and insert. */
+    CURSOR_ON_BUNDLE(2, 2, 0),
+    /** Carry the bundle: one input per pop or return, plus taking it and putting it back. */
+    BUNDLE_ON_CURSOR(1, 1, 2);
+
+    private final int popInputs;
+    private final int returnInputs;
+    private final int overheadInputs;
+
+    ClickStrategy(int popInputs, int returnInputs, int overheadInputs) {
+        this.popInputs = popInputs;
+        this.returnInputs = returnInputs;
+        this.overheadInputs = overheadInputs;
+    }
+
+    public int popInputs() {
+        return popInputs;
+    }
+
+    public int returnInputs() {
+        return returnInputs;
+    }
+
+    /** A strategy picked for one plan, with the number of inputs it is expected to send. */
+    public record Choice(ClickStrategy strategy, boolean keepLastOnCursor, int expectedClicks) {}
+
+    public int expectedClicks(ExtractionPlan plan, boolean keepLastOnCursor) {
+        int returns = plan.popCount() - plan.keptCount();
+        int clicks = overheadInputs + popInputs * plan.popCount() + returnInputs * returns;
+        // The final pop skips its placement and leaves the item on the cursor
+        return keepLastOnCursor ? clicks - 1 : clicks;
+    }
+
+    /**
+     * Picks the cheapest sequence for the plan.
+     *
+     * @param canCarryBundle the bundle's slot lets it be taken out and put back (result and
+     *                       other restricted slots do not)
+     * @param allowKeepOnCursor the caller is fine with the final target ending up on the cursor
+     *                          instead of in a slot
+     */
+    public static Choice choose(ExtractionPlan plan, boolean canCarryBundle, boolean allowKeepOnCursor) {
+        // Leaving the target on the cursor only works when nothing has to go back after it:
+        // returning an item needs a free cursor while the bundle stays in its slot
+        boolean keepOnCursor = allowKeepOnCursor && plan.popCount() > 0 && plan.keptCount() == plan.popCount();
+
+        Choice best = new Choice(CURSOR_ON_BUNDLE, keepOnCursor, CURSOR_ON_BUNDLE.expectedClicks(plan, keepOnCursor));
+        if (canCarryBundle) {
+            int carried = BUNDLE_ON_CURSOR.expectedClicks(plan, false);
+            if (carried < best.expectedClicks()) {
+                best = new Choice(BUNDLE_ON_CURSOR, false, carried);
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,176 @@
+package dev.bundlebrowser.operation;
+
+import dev.bundlebrowser.util.ItemKey;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.inventory.AbstractContainerMenu;
+import net.minecraft.world.inventory.ChestMenu;
+import net.minecraft.world.inventory.DispenserMenu;
+import net.minecraft.world.inventory.HopperMenu;
+import net.minecraft.world.inventory.ShulkerBoxMenu;
+import net.minecraft.world.item.ItemStack;
+
+/**
+ * Where every entry of an Empty All goes, worked out in one pass before the first click.
+ *
+ * Entries are placed in pop order against a simulated copy of the target slots: into a
+ * partial stack of the same item that can take the whole entry, else into the first empty
+ * slot that accepts it. The bundle is FILO, so the first entry that fits nowhere ends the
+ * plan; nothing below it can come out either. The operation then only replays the plan, and
+ * the fit count is known up front instead of found out by bouncing an item back.
+ *
+ * A plan can also route entries into other bundles ({@link #routes}): a destination slot that
+ * holds a bundle means "insert into it", which a left-click with the entry on the cursor does.
+ */
+public final class DestinationPlan {
+    private final int[] destinations;
+    private final int itemsThatFit;
+    private final int entryCount;
+
+    private DestinationPlan(int[] destinations, int itemsThatFit, int entryCount) {
+        this.destinations = destinations;
+        this.itemsThatFit = itemsThatFit;
+        this.entryCount = entryCount;
+    }
+
+    /**
+     * Plans the contents (in pop order) into the given menu slots.
+     *
+     * @param slots menu slot ids to fill, in the order empty slots should be used
+     */
+    public static DestinationPlan compute(MenuView view, List<ItemStack> contents, BitSet slots) {
+        int slotCount = view.slotCount();
+        int[] count = new int[slotCount];
+        ItemStack[] held = new ItemStack[slotCount];
+        BitSet empty = new BitSet();
+        Map<ItemKey, List<Integer>> partialByItem = new HashMap<>();
+
+        for (int i = slots.nextSetBit(0); i >= 0; i = slots.nextSetBit(i + 1)) {
+            ItemStack stack = view.item(i);
+            held[i] = stack;
+            count[i] = stack.getCount();
+            if (stack.isEmpty()) {
+                empty.set(i);
+            } else if (stack.getCount() < view.maxStackSize(i, stack)) {
+                partialByItem.computeIfAbsent(new ItemKey(stack.copyWithCount(1)), k -> new ArrayList<>()).add(i);
+            }
+        }
+
+        int[] destinations = new int[contents.size()];
+        int fit = 0;
+        int items = 0;
+        for (ItemStack entry : contents) {
+            int destination = place(view, entry, count, held, empty, partialByItem);
+            if (destination == -1) break;
+            destinations[fit++] = destination;
+            items += entry.getCount();
+        }
+        return new DestinationPlan(Arrays.copyOf(destinations, fit), items, contents.size());
+    }
+
+    // Same rule as SlotAllocator.destinationFor, applied to the simulated slots
+    private static int place(MenuView view, ItemStack entry, int[] count, ItemStack[] held,
+            BitSet empty, Map<ItemKey, List<Integer>> partialByItem) {
+        ItemKey key = new ItemKey(entry);
+        List<Integer> partials = partialByItem.get(key);
+        if (partials != null) {
+            for (int p = 0; p < partials.size(); p++) {
+                int i = partials.get(p);
+                int max = view.maxStackSize(i, held[i]);
+                if (count[i] + entry.getCount() <= max) {
+                    count[i] += entry.getCount();
+                    if (count[i] >= max) {
+                        partials.remove(p);
+                    }
+                    return i;
+                }
+            }
+        }
+        for (int i = empty.nextSetBit(0); i >= 0; i = empty.nextSetBit(i + 1)) {
+            if (!view.mayPlace(i, entry)) continue;
+            empty.clear(i);
+            held[i] = entry;
+            count[i] = entry.getCount();
+            if (count[i] < view.maxStackSize(i, entry)) {
+                partialByItem.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * A plan from explicit per-position destinations, as built by {@link JobPlanner}: -1 marks
+     * an entry that only moves out of the way and gets a scratch slot as the operation goes.
+     */
+    public static DestinationPlan routes(int[] destinations, int itemsRouted) {
+        return new DestinationPlan(destinations.clone(), itemsRouted, destinations.length);
+    }
+
+    /** This plan with more positions after its last, for joining two stages on one source. */
+    DestinationPlan extendedBy(int[] more, int moreItems) {
+        int[] joined = Arrays.copyOf(destinations, destinations.length + more.length);
+        System.arraycopy(more, 0, joined, destinations.length, more.length);
+        return new DestinationPlan(joined, itemsThatFit + moreItems, joined.length);
+    }
+
+    /** Player-inventory slots of the menu, minus the bundle's own. */
+    public static BitSet playerSlots(AbstractContainerMenu menu, Player player, int excludedSlotId) {
+        BitSet slots = new BitSet();
+        for (int i = 0; i < menu.slots.size(); i++) {
+            if (i != excludedSlotId && menu.getSlot(i).container == player.getInventory()) {
+                slots.set(i);
+            }
+        }
+        return slots;
+    }
+
+    /** The open container's own slots, or none if the menu isn't plain storage. */
+    public static BitSet containerSlots(AbstractContainerMenu menu, Player player) {
+        BitSet slots = new BitSet();
+        if (!hasStorageSide(menu)) return slots;
+        for (int i = 0; i < menu.slots.size(); i++) {
+            if (menu.getSlot(i).container != player.getInventory()) {
+                slots.set(i);
+            }
+        }
+        return slots;
+    }
+
+    /**
+     * Chests, barrels, shulker boxes, dispensers and hoppers: menus whose other side is just
+     * storage. Furnaces, crafting and the like have slots that take only some items or none.
+     */
+    public static boolean hasStorageSide(AbstractContainerMenu menu) {
+        return menu instanceof ChestMenu || menu instanceof ShulkerBoxMenu
+                || menu instanceof DispenserMenu || menu instanceof HopperMenu;
+    }
+
+    /** Slot for the entry at a pop position, or -1 for a scratch slot; only valid below {@link #fitCount}. */
+    public int destination(int popPosition) {
+        return destinations[popPosition];
+    }
+
+    /** Entries planned, counted from the top of the bundle. */
+    public int fitCount() {
+        return destinations.length;
+    }
+
+    public int itemsThatFit() {
+        return itemsThatFit;
+    }
+
+    public int entryCount() {
+        return entryCount;
+    }
+
+    public boolean fitsEverything() {
+        return destinations.length == entryCount;
+    }
+}
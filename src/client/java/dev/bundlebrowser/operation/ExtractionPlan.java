@@ -0,0 +1,115 @@
+package dev.bundlebrowser.operation;
+
+import java.util.Arrays;
+
+/**
+ * Which bundle entries to pop, keep and return to pull a set of targets out in one unwind.
+ *
+ * Positions are FILO pop positions: position 0 is the entry the next right-click extracts.
+ * Reaching the deepest target pops every entry above it once; every selected entry stays
+ * where it was placed, and only the unselected ones go back.
+ */
+public final class ExtractionPlan {
+    private final int popCount;
+    private final boolean[] keep;
+    private final int keptCount;
+    // Explicit put-back order for reordering plans; null means restore the original order
+    private final int[] putBack;
+
+    private ExtractionPlan(boolean[] keep, int keptCount) {
+        this(keep, keptCount, null);
+    }
+
+    private ExtractionPlan(boolean[] keep, int keptCount, int[] putBack) {
+        this.popCount = keep.length;
+        this.keep = keep;
+        this.keptCount = keptCount;
+        this.putBack = putBack;
+    }
+
+    /** Plan for the given target positions; duplicates and negatives are ignored. */
+    public static ExtractionPlan forTargets(int... targets) {
+        int deepest = -1;
+        for (int target : targets) {
+            deepest = Math.max(deepest, target);
+        }
+        return popping(deepest + 1, targets);
+    }
+
+    /**
+     * Plan that pops exactly popCount entries and keeps the given positions among them, for
+     * when entries below the deepest target have to come out anyway (a replan after some
+     * were already popped). Targets at or past popCount are ignored.
+     */
+    public static ExtractionPlan popping(int popCount, int... targets) {
+        boolean[] keep = new boolean[popCount];
+        int keptCount = 0;
+        for (int target : targets) {
+            if (target >= 0 && target < popCount && !keep[target]) {
+                keep[target] = true;
+                keptCount++;
+            }
+        }
+        return new ExtractionPlan(keep, keptCount);
+    }
+
+    /**
+     * Plan that pops down to and including the given position and keeps nothing, so every
+     * entry goes back in its original order. Used to reach a nested bundle: it is popped
+     * last, worked on while out, and returned first.
+     */
+    public static ExtractionPlan unwindTo(int position) {
+        return new ExtractionPlan(new boolean[position + 1], 0);
+    }
+
+    /**
+     * Plan that pops every position in the given order and pushes them back in that order,
+     * keeping nothing; the last one pushed ends on top. The order must be a permutation of
+     * 0..n-1. See {@link ReorderPlanner}.
+     */
+    public static ExtractionPlan reorder(int[] putBackOrder) {
+        return new ExtractionPlan(new boolean[putBackOrder.length], 0, putBackOrder.clone());
+    }
+
+    public int popCount() {
+        return popCount;
+    }
+
+    public int keptCount() {
+        return keptCount;
+    }
+
+    /** Whether this is a reordering plan, whose put-back order is not the original one. */
+    public boolean hasCustomOrder() {
+        return putBack != null;
+    }
+
+    public boolean keeps(int popPosition) {
+        return popPosition >= 0 && popPosition < popCount && keep[popPosition];
+    }
+
+    /**
+     * Pop positions to return to the bundle, in the order to return them. The bundle is
+     * FILO, so the last entry popped goes back first; that leaves every unselected entry
+     * in the order it had before the operation.
+     */
+    public int[] putBackOrder() {
+        if (putBack != null) return putBack.clone();
+        int[] order = new int[popCount - keptCount];
+        int next = 0;
+        for (int position = popCount - 1; position >= 0; position--) {
+            if (!keep[position]) {
+                order[next++] = position;
+            }
+        }
+        return order;
+    }
+
+    @Override
+    public String toString() {
+        if (putBack != null) {
+            return "ExtractionPlan{pops=" + popCount + ", putBack=" + Arrays.toString(putBack) + "}";
+        }
+        return "ExtractionPlan{pops=" + popCount + ", keep=" + Arrays.toString(keep) + "}";
+    }
+}
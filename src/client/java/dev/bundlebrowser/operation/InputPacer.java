@@ -0,0 +1,86 @@
+package dev.bundlebrowser.operation;
+
+/**
+ * Hands out a per-tick budget of container inputs to running operations, and tunes that
+ * budget to what the server tolerates.
+ *
+ * Operations ask for a whole step at a time (an extract+place pair, say) and run it in the
+ * same tick as the step before it; the client predicts every PICKUP locally, so the next
+ * step already sees the result. Once the budget is spent they wait for the next tick.
+ *
+ * The budget is AIMD-controlled: every step the server lets through without a correction
+ * raises it by 1/rate (about one input per tick for each full tick's worth of clean steps),
+ * and every correction halves it. Anti-spam plugins answer clicking too fast with exactly
+ * such corrections (slot resyncs, rubber-banding), so the rate settles just under the
+ * server's limit. Round-trip time is tracked the same way TCP does, as a smoothed average.
+ */
+public final class InputPacer {
+    // Room for a whole pick-up/place pair, the costliest regular step, so halving after
+    // corrections never slows an operation below one step per tick whichever strategy it uses
+    public static final int MIN_INPUTS_PER_TICK = Math.max(
+            ClickStrategy.CURSOR_ON_BUNDLE.popInputs(), ClickStrategy.CURSOR_ON_BUNDLE.returnInputs());
+    private static final int TICK_MS = 50;
+
+    private final boolean adaptive;
+    private final int maxInputsPerTick;
+
+    private double rate;
+    private double smoothedRttMs;
+    private int usedThisTick;
+
+    public InputPacer(int initialInputsPerTick, int maxInputsPerTick, boolean adaptive) {
+        this.adaptive = adaptive;
+        this.maxInputsPerTick = maxInputsPerTick;
+        reset(initialInputsPerTick);
+    }
+
+    /** Starts over from a known rate, e.g. the one learned for the server just joined. */
+    public void reset(double inputsPerTick) {
+        rate = Math.clamp(inputsPerTick, MIN_INPUTS_PER_TICK, maxInputsPerTick);
+        smoothedRttMs = 0;
+    }
+
+    /** Current budget in inputs per tick, as learned so far. */
+    public double rate() {
+        return rate;
+    }
+
+    /** Claims budget for a step; false means wait for the next tick. */
+    public boolean tryConsume(int inputs) {
+        // A step larger than the whole budget still runs, alone, so it can never starve
+        if (usedThisTick > 0 && usedThisTick + inputs > (int) rate) return false;
+        usedThisTick += inputs;
+        return true;
+    }
+
+    /** Refills the budget. Call once per client tick, before operations run. */
+    public void onTick() {
+        usedThisTick = 0;
+    }
+
+    /** Feeds one round-trip measurement (the server's reported latency, or a timed correction). */
+    public void sampleRtt(int rttMs) {
+        if (rttMs <= 0) return;
+        smoothedRttMs = smoothedRttMs == 0 ? rttMs : smoothedRttMs * 7 / 8 + rttMs / 8.0;
+    }
+
+    /** Round trip in ticks, with headroom for jitter; at least two ticks even in singleplayer. */
+    public int rttTicks() {
+        return (int) (smoothedRttMs * 3 / 2 / TICK_MS) + 2;
+    }
+
+    /** Steps the server let through without complaint: additive increase. */
+    public void onConfirmed(int steps) {
+        if (!adaptive) return;
+        for (int i = 0; i < steps; i++) {
+            rate = Math.min(maxInputsPerTick, rate + 1.0 / rate);
+        }
+    }
+
+    /** The server corrected the menu while steps were in flight: multiplicative decrease. */
+    public void onCorrection(int ticksSinceSend) {
+        sampleRtt(ticksSinceSend * TICK_MS);
+        if (!adaptive) return;
+        rate = Math.max(MIN_INPUTS_PER_TICK, rate / 2);
+    }
+}
@@ -0,0 +1,120 @@
+package dev.bundlebrowser.operation;
+
+import dev.bundlebrowser.util.BundleHelper;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.ToIntFunction;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+
+/**
+ * Which inventory stacks go into a bundle, how much of each, and in what order, worked out
+ * against a simulation of the bundle ({@link BundleSpace}) before the first click. Every
+ * insert the operation then sends is one the bundle takes, so a full bundle costs no
+ * rejected clicks.
+ *
+ * Stacks are admitted most used first, whole while they fit. Of the rest, the most used one
+ * that still fits in part tops the bundle up. The bundle is FILO, so the admitted stacks go
+ * in least used first and the most used end up nearest the top. The partial stack goes in
+ * last whatever its use: a carried bundle takes all it can of a stack, so only the final
+ * insert can be held to an exact count.
+ */
+public final class InsertPlan {
+    /**
+     * One left-click with the bundle on the cursor.
+     *
+     * @param stack a copy of what the slot held when planned; the insert is skipped if it changed
+     * @param count how many of its items go in
+     */
+    public record Insert(int slotId, ItemStack stack, int count) {}
+
+    private final List<Insert> inserts;
+    private final int itemsThatFit;
+    private final int stacksLeftOut;
+
+    private InsertPlan(List<Insert> inserts, int itemsThatFit, int stacksLeftOut) {
+        this.inserts = inserts;
+        this.itemsThatFit = itemsThatFit;
+        this.stacksLeftOut = stacksLeftOut;
+    }
+
+    /**
+     * @param sourceSlots menu slots to load from; empty slots and bundles are passed over
+     * @param uses how often the player takes each item out, for the order
+     */
+    public static InsertPlan compute(MenuView view, ItemStack bundle, BitSet sourceSlots, ToIntFunction<Item> uses) {
+        List<Integer> candidates = new ArrayList<>();
+        for (int i = sourceSlots.nextSetBit(0); i >= 0; i = sourceSlots.nextSetBit(i + 1)) {
+            ItemStack stack = view.item(i);
+            if (!stack.isEmpty() && !BundleHelper.isBundle(stack)) {
+                candidates.add(i);
+            }
+        }
+        // Most used first, slot order among equals (the sort is stable)
+        Comparator<Integer> byUse = Comparator.comparingInt(i -> uses.applyAsInt(view.item(i).getItem()));
+        candidates.sort(byUse.reversed());
+
+        BundleSpace space = new BundleSpace(bundle);
+        List<Insert> whole = new ArrayList<>();
+        List<Integer> partlyFitting = new ArrayList<>();
+        for (int slotId : candidates) {
+            ItemStack stack = view.item(slotId);
+            if (space.insertWhole(stack)) {
+                whole.add(new Insert(slotId, stack.copy(), stack.getCount()));
+            } else {
+                partlyFitting.add(slotId);
+            }
+        }
+        Insert partial = null;
+        for (int slotId : partlyFitting) {
+            ItemStack stack = view.item(slotId);
+            int fits = space.insertWhatFits(stack);
+            if (fits > 0) {
+                partial = new Insert(slotId, stack.copy(), fits);
+                break;
+            }
+        }
+
+        // Least used in first, so the most used end on top
+        List<Insert> ordered = new ArrayList<>(whole.reversed());
+        if (partial != null) {
+            ordered.add(partial);
+        }
+        int items = 0;
+        for (Insert insert : ordered) {
+            items += insert.count();
+        }
+        return new InsertPlan(List.copyOf(ordered), items, candidates.size() - ordered.size());
+    }
+
+    /** Inserts in click order. */
+    public List<Insert> inserts() {
+        return inserts;
+    }
+
+    public boolean isEmpty() {
+        return inserts.isEmpty();
+    }
+
+    public int itemsThatFit() {
+        return itemsThatFit;
+    }
+
+    /** Candidate stacks that did not fit at all. */
+    public int stacksLeftOut() {
+        return stacksLeftOut;
+    }
+
+    /** Taking the bundle, one click per insert, putting it back. */
+    public int expectedClicks() {
+        return inserts.isEmpty() ? 0 : inserts.size() + 2;
+    }
+
+    @Override
+    public String toString() {
+        return inserts.size() + " inserts, " + itemsThatFit + " items";
+    }
+}
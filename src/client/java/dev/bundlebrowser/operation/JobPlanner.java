@@ -0,0 +1,259 @@
+package dev.bundlebrowser.operation;
+
+import dev.bundlebrowser.util.BundleFingerprint;
+import dev.bundlebrowser.util.BundleHelper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.inventory.AbstractContainerMenu;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+
+/**
+ * Plans a job that moves entries between several bundles, as a list of stages run one after
+ * another, each popping one source bundle along a route (see {@link BundleOperation#route}).
+ *
+ * The whole job is planned in one pass against simulated bundles ({@link BundleSpace}), so
+ * later stages already see what earlier ones will have put in. A routed entry costs two
+ * inputs (pop, insert into the target); an entry in the way of a deeper one costs four more
+ * (stash, then pick up and put back), and moves nothing. So clicks are kept down in two
+ * rounds: first every source gives up the run of entries on its top that can go somewhere
+ * directly, and only then do sources dig past entries that stay, while targets still have
+ * room. Stages on the same source that end up next to each other are joined into one.
+ */
+public final class JobPlanner {
+    public enum Kind { MERGE, SPLIT, FILL }
+
+    /**
+     * One source bundle's share of a job: where each entry from its top goes, -1 to stay, and
+     * the fingerprint the source is expected to have when the stage starts.
+     */
+    public record Stage(int sourceSlotId, DestinationPlan routes, long sourceFingerprint) {
+        public int entriesMoved() {
+            int moved = 0;
+            for (int i = 0; i < routes.fitCount(); i++) {
+                if (routes.destination(i) >= 0) moved++;
+            }
+            return moved;
+        }
+
+        /** Inputs the stage costs when nothing is lost: two per pop, two per entry put back. */
+        public int expectedClicks() {
+            ClickStrategy strategy = ClickStrategy.CURSOR_ON_BUNDLE;
+            return strategy.popInputs() * routes.fitCount() + strategy.returnInputs() * (routes.fitCount() - entriesMoved());
+        }
+    }
+
+    // Picks the target bundle for an entry among the simulated ones, committing the insert
+    private interface Router {
+        int route(ItemStack entry);
+    }
+
+    private record Source(int slotId, List<ItemStack> contents) {}
+
+    private final Map<Integer, BundleSpace> spaces = new LinkedHashMap<>();
+    private final int scratchSlots;
+    private final List<Stage> stages = new ArrayList<>();
+
+    private JobPlanner(int scratchSlots) {
+        this.scratchSlots = scratchSlots;
+    }
+
+    /** Moves everything the source holds into the other bundles of the inventory that have room. */
+    public static List<Stage> merge(AbstractContainerMenu menu, Player player, int sourceSlotId) {
+        return merge(menu, player, sourceSlotId, bundleSlots(menu, player, sourceSlotId));
+    }
+
+    /**
+     * Moves the source's entries into the given target bundles, in their order, preferring a
+     * target that already holds the same item so types stay together.
+     */
+    public static List<Stage> merge(AbstractContainerMenu menu, Player player, int sourceSlotId, List<Integer> targetSlots) {
+        JobPlanner planner = new JobPlanner(scratchSlots(menu, player));
+        for (int slot : targetSlots) {
+            planner.spaces.put(slot, new BundleSpace(menu.getSlot(slot).getItem()));
+        }
+        Map<Item, List<Integer>> holders = new HashMap<>();
+        for (int slot : targetSlots) {
+            for (ItemStack entry : BundleHelper.getContents(menu.getSlot(slot).getItem())) {
+                List<Integer> slots = holders.computeIfAbsent(entry.getItem(), k -> new ArrayList<>());
+                if (!slots.contains(slot)) slots.add(slot);
+            }
+        }
+        Router router = entry -> {
+            for (int slot : holders.getOrDefault(entry.getItem(), List.of())) {
+                if (planner.spaces.get(slot).insertWhole(entry)) return slot;
+            }
+            for (int slot : targetSlots) {
+                if (planner.spaces.get(slot).insertWhole(entry)) {
+                    holders.computeIfAbsent(entry.getItem(), k -> new ArrayList<>()).add(slot);
+                    return slot;
+                }
+            }
+            return -1;
+        };
+        return planner.plan(List.of(source(menu, sourceSlotId)), router);
+    }
+
+    /**
+     * Sorts the source's entries out by item: each goes into a bundle that holds only that item,
+     * or else into an empty bundle, which from then on is that item's.
+     */
+    public static List<Stage> split(AbstractContainerMenu menu, Player player, int sourceSlotId) {
+        JobPlanner planner = new JobPlanner(scratchSlots(menu, player));
+        Map<Item, List<Integer>> byItem = new HashMap<>();
+        List<Integer> emptyBundles = new ArrayList<>();
+        for (int slot : bundleSlots(menu, player, sourceSlotId)) {
+            ItemStack bundle = menu.getSlot(slot).getItem();
+            List<ItemStack> contents = BundleHelper.getContents(bundle);
+            if (contents.isEmpty()) {
+                emptyBundles.add(slot);
+            } else if (holdsOnly(contents, contents.get(0).getItem())) {
+                byItem.computeIfAbsent(contents.get(0).getItem(), k -> new ArrayList<>()).add(slot);
+            } else {
+                continue;
+            }
+            planner.spaces.put(slot, new BundleSpace(bundle));
+        }
+        Router router = entry -> {
+            List<Integer> slots = byItem.computeIfAbsent(entry.getItem(), k -> new ArrayList<>());
+            for (int slot : slots) {
+                if (planner.spaces.get(slot).insertWhole(entry)) return slot;
+            }
+            for (int i = 0; i < emptyBundles.size(); i++) {
+                int slot = emptyBundles.get(i);
+                if (planner.spaces.get(slot).insertWhole(entry)) {
+                    emptyBundles.remove(i);
+                    slots.add(slot);
+                    return slot;
+                }
+            }
+            return -1;
+        };
+        return planner.plan(List.of(source(menu, sourceSlotId)), router);
+    }
+
+    /**
+     * Fills the target from every other bundle in the inventory until it is full. A target that
+     * already holds something only takes more of the items it holds; an empty one takes anything.
+     */
+    public static List<Stage> fill(AbstractContainerMenu menu, Player player, int targetSlotId) {
+        JobPlanner planner = new JobPlanner(scratchSlots(menu, player));
+        ItemStack target = menu.getSlot(targetSlotId).getItem();
+        planner.spaces.put(targetSlotId, new BundleSpace(target));
+        List<Item> wanted = new ArrayList<>();
+        for (ItemStack entry : BundleHelper.getContents(target)) {
+            if (!wanted.contains(entry.getItem())) wanted.add(entry.getItem());
+        }
+        List<Source> sources = new ArrayList<>();
+        for (int slot : bundleSlots(menu, player, targetSlotId)) {
+            if (!BundleHelper.isEmpty(menu.getSlot(slot).getItem())) {
+                sources.add(source(menu, slot));
+            }
+        }
+        BundleSpace space = planner.spaces.get(targetSlotId);
+        Router router = entry -> (wanted.isEmpty() || wanted.contains(entry.getItem())) && space.insertWhole(entry)
+                ? targetSlotId : -1;
+        return planner.plan(sources, router);
+    }
+
+    private List<Stage> plan(List<Source> sources, Router anyEntry) {
+        // A bundle on the cursor takes in the bundle it is clicked on instead of going into
+        // it, so nested bundles stay where they are
+        Router router = entry -> BundleHelper.isBundle(entry) ? -1 : anyEntry.route(entry);
+        int[] done = new int[sources.size()];
+        // Round one: the top of every source, as far as entries can go somewhere directly
+        for (int s = 0; s < sources.size(); s++) {
+            Source source = sources.get(s);
+            int[] routes = new int[source.contents().size()];
+            int routed = 0;
+            int items = 0;
+            while (routed < routes.length) {
+                ItemStack entry = source.contents().get(routed);
+                int target = router.route(entry);
+                if (target == -1) break;
+                routes[routed++] = target;
+                items += entry.getCount();
+            }
+            done[s] = routed;
+            addStage(source.slotId(), Arrays.copyOf(routes, routed), items, BundleFingerprint.of(source.contents()));
+        }
+        // Round two: dig past entries that stay, as far as scratch slots allow. Only stays above
+        // a routed entry get stashed; the ones below the last routed entry are never popped
+        for (int s = 0; s < sources.size(); s++) {
+            Source source = sources.get(s);
+            List<ItemStack> rest = source.contents().subList(done[s], source.contents().size());
+            int[] routes = new int[rest.size()];
+            int length = 0;
+            int stays = 0;
+            int pendingStays = 0;
+            int items = 0;
+            for (int i = 0; i < rest.size(); i++) {
+                int target = router.route(rest.get(i));
+                routes[i] = target;
+                if (target == -1) {
+                    pendingStays++;
+                    continue;
+                }
+                if (stays + pendingStays > scratchSlots) break;
+                stays += pendingStays;
+                pendingStays = 0;
+                length = i + 1;
+                items += rest.get(i).getCount();
+            }
+            addStage(source.slotId(), Arrays.copyOf(routes, length), items, BundleFingerprint.of(rest));
+        }
+        return stages;
+    }
+
+    private void addStage(int sourceSlotId, int[] routes, int items, long sourceFingerprint) {
+        if (routes.length == 0) return;
+        Stage last = stages.isEmpty() ? null : stages.get(stages.size() - 1);
+        if (last != null && last.sourceSlotId() == sourceSlotId) {
+            // The previous stage left this source's top exactly where this one starts
+            stages.set(stages.size() - 1, new Stage(sourceSlotId, last.routes().extendedBy(routes, items),
+                    last.sourceFingerprint()));
+            return;
+        }
+        stages.add(new Stage(sourceSlotId, DestinationPlan.routes(routes, items), sourceFingerprint));
+    }
+
+    private static Source source(AbstractContainerMenu menu, int slotId) {
+        return new Source(slotId, BundleHelper.getContents(menu.getSlot(slotId).getItem()));
+    }
+
+    private static boolean holdsOnly(List<ItemStack> contents, Item item) {
+        for (ItemStack entry : contents) {
+            if (entry.getItem() != item) return false;
+        }
+        return true;
+    }
+
+    /** Bundles in the menu's player-inventory slots, in slot order, minus one. */
+    private static List<Integer> bundleSlots(AbstractContainerMenu menu, Player player, int excludedSlotId) {
+        List<Integer> slots = new ArrayList<>();
+        BitSet inventory = DestinationPlan.playerSlots(menu, player, excludedSlotId);
+        for (int i = inventory.nextSetBit(0); i >= 0; i = inventory.nextSetBit(i + 1)) {
+            if (BundleHelper.isBundle(menu.getSlot(i).getItem())) {
+                slots.add(i);
+            }
+        }
+        return slots;
+    }
+
+    // Entries that stay are stashed in empty inventory slots until the stage puts them back
+    private static int scratchSlots(AbstractContainerMenu menu, Player player) {
+        int empty = 0;
+        BitSet inventory = DestinationPlan.playerSlots(menu, player, -1);
+        for (int i = inventory.nextSetBit(0); i >= 0; i = inventory.nextSetBit(i + 1)) {
+            if (menu.getSlot(i).getItem().isEmpty()) empty++;
+        }
+        return empty;
+    }
+}
@@ -0,0 +1,47 @@
+package dev.bundlebrowser.operation;
+
+import java.util.ArrayDeque;
+import net.minecraft.client.Minecraft;
+import net.minecraft.world.inventory.AbstractContainerMenu;
+
+/**
+ * Runs queued bundle jobs one at a time, in the order they were submitted. A job whose menu is
+ * gone by the time its turn comes fails on its first tick, so stale jobs drain on their own.
+ */
+public final class JobScheduler {
+    private final ArrayDeque<BundleJob> queue = new ArrayDeque<>();
+    private final OperationRunner runner;
+
+    public JobScheduler(OperationRunner runner) {
+        this.runner = runner;
+    }
+
+    public void submit(BundleJob job) {
+        queue.add(job);
+    }
+
+    /** The job running or next to run on this menu, or null. */
+    public BundleJob current(AbstractContainerMenu menu) {
+        for (BundleJob job : queue) {
+            if (job.menu() == menu) return job;
+        }
+        return null;
+    }
+
+    /** Cancels every job on this menu: the running one after its current stage, queued ones outright. */
+    public void cancelAll(AbstractContainerMenu menu) {
+        for (BundleJob job : queue) {
+            if (job.menu() == menu) job.cancel();
+        }
+    }
+
+    /** Call once per client tick, after the operations have ticked. */
+    public void tick(Minecraft client) {
+        while (!queue.isEmpty()) {
+            BundleJob head = queue.peek();
+            head.tick(client, runner);
+            if (!head.isFinished()) return;
+            queue.poll();
+        }
+    }
+}
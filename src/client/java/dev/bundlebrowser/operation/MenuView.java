@@ -0,0 +1,118 @@
+package dev.bundlebrowser.operation;
+
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.player.LocalPlayer;
+import net.minecraft.world.inventory.AbstractContainerMenu;
+import net.minecraft.world.inventory.ContainerInput;
+import net.minecraft.world.item.ItemStack;
+
+/**
+ * The menu as a {@link BundleOperation} sees it: what it reads (slot stacks, the cursor, the
+ * stateId, what a slot allows) and where its inputs go. In the game that is the open menu
+ * and the game mode ({@link #of}); offline it is a simulated menu (see the simulate source
+ * set), so the operation that runs in the game is the one the simulator checks.
+ */
+public interface MenuView {
+    /** The game's menu behind this view, which slot events and the runner key on; null offline. */
+    AbstractContainerMenu menu();
+
+    /** Moves whenever the server pushes an update; never for a click the client predicted. */
+    int stateId();
+
+    int slotCount();
+
+    ItemStack item(int slotId);
+
+    ItemStack carried();
+
+    /** True for a slot backed by the player's own inventory, whatever the menu. */
+    boolean isPlayerSlot(int slotId);
+
+    boolean mayPickup(int slotId);
+
+    boolean mayPlace(int slotId, ItemStack stack);
+
+    /** How many of the stack the slot holds at most. */
+    int maxStackSize(int slotId, ItemStack stack);
+
+    /** One PICKUP input on a slot: button 0 is a left-click, 1 a right-click. */
+    void pickup(int slotId, int button);
+
+    /** True while this menu is the one open, so inputs land on it. */
+    boolean isOpen();
+
+    /** False once there is no player left for the menu to come back to. */
+    boolean canResume();
+
+    /** The live game: reads the menu, and each input is predicted locally and sent to the server. */
+    static MenuView of(Minecraft client, LocalPlayer player, AbstractContainerMenu menu) {
+        return new MenuView() {
+            @Override
+            public AbstractContainerMenu menu() {
+                return menu;
+            }
+
+            @Override
+            public int stateId() {
+                return menu.getStateId();
+            }
+
+            @Override
+            public int slotCount() {
+                return menu.slots.size();
+            }
+
+            @Override
+            public ItemStack item(int slotId) {
+                return menu.getSlot(slotId).getItem();
+            }
+
+            @Override
+            public ItemStack carried() {
+                return menu.getCarried();
+            }
+
+            @Override
+            public boolean isPlayerSlot(int slotId) {
+                return menu.getSlot(slotId).container == player.getInventory();
+            }
+
+            @Override
+            public boolean mayPickup(int slotId) {
+                return menu.getSlot(slotId).mayPickup(player);
+            }
+
+            @Override
+            public boolean mayPlace(int slotId, ItemStack stack) {
+                return menu.getSlot(slotId).mayPlace(stack);
+            }
+
+            @Override
+            public int maxStackSize(int slotId, ItemStack stack) {
+                return menu.getSlot(slotId).getMaxStackSize(stack);
+            }
+
+            @Override
+            public void pickup(int slotId, int button) {
+                client.gameMode.handleContainerInput(menu.containerId, slotId, button, ContainerInput.PICKUP, player);
+            }
+
+            /*
+             * Operations span many ticks, so the player can change screens mid-operation.
+             * Checking containerId is not enough to detect that: the creative screen's
+             * ItemPickerMenu reuses containerId 0, the same id as InventoryMenu, so vanilla's
+             * mismatched-container guard passes and our clicks would land on a client-side fake
+             * menu our slot indices were never computed against. Only menu identity is a safe check.
+             */
+            @Override
+            public boolean isOpen() {
+                return canResume() && client.player.containerMenu == menu;
+            }
+
+            @Override
+            public boolean canResume() {
+                return client.player != null && client.gameMode != null;
+            }
+        };
+    }
+}
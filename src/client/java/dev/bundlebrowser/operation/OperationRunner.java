@@ -0,0 +1,81 @@
+package dev.bundlebrowser.operation;
+
+import dev.bundlebrowser.BundleBrowserClient;
+
+import java.util.ArrayList;
+import java.util.List;
+import net.minecraft.world.inventory.AbstractContainerMenu;
+
+/**
+ * Ticks running bundle operations, sharing one input budget between them. The runner owns
+ * every operation it starts, and owns each menu for as long as one runs on it: a second
+ * operation on a busy menu would fight the first over the cursor, so it is turned away
+ * before it sends anything. Queueing belongs to {@link JobScheduler}, which plans each stage
+ * only once the menu is free rather than against contents about to change.
+ */
+public final class OperationRunner {
+    private final List<BundleOperation> running = new ArrayList<>();
+    private final InputPacer pacer;
+
+    public OperationRunner(InputPacer pacer) {
+        this.pacer = pacer;
+    }
+
+    /**
+     * Starts the operation and runs its first tick right away, so the first inputs go out this
+     * frame. If another operation still works on the same menu this one finishes as FAILED
+     * instead, without an input sent, and its callback runs as for any other finish.
+     *
+     * @return whether the operation started
+     */
+    public boolean start(BundleOperation operation) {
+        if (isBusy(operation.menu())) {
+            BundleBrowserClient.LOGGER.debug("Menu already has a bundle operation running, not starting another");
+            operation.reject();
+            return false;
+        }
+        running.add(operation);
+        operation.tick(pacer);
+        return true;
+    }
+
+    /** True while an operation is still working on this menu; a second one would fight it over the cursor. */
+    public boolean isBusy(AbstractContainerMenu menu) {
+        return current(menu) != null;
+    }
+
+    /** The operation working on this menu, or null. */
+    public BundleOperation current(AbstractContainerMenu menu) {
+        for (int i = 0; i < running.size(); i++) {
+            BundleOperation operation = running.get(i);
+            if (operation.menu() == menu && !operation.isFinished()) return operation;
+        }
+        return null;
+    }
+
+    /**
+     * Cancels the operation working on this menu, as {@link BundleOperation#cancel} does: it
+     * stops popping and puts back what it stashed over the next ticks, and holds the menu
+     * until that is done.
+     *
+     * @return whether there was one to cancel
+     */
+    public boolean cancel(AbstractContainerMenu menu) {
+        BundleOperation operation = current(menu);
+        if (operation == null) return false;
+        operation.cancel();
+        return true;
+    }
+
+    /** Call once per client tick, after the pacer has been refilled. */
+    public void tick() {
+        // Indexed, so the every-tick pass allocates nothing
+        for (int i = 0; i < running.size(); i++) {
+            BundleOperation operation = running.get(i);
+            operation.tick(pacer);
+            if (operation.isFinished()) {
+                running.remove(i--);
+            }
+        }
+    }
+}
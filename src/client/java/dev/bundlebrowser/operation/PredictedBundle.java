@@ -0,0 +1,62 @@
+package dev.bundlebrowser.operation;
+
+import java.util.ArrayList;
+import java.util.List;
+import net.minecraft.world.item.ItemStack;
+
+/**
+ * A local FILO model of a bundle's entries, used to show where an operation will leave the
+ * bundle before the server has seen all of its steps. Index 0 is the next entry out, the
+ * same order BundleHelper.getContents uses.
+ */
+public final class PredictedBundle {
+    // Stored reversed, top of the stack last, so pops and pushes don't shift the whole list
+    private final ArrayList<ItemStack> stack;
+
+    public PredictedBundle(List<ItemStack> contents) {
+        stack = new ArrayList<>(contents.size() + 4);
+        for (int i = contents.size() - 1; i >= 0; i--) {
+            stack.add(contents.get(i));
+        }
+    }
+
+    /** Removes and returns the next entry out, or EMPTY if there is none. */
+    public ItemStack pop() {
+        return stack.isEmpty() ? ItemStack.EMPTY : stack.remove(stack.size() - 1);
+    }
+
+    /** Inserts on top, where a vanilla bundle puts a newly added entry. */
+    public void push(ItemStack entry) {
+        if (!entry.isEmpty()) {
+            stack.add(entry);
+        }
+    }
+
+    /**
+     * Adds an item from outside the bundle the way vanilla does: a stackable item already
+     * inside merges into that entry, which moves to the top; anything else goes on top.
+     */
+    public void insert(ItemStack entry) {
+        if (entry.isEmpty()) return;
+        if (entry.isStackable()) {
+            for (int i = stack.size() - 1; i >= 0; i--) {
+                ItemStack existing = stack.get(i);
+                if (ItemStack.isSameItemSameComponents(existing, entry)) {
+                    stack.remove(i);
+                    stack.add(existing.copyWithCount(existing.getCount() + entry.getCount()));
+                    return;
+                }
+            }
+        }
+        stack.add(entry);
+    }
+
+    /** Entries in extraction order. */
+    public List<ItemStack> contents() {
+        List<ItemStack> contents = new ArrayList<>(stack.size());
+        for (int i = stack.size() - 1; i >= 0; i--) {
+            contents.add(stack.get(i));
+        }
+        return contents;
+    }
+}
@@ -0,0 +1,75 @@
+package dev.bundlebrowser.operation;
+
+import dev.bundlebrowser.config.UsageStore;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.world.item.ItemStack;
+
+/**
+ * Works out the cheapest way to put a bundle's entries into a new order.
+ *
+ * An order is an array where order[t] is the current pop position of the entry that should
+ * end up at position t. Entries at the bottom that are already where they belong never have
+ * to move; everything above the deepest misplaced entry has to come out at least once. So
+ * the minimum is: pop down to the deepest misplaced entry, then push those entries back
+ * deepest-target first. That is two inputs per moved entry (one while carrying the bundle)
+ * and one free slot per moved entry as scratch space.
+ */
+public final class ReorderPlanner {
+    /** Preset orders, each stable so ties keep their current order and need no moves. */
+    public enum Sort {
+        MOST_USED,
+        BY_TYPE,
+        BY_COUNT
+    }
+
+    private ReorderPlanner() {}
+
+    /** Entries that have to move to reach the order; 0 when it already holds. */
+    public static int movesNeeded(int[] order) {
+        int settled = order.length;
+        while (settled > 0 && order[settled - 1] == settled - 1) {
+            settled--;
+        }
+        return settled;
+    }
+
+    /** The plan reaching the order, or null if the bundle is already in it. */
+    public static ExtractionPlan plan(int[] order) {
+        int moves = movesNeeded(order);
+        if (moves == 0) return null;
+        // Positions below the moved block are fixed, so the block is a permutation of 0..moves-1
+        int[] putBack = new int[moves];
+        for (int target = moves - 1, next = 0; target >= 0; target--) {
+            putBack[next++] = order[target];
+        }
+        return ExtractionPlan.reorder(putBack);
+    }
+
+    /** The order a preset sort gives, as an order array for {@link #plan}. */
+    public static int[] sortedOrder(List<ItemStack> contents, Sort sort, UsageStore usage) {
+        Comparator<Integer> comparator = switch (sort) {
+            case MOST_USED -> Comparator.comparingInt(
+                    (Integer i) -> usage.uses(contents.get(i).getItem())).reversed();
+            case BY_TYPE -> Comparator.comparing(
+                    (Integer i) -> BuiltInRegistries.ITEM.getKey(contents.get(i).getItem()).toString());
+            case BY_COUNT -> Comparator.comparingInt((Integer i) -> contents.get(i).getCount()).reversed();
+        };
+        // Stream sorts are stable, so equal entries stay in their current order
+        return IntStream.range(0, contents.size()).boxed().sorted(comparator).mapToInt(Integer::intValue).toArray();
+    }
+
+    /** Moves one entry to another position of the order, shifting the ones between. */
+    public static void move(int[] order, int from, int to) {
+        int moved = order[from];
+        if (from < to) {
+            System.arraycopy(order, from + 1, order, from, to - from);
+        } else {
+            System.arraycopy(order, to, order, to + 1, from - to);
+        }
+        order[to] = moved;
+    }
+}
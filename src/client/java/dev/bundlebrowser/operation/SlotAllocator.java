@@ -0,0 +1,148 @@
+package dev.bundlebrowser.operation;
+
+import dev.bundlebrowser.util.ItemKey;
+import dev.bundlebrowser.util.MenuSlotEvents;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import net.minecraft.world.inventory.AbstractContainerMenu;
+import net.minecraft.world.item.ItemStack;
+
+/**
+ * Destination slots for items coming out of a bundle, indexed once per operation and kept
+ * current slot by slot: from the operation's own clicks via {@link #refresh}, and from the
+ * server through {@link MenuSlotEvents}.
+ *
+ * Besides empty slots it tracks partial stacks by item and components, so an item can merge
+ * into a stack that has room for all of it. Slots handed to in-flight steps are reserved
+ * until the step is confirmed, so a correction that briefly shows them empty cannot hand
+ * them out twice.
+ */
+public final class SlotAllocator implements MenuSlotEvents.Listener {
+    private final MenuView view;
+    private final BitSet candidates = new BitSet();
+    private final BitSet empty = new BitSet();
+    private final BitSet reserved = new BitSet();
+    private final Map<ItemKey, BitSet> partialByItem = new HashMap<>();
+    private final ItemKey[] keyAt;
+
+    private SlotAllocator(MenuView view) {
+        this.view = view;
+        this.keyAt = new ItemKey[view.slotCount()];
+    }
+
+    /**
+     * Indexes every player-inventory slot of the menu except the bundle's own. Matches on the
+     * slot's backing inventory, so it works across all container types.
+     */
+    public static SlotAllocator forMenu(MenuView view, int excludedSlotId) {
+        SlotAllocator allocator = new SlotAllocator(view);
+        for (int i = 0; i < view.slotCount(); i++) {
+            if (i != excludedSlotId && view.isPlayerSlot(i)) {
+                allocator.candidates.set(i);
+                allocator.refresh(i);
+            }
+        }
+        return allocator;
+    }
+
+    @Override
+    public AbstractContainerMenu menu() {
+        return view.menu();
+    }
+
+    /**
+     * Where the item should go, or -1 if nowhere. With merging allowed, a partial stack that
+     * can take the whole item wins over an empty slot; a partial fit would leave the rest on
+     * the cursor, so it never counts.
+     */
+    public int destinationFor(ItemStack item, boolean allowMerge) {
+        if (allowMerge && !item.isEmpty()) {
+            BitSet partials = partialByItem.get(new ItemKey(item));
+            if (partials != null) {
+                for (int i = partials.nextSetBit(0); i >= 0; i = partials.nextSetBit(i + 1)) {
+                    if (reserved.get(i)) continue;
+                    ItemStack existing = view.item(i);
+                    if (existing.getCount() + item.getCount() <= view.maxStackSize(i, existing)) {
+                        return i;
+                    }
+                }
+            }
+        }
+        for (int i = empty.nextSetBit(0); i >= 0; i = empty.nextSetBit(i + 1)) {
+            // Armor and offhand slots belong to the player inventory too, but refuse most items
+            if (!reserved.get(i) && (item.isEmpty() || view.mayPlace(i, item))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Empty slots not handed to an in-flight step. */
+    public int emptySlotCount() {
+        BitSet free = (BitSet) empty.clone();
+        free.andNot(reserved);
+        return free.cardinality();
+    }
+
+    public void reserve(int slotId) {
+        reserved.set(slotId);
+    }
+
+    public void release(int slotId) {
+        reserved.clear(slotId);
+    }
+
+    /** Local state is authoritative again; nothing is in flight any more. */
+    public void releaseAll() {
+        reserved.clear();
+    }
+
+    /** Stops handing out a slot for good, e.g. one an enclosing operation still needs. */
+    public void exclude(int slotId) {
+        forget(slotId);
+        candidates.clear(slotId);
+        empty.clear(slotId);
+    }
+
+    /** Re-reads one slot; call after any click that may have changed it. */
+    public void refresh(int slotId) {
+        if (!candidates.get(slotId)) return;
+        forget(slotId);
+
+        ItemStack stack = view.item(slotId);
+        empty.set(slotId, stack.isEmpty());
+        if (!stack.isEmpty() && stack.getCount() < view.maxStackSize(slotId, stack)) {
+            ItemKey key = new ItemKey(stack.copyWithCount(1));
+            partialByItem.computeIfAbsent(key, k -> new BitSet()).set(slotId);
+            keyAt[slotId] = key;
+        }
+    }
+
+    private void forget(int slotId) {
+        ItemKey old = keyAt[slotId];
+        if (old != null) {
+            BitSet slots = partialByItem.get(old);
+            slots.clear(slotId);
+            if (slots.isEmpty()) {
+                partialByItem.remove(old);
+            }
+            keyAt[slotId] = null;
+        }
+    }
+
+    @Override
+    public void onSlotChanged(int slotId) {
+        if (slotId >= 0 && slotId < keyAt.length) {
+            refresh(slotId);
+        }
+    }
+
+    @Override
+    public void onContentsReplaced() {
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            refresh(i);
+        }
+    }
+}
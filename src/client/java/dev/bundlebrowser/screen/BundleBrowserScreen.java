@@ -2,46 +2,107 @@ package dev.bundlebrowser.screen;
 
 import com.mojang.blaze3d.platform.InputConstants;
 import dev.bundlebrowser.BundleBrowserClient;
+import dev.bundlebrowser.metrics.MetricsOverlay;
+import dev.bundlebrowser.operation.BundleJob;
+import dev.bundlebrowser.operation.BundleOperation;
+import dev.bundlebrowser.operation.DestinationPlan;
+import dev.bundlebrowser.operation.ExtractionPlan;
+import dev.bundlebrowser.operation.InsertPlan;
+import dev.bundlebrowser.operation.JobPlanner;
+import dev.bundlebrowser.operation.MenuView;
+import dev.bundlebrowser.operation.ReorderPlanner;
 import dev.bundlebrowser.util.BundleHelper;
+import dev.bundlebrowser.util.BundleTree;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
+import java.util.Locale;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.gui.GuiGraphicsExtractor;
 import net.minecraft.client.gui.components.Button;
+import net.minecraft.client.gui.components.EditBox;
+import net.minecraft.client.gui.components.Tooltip;
 import net.minecraft.client.gui.screens.Screen;
 import net.minecraft.client.gui.screens.inventory.AbstractContainerScreen;
 import net.minecraft.client.input.KeyEvent;
+import net.minecraft.client.input.MouseButtonEvent;
 import net.minecraft.client.player.LocalPlayer;
+import net.minecraft.core.component.DataComponents;
 import net.minecraft.network.chat.Component;
 import net.minecraft.world.inventory.AbstractContainerMenu;
-import net.minecraft.world.inventory.ContainerInput;
-import net.minecraft.world.inventory.Slot;
 import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.component.BundleContents;
 
 /** Grid view of a bundle's contents, styled like a chest screen. */
 public class BundleBrowserScreen extends Screen {
-    private static final int SLOT_SIZE = BundleSlotWidget.SLOT_SIZE;
-    private static final int BORDER_LEFT = 7;
-    private static final int BORDER_TOP = 17;
+    private static final int SLOT_SIZE = GridLayout.CELL_SIZE;
     private static final int TITLE_Y = 6;
+    private static final int BUTTON_WIDTH = GridLayout.BUTTON_WIDTH;
+    private static final int SMALL_BUTTON_WIDTH = GridLayout.SMALL_BUTTON_WIDTH;
 
     private final int bundleSlotId;
     private final AbstractContainerScreen<?> parentScreen;
     private final AbstractContainerMenu screenHandler;
-    private final int syncId;
 
     private List<ItemStack> contents;
+    // Component values are immutable, so a new instance in the slot means the contents changed
+    private BundleContents shownContents;
     private List<BundleSlotWidget> slotWidgets;
-
-    private int containerX;
-    private int containerY;
-    private int containerWidth;
-    private int containerHeight;
-    private int columns;
-    private int rows;
+    private Button emptyButton;
+    private Button reorderButton;
+    private Button sortButton;
+    private Button applyButton;
+    private Button mergeButton;
+    private Button splitButton;
+    private Button fillButton;
+    private Button cancelButton;
+    private EditBox searchBox;
+    // The query outlives the box, which init() recreates on every resize
+    private String searchQuery = "";
+    private final ContentSearch search = new ContentSearch();
+    // Bundle positions on show while searching, in bundle order; null shows every entry
+    private int[] shown;
+    // The operation this screen started; the browser stays up while it runs
+    private BundleOperation operation;
+    // The multi-bundle job this screen submitted, until it finishes; the grid follows the
+    // real contents meanwhile, since the job plans its stages against other bundles too
+    private BundleJob job;
+    // What the grid showed for the running operation's end state, checked once it finishes
+    private List<ItemStack> prediction;
+    // Bundle positions picked with shift/ctrl-click; survives resizes since init() re-reads it
+    private final BitSet selectedIndices = new BitSet();
+    // Pop positions leading from the slot's bundle to the nested one on show; empty at the top
+    private int[] path = new int[0];
+    private Component nodeTitle;
+    // Reorder mode: the grid shows pendingOrder (target position -> current position) over
+    // reorderBase until it is applied; null when not reordering
+    private int[] pendingOrder;
+    private List<ItemStack> reorderBase;
+    private ReorderPlanner.Sort sort;
+    private int dragFrom = -1;
+    // The menu state the Apply button's room check was made against
+    private int applyCheckedStateId;
+    // Shift turns Empty All toward the open container, when there is one to fill. Read from the
+    // keyboard each tick and on each click, never latched from key events: Shift typed into
+    // the search box, or released while another screen had the keys, must not stick
+    private boolean emptyIntoContainer;
+    // Shift also turns Fill into Load, which takes from the inventory instead of other bundles
+    private boolean loadFromInventory;
+    // What Empty All, each job and Load would do, replanned only when the inventory changes
+    private PlannedTooltip emptyTooltip;
+    private PlannedTooltip mergeTooltip;
+    private PlannedTooltip splitTooltip;
+    private PlannedTooltip fillTooltip;
+    private PlannedTooltip loadTooltip;
+
+    private final GridLayout grid = new GridLayout();
 
     private BundleSlotWidget hoveredSlot;
+    // The progress label only changes with the percentage; rebuilt then, not every frame
+    private int labelPercent = -1;
+    private Component progressLabel;
 
     // Log render failures once per session, not once per frame
     private static boolean renderFailureLogged = false;
@@ -51,7 +112,6 @@ public class BundleBrowserScreen extends Screen {
         this.bundleSlotId = bundleSlotId;
         this.parentScreen = parentScreen;
         this.screenHandler = parentScreen.getMenu();
-        this.syncId = screenHandler.containerId;
         this.slotWidgets = new ArrayList<>();
         this.contents = BundleHelper.getContents(bundleStack);
     }
@@ -66,75 +126,551 @@ public class BundleBrowserScreen extends Screen {
         // an unexpected shape must close the screen, never crash the client
         ItemStack currentBundle;
         try {
-            if (bundleSlotId < 0 || bundleSlotId >= screenHandler.slots.size()) {
-                onClose();
-                return;
-            }
-            currentBundle = screenHandler.getSlot(bundleSlotId).getItem();
+            currentBundle = currentBundle();
         } catch (Exception e) {
             BundleBrowserClient.LOGGER.error("Bundle browser could not read its slot, closing", e);
             onClose();
             return;
         }
-        if (!BundleHelper.isBundle(currentBundle) || BundleHelper.isEmpty(currentBundle)) {
+        if (!BundleHelper.isBundle(currentBundle) || (!isBusy() && BundleHelper.isEmpty(currentBundle))) {
             onClose();
             return;
         }
-        contents = BundleHelper.getContents(currentBundle);
-        int itemCount = contents.size();
-
-        // Calculate grid size (like a chest: up to 9 columns, variable rows)
-        if (itemCount <= 9) {
-            columns = Math.max(1, itemCount);
-            rows = 1;
-        } else if (itemCount <= 18) {
-            columns = 9;
-            rows = 2;
-        } else if (itemCount <= 27) {
-            columns = 9;
-            rows = 3;
-        } else if (itemCount <= 36) {
-            columns = 9;
-            rows = 4;
-        } else if (itemCount <= 45) {
-            columns = 9;
-            rows = 5;
-        } else {
-            columns = 9;
-            rows = 6;
+        ItemStack node = currentNode(currentBundle);
+        contents = BundleHelper.getContents(node);
+        shownContents = node.get(DataComponents.BUNDLE_CONTENTS);
+        updateNodeTitle(node);
+        if (operation != null && path.length == 0) {
+            contents = operation.predictContents(contents);
+            shownContents = null;
         }
 
-        containerWidth = BORDER_LEFT * 2 + columns * SLOT_SIZE + 4;
-        containerHeight = BORDER_TOP + rows * SLOT_SIZE + 14 + 28; // Extra space for button
+        updateSearch();
+        layoutGrid(shownCount());
+        for (int cell = 0; cell < grid.cellCount(); cell++) {
+            addSlotWidget(cell);
+        }
+        bindVisibleCells();
 
-        containerX = (width - containerWidth) / 2;
-        containerY = (height - containerHeight) / 2;
+        emptyIntoContainer = false;
+        loadFromInventory = false;
+        emptyButton = addRenderableWidget(Button.builder(
+                Component.translatable("bundlebrowser.screen.empty"),
+                this::onEmptyButtonClicked
+        ).bounds(0, 0, BUTTON_WIDTH, 20).build());
+        reorderButton = addRenderableWidget(Button.builder(
+                Component.translatable("bundlebrowser.screen.reorder"),
+                button -> enterReorder()
+        ).bounds(0, 0, BUTTON_WIDTH, 20).build());
+        sortButton = addRenderableWidget(Button.builder(sortLabel(), button -> cycleSort())
+                .bounds(0, 0, BUTTON_WIDTH, 20).build());
+        applyButton = addRenderableWidget(Button.builder(
+                Component.translatable("bundlebrowser.screen.apply"),
+                button -> applyReorder()
+        ).bounds(0, 0, BUTTON_WIDTH, 20).build());
+        mergeButton = addRenderableWidget(Button.builder(
+                Component.translatable("bundlebrowser.screen.merge"),
+                button -> startJob(JobPlanner.Kind.MERGE)
+        ).bounds(0, 0, SMALL_BUTTON_WIDTH, 20).build());
+        splitButton = addRenderableWidget(Button.builder(
+                Component.translatable("bundlebrowser.screen.split"),
+                button -> startJob(JobPlanner.Kind.SPLIT)
+        ).bounds(0, 0, SMALL_BUTTON_WIDTH, 20).build());
+        fillButton = addRenderableWidget(Button.builder(
+                Component.translatable("bundlebrowser.screen.fill"),
+                this::onFillButtonClicked
+        ).bounds(0, 0, SMALL_BUTTON_WIDTH, 20).build());
+        cancelButton = addRenderableWidget(Button.builder(
+                Component.translatable("bundlebrowser.screen.cancel"),
+                button -> cancelRunning()
+        ).bounds(0, 0, BUTTON_WIDTH * 2 + 4, 20).build());
+        searchBox = addRenderableWidget(new EditBox(font, 0, 0, grid.searchWidth(), 12,
+                Component.translatable("bundlebrowser.screen.search")));
+        searchBox.setHint(Component.translatable("bundlebrowser.screen.search_hint"));
+        searchBox.setValue(searchQuery);
+        searchBox.setResponder(this::onSearchChanged);
+        emptyTooltip = new PlannedTooltip(emptyButton, this::planEmptyTooltip);
+        mergeTooltip = new PlannedTooltip(mergeButton, () -> planJobTooltip(JobPlanner.Kind.MERGE));
+        splitTooltip = new PlannedTooltip(splitButton, () -> planJobTooltip(JobPlanner.Kind.SPLIT));
+        fillTooltip = new PlannedTooltip(fillButton, () -> planJobTooltip(JobPlanner.Kind.FILL));
+        loadTooltip = new PlannedTooltip(fillButton, this::planLoadTooltip);
+        if (pendingOrder != null) {
+            // A resize re-reads the bundle, so show the pending order over it again
+            showPending();
+        }
+        updateButtons();
+        positionButtons();
+    }
 
-        int slotStartX = containerX + BORDER_LEFT + 1;
-        int slotStartY = containerY + BORDER_TOP + 1;
+    /** The bundle as it is now: in its slot, or on the cursor while an operation carries it. */
+    private ItemStack currentBundle() {
+        if (bundleSlotId < 0 || bundleSlotId >= screenHandler.slots.size()) return ItemStack.EMPTY;
+        ItemStack inSlot = screenHandler.getSlot(bundleSlotId).getItem();
+        if (BundleHelper.isBundle(inSlot)) return inSlot;
+        ItemStack carried = screenHandler.getCarried();
+        return operation != null && BundleHelper.isBundle(carried) ? carried : ItemStack.EMPTY;
+    }
 
-        for (int i = 0; i < contents.size() && i < rows * columns; i++) {
-            int col = i % columns;
-            int row = i / columns;
-            int x = slotStartX + col * SLOT_SIZE;
-            int y = slotStartY + row * SLOT_SIZE;
+    /** The bundle on show: the slot's own, or the nested one the path leads to. */
+    private ItemStack currentNode(ItemStack bundle) {
+        if (path.length == 0) return bundle;
+        ItemStack node = BundleTree.resolve(bundle, path);
+        if (node.isEmpty()) {
+            // The nested bundle moved out from under the path; fall back to the top
+            path = new int[0];
+            selectedIndices.clear();
+            return bundle;
+        }
+        return node;
+    }
 
-            BundleSlotWidget slot = new BundleSlotWidget(x, y, contents.get(i), i, this::onSlotClicked);
-            slotWidgets.add(slot);
-            addRenderableWidget(slot);
+    private void updateNodeTitle(ItemStack node) {
+        if (pendingOrder != null) {
+            nodeTitle = Component.translatable("bundlebrowser.screen.reorder_title",
+                    ReorderPlanner.movesNeeded(pendingOrder));
+            return;
+        }
+        if (path.length == 0) {
+            nodeTitle = title;
+            return;
         }
+        BundleTree.Summary summary = BundleTree.summarize(node);
+        nodeTitle = Component.translatable("bundlebrowser.screen.nested_title",
+                path.length, summary.items(), (int) (summary.fullness() * 100));
+    }
 
-        int buttonWidth = 60;
-        int buttonY = containerY + BORDER_TOP + rows * SLOT_SIZE + 10;
-        addRenderableWidget(Button.builder(
-                Component.translatable("bundlebrowser.screen.empty"),
-                this::onEmptyButtonClicked
-        ).bounds(
-                containerX + (containerWidth - buttonWidth) / 2,
-                buttonY,
-                buttonWidth,
-                20
-        ).build());
+    /** Opens a nested bundle in place of the current grid. */
+    private void openNested(int index) {
+        path = Arrays.copyOf(path, path.length + 1);
+        path[path.length - 1] = index;
+        showNode();
+    }
+
+    private void closeNested() {
+        path = Arrays.copyOf(path, path.length - 1);
+        showNode();
+    }
+
+    private void showNode() {
+        emptyTooltip.invalidate();
+        selectedIndices.clear();
+        shownContents = null;
+        grid.resetScroll();
+        updateButtons();
+        refreshFromMenu();
+    }
+
+    private void layoutGrid(int itemCount) {
+        grid.layout(itemCount, width, height);
+    }
+
+    /** Entries on show: the search's matches while searching, else all of them. */
+    private int shownCount() {
+        return shown != null ? shown.length : contents.size();
+    }
+
+    /** Bundle position of the nth entry on show. */
+    private int positionAt(int shownIndex) {
+        return shown != null ? shown[shownIndex] : shownIndex;
+    }
+
+    /** Matches the query against the contents on show; cheap when neither changed much. */
+    private void updateSearch() {
+        search.update(contents, searchQuery);
+        shown = search.isActive() ? search.shown() : null;
+    }
+
+    private void onSearchChanged(String query) {
+        if (query.equals(searchQuery)) return;
+        searchQuery = query;
+        loadTooltip.invalidate();
+        grid.resetScroll();
+        updateSearch();
+        reflow();
+    }
+
+    /** Extracts every entry matching the search, in one pass down to the deepest of them. */
+    private void extractMatches() {
+        if (isBusy() || pendingOrder != null || search.matches().isEmpty()) return;
+        selectedIndices.clear();
+        selectedIndices.or(search.matches());
+        searchBox.setValue("");
+        extractSelectedItems();
+    }
+
+    private void addSlotWidget(int cell) {
+        BundleSlotWidget slot = new BundleSlotWidget(grid.cellX(cell), grid.cellY(cell), ItemStack.EMPTY, cell,
+                font, this::onSlotClicked, this::onSlotSelectionToggled);
+        slotWidgets.add(slot);
+        addRenderableWidget(slot);
+    }
+
+    /**
+     * Points every on-screen cell at the entry under it. Widgets exist for visible cells only
+     * and are recycled as the grid scrolls, so the cost per frame does not grow with the
+     * bundle; cells past the last entry are hidden.
+     */
+    private void bindVisibleCells() {
+        boolean searching = search.isActive();
+        for (int cell = 0; cell < slotWidgets.size(); cell++) {
+            BundleSlotWidget slot = slotWidgets.get(cell);
+            int shownIndex = grid.indexOf(cell);
+            boolean filled = shownIndex < shownCount();
+            slot.visible = filled;
+            if (!filled) {
+                slot.setItemStack(ItemStack.EMPTY);
+                continue;
+            }
+            int index = positionAt(shownIndex);
+            if (slot.getIndex() != index || !ItemStack.matches(slot.getItemStack(), contents.get(index))) {
+                slot.bind(index, contents.get(index));
+            }
+            slot.setSelected(selectedIndices.get(index));
+            slot.setMatch(searching && search.matches().get(index), searching && search.holdsMatch().get(index));
+        }
+    }
+
+    private void positionButtons() {
+        int center = grid.containerX() + grid.containerWidth() / 2;
+        int y = grid.slotsY() + grid.rows() * SLOT_SIZE + 10;
+        emptyButton.setPosition(center - BUTTON_WIDTH - 2, y);
+        reorderButton.setPosition(center + 2, y);
+        sortButton.setPosition(center - BUTTON_WIDTH - 2, y);
+        applyButton.setPosition(center + 2, y);
+        int jobY = y + 24;
+        mergeButton.setPosition(center - BUTTON_WIDTH - 2, jobY);
+        splitButton.setPosition(center - BUTTON_WIDTH - 2 + SMALL_BUTTON_WIDTH + 2, jobY);
+        fillButton.setPosition(center - BUTTON_WIDTH - 2 + (SMALL_BUTTON_WIDTH + 2) * 2, jobY);
+        cancelButton.setPosition(center - BUTTON_WIDTH - 2, jobY);
+        searchBox.setPosition(grid.searchX(), grid.searchY());
+        searchBox.setWidth(grid.searchWidth());
+    }
+
+    /**
+     * Empty All and Reorder normally; the sort and apply buttons while reordering. The job row
+     * (merge, split, fill) is for the slot's own bundle only, and turns into Cancel while a job
+     * or an operation of this screen's runs.
+     */
+    private void updateButtons() {
+        if (emptyButton == null) return;
+        boolean reordering = pendingOrder != null;
+        emptyButton.visible = !reordering;
+        reorderButton.visible = !reordering;
+        sortButton.visible = reordering;
+        applyButton.visible = reordering;
+        // Reordering drags grid positions around, which a filtered grid doesn't show
+        searchBox.visible = !reordering;
+        emptyButton.active = !isBusy();
+        reorderButton.active = !isBusy() && contents.size() > 1;
+        boolean jobRow = !reordering && path.length == 0 && job == null && operation == null;
+        for (Button button : List.of(mergeButton, splitButton, fillButton)) {
+            button.visible = jobRow;
+            button.active = !isBusy();
+        }
+        cancelButton.visible = job != null || operation != null;
+        updateApplyButton();
+    }
+
+    /**
+     * Apply only when the inventory has an empty slot for every entry the reorder moves, and
+     * for every entry above the nested bundle on the way down to it; a reorder that ran out
+     * of room partway would leave the bundle reshuffled.
+     */
+    private void updateApplyButton() {
+        LocalPlayer player = Minecraft.getInstance().player;
+        if (pendingOrder == null || player == null) return;
+        applyCheckedStateId = screenHandler.getStateId();
+        int moves = ReorderPlanner.movesNeeded(pendingOrder);
+        int needed = moves;
+        for (int position : path) {
+            needed += position + 1;
+        }
+        int free = 0;
+        BitSet slots = DestinationPlan.playerSlots(screenHandler, player, bundleSlotId);
+        for (int i = slots.nextSetBit(0); i >= 0; i = slots.nextSetBit(i + 1)) {
+            if (!screenHandler.getSlot(i).hasItem()) free++;
+        }
+        boolean fits = moves == 0 || needed <= free;
+        applyButton.active = !isBusy() && fits;
+        applyButton.setTooltip(fits ? null
+                : Tooltip.create(Component.translatable("bundlebrowser.screen.apply_no_room", needed, free)));
+    }
+
+    /**
+     * Something is still working on the menu: an operation or job of this screen's, or one
+     * started elsewhere, such as an operation resumed after its menu came back.
+     */
+    private boolean isBusy() {
+        return operation != null || job != null || BundleBrowserClient.operations().isBusy(screenHandler);
+    }
+
+    @Override
+    public void tick() {
+        super.tick();
+        refreshFromMenu();
+        // Capitals typed into the search box are not a request to relabel the buttons
+        boolean typing = searchBox != null && searchBox.isFocused();
+        updateShiftModes(!typing && shiftDown());
+        if (pendingOrder != null && screenHandler.getStateId() != applyCheckedStateId) {
+            updateApplyButton();
+        }
+        if (emptyTooltip != null) {
+            ItemStack bundle = currentBundle();
+            emptyTooltip.update(screenHandler, bundle);
+            mergeTooltip.update(screenHandler, bundle);
+            splitTooltip.update(screenHandler, bundle);
+            (loadFromInventory ? loadTooltip : fillTooltip).update(screenHandler, bundle);
+        }
+    }
+
+    private boolean shiftDown() {
+        return minecraft != null && minecraft.hasShiftDown();
+    }
+
+    private void updateShiftModes(boolean shift) {
+        if (emptyButton == null) return;
+        updateEmptyTarget(shift);
+        updateFillMode(shift);
+    }
+
+    private void updateEmptyTarget(boolean shift) {
+        boolean intoContainer = shift && path.length == 0 && DestinationPlan.hasStorageSide(screenHandler);
+        if (intoContainer == emptyIntoContainer) return;
+        emptyIntoContainer = intoContainer;
+        emptyButton.setMessage(Component.translatable(intoContainer
+                ? "bundlebrowser.screen.empty_container" : "bundlebrowser.screen.empty"));
+        emptyTooltip.invalidate();
+        emptyTooltip.update(screenHandler, currentBundle());
+    }
+
+    private void updateFillMode(boolean shift) {
+        if (fillButton == null || shift == loadFromInventory) return;
+        loadFromInventory = shift;
+        fillButton.setMessage(Component.translatable(loadFromInventory
+                ? "bundlebrowser.screen.load" : "bundlebrowser.screen.fill"));
+        fillTooltip.invalidate();
+        loadTooltip.invalidate();
+    }
+
+    /** Tells how much of the bundle fits where Empty All would put it, before it starts. */
+    private Tooltip planEmptyTooltip() {
+        DestinationPlan destinations = planEmptyAll();
+        if (destinations == null) return null;
+        return Tooltip.create(Component.translatable(
+                destinations.fitsEverything() ? "bundlebrowser.screen.fits_all" : "bundlebrowser.screen.fits_some",
+                destinations.fitCount(), destinations.entryCount(), destinations.itemsThatFit()));
+    }
+
+    /** The destination plan for Empty All at the top level, or null where it isn't used. */
+    private DestinationPlan planEmptyAll() {
+        Minecraft client = Minecraft.getInstance();
+        if (client.player == null || path.length > 0 || pendingOrder != null || isBusy()) return null;
+        BitSet slots = emptyIntoContainer
+                ? DestinationPlan.containerSlots(screenHandler, client.player)
+                : DestinationPlan.playerSlots(screenHandler, client.player, bundleSlotId);
+        return DestinationPlan.compute(MenuView.of(client, client.player, screenHandler), contents, slots);
+    }
+
+    /** Picks up content changes from any source: our operation, the server, other mods. */
+    private void refreshFromMenu() {
+        if (operation != null && operation.isFinished()) {
+            // Finished without reporting back (its menu went away); don't wait on it forever
+            operation = null;
+            prediction = null;
+            updateButtons();
+        }
+        if (job != null && job.isFinished()) {
+            job = null;
+            updateButtons();
+        }
+
+        ItemStack bundle = currentBundle();
+        if (!BundleHelper.isBundle(bundle) || (!isBusy() && BundleHelper.isEmpty(bundle))) {
+            onClose();
+            return;
+        }
+        if (operation != null) {
+            // A nested bundle is out of its parent while the operation works on it; the grid
+            // keeps showing it as it was until the operation is done
+            if (path.length > 0) return;
+            // Show where the operation leaves the bundle rather than each intermediate pop.
+            // The prediction is rebuilt from the client view every tick, so a server
+            // correction to that view reconciles it on its own
+            shownContents = null;
+            prediction = operation.predictContents(BundleHelper.getContents(bundle));
+            applyContents(prediction);
+            return;
+        }
+        ItemStack node = currentNode(bundle);
+        BundleContents now = node.get(DataComponents.BUNDLE_CONTENTS);
+        if (now != shownContents) {
+            shownContents = now;
+            if (pendingOrder != null) {
+                // The order was planned against contents that just changed under it
+                exitReorder();
+            }
+            updateNodeTitle(node);
+            applyContents(BundleHelper.getContents(node));
+        }
+    }
+
+    /**
+     * Updates the grid in place: cells whose stack is unchanged are left alone, changed cells
+     * are rebound, and widgets are only created or removed when the visible grid changes shape.
+     */
+    private void applyContents(List<ItemStack> newContents) {
+        List<ItemStack> oldContents = contents;
+        contents = newContents;
+        if (oldContents.size() != newContents.size()) {
+            // Positions shifted, so the selection no longer points at the same items
+            selectedIndices.clear();
+        }
+        updateSearch();
+        reflow();
+    }
+
+    /** Lays the grid out for the entries on show and rebinds it, reshaping only when needed. */
+    private void reflow() {
+        int oldColumns = grid.columns();
+        int oldRows = grid.rows();
+        boolean wasScrollable = grid.isScrollable();
+        layoutGrid(shownCount());
+        boolean reshaped = grid.columns() != oldColumns || grid.rows() != oldRows
+                || grid.isScrollable() != wasScrollable;
+
+        int cells = grid.cellCount();
+        while (slotWidgets.size() < cells) {
+            addSlotWidget(slotWidgets.size());
+        }
+        while (slotWidgets.size() > cells) {
+            BundleSlotWidget removed = slotWidgets.remove(slotWidgets.size() - 1);
+            removeWidget(removed);
+            if (removed == hoveredSlot) {
+                hoveredSlot = null;
+            }
+        }
+        if (reshaped) {
+            for (int cell = 0; cell < cells; cell++) {
+                slotWidgets.get(cell).setPosition(grid.cellX(cell), grid.cellY(cell));
+            }
+            positionButtons();
+        }
+        bindVisibleCells();
+    }
+
+    private void enterReorder() {
+        if (isBusy() || contents.size() < 2) return;
+        searchBox.setValue("");
+        reorderBase = contents;
+        pendingOrder = new int[contents.size()];
+        for (int i = 0; i < pendingOrder.length; i++) {
+            pendingOrder[i] = i;
+        }
+        sort = null;
+        sortButton.setMessage(sortLabel());
+        selectedIndices.clear();
+        showPending();
+        updateButtons();
+    }
+
+    private void exitReorder() {
+        List<ItemStack> base = reorderBase;
+        pendingOrder = null;
+        reorderBase = null;
+        dragFrom = -1;
+        selectedIndices.clear();
+        if (emptyButton != null) {
+            updateButtons();
+        }
+        if (base != null) {
+            applyContents(base);
+        }
+    }
+
+    private void cycleSort() {
+        ReorderPlanner.Sort[] sorts = ReorderPlanner.Sort.values();
+        sort = sorts[sort == null ? 0 : (sort.ordinal() + 1) % sorts.length];
+        sortButton.setMessage(sortLabel());
+        pendingOrder = ReorderPlanner.sortedOrder(reorderBase, sort, BundleBrowserClient.usage());
+        showPending();
+    }
+
+    private Component sortLabel() {
+        String name = sort == null ? "none" : sort.name().toLowerCase(Locale.ROOT);
+        return Component.translatable("bundlebrowser.screen.sort",
+                Component.translatable("bundlebrowser.sort." + name));
+    }
+
+    /** Shows the bundle as it would look in the pending order. */
+    private void showPending() {
+        List<ItemStack> reordered = new ArrayList<>(pendingOrder.length);
+        for (int position : pendingOrder) {
+            reordered.add(reorderBase.get(position));
+        }
+        applyContents(reordered);
+        nodeTitle = Component.translatable("bundlebrowser.screen.reorder_title",
+                ReorderPlanner.movesNeeded(pendingOrder));
+        if (applyButton != null) {
+            updateApplyButton();
+        }
+    }
+
+    private void applyReorder() {
+        if (!applyButton.active) return;
+        ExtractionPlan plan = ReorderPlanner.plan(pendingOrder);
+        exitReorder();
+        if (plan == null) return;
+
+        Minecraft client = Minecraft.getInstance();
+        LocalPlayer player = client.player;
+        if (player == null || client.gameMode == null) return;
+        BundleBrowserClient.LOGGER.debug("Reordering bundle: {}", plan);
+        startOperation(BundleOperation.extractNested(
+                MenuView.of(client, player, screenHandler), bundleSlotId, path.clone(), plan, this::onOperationFinished));
+    }
+
+    @Override
+    public boolean mouseClicked(MouseButtonEvent event, boolean doubled) {
+        // While reordering, cells are dragged rather than clicked
+        if (pendingOrder != null) {
+            int cell = grid.cellAt(event.x(), event.y());
+            if (cell >= 0) {
+                dragFrom = grid.indexOf(cell);
+                selectedIndices.set(dragFrom);
+                bindVisibleCells();
+                return true;
+            }
+        }
+        return super.mouseClicked(event, doubled);
+    }
+
+    @Override
+    public boolean mouseReleased(MouseButtonEvent event) {
+        if (pendingOrder != null && dragFrom >= 0) {
+            int cell = grid.cellAt(event.x(), event.y());
+            int from = dragFrom;
+            dragFrom = -1;
+            selectedIndices.clear();
+            if (cell >= 0 && grid.indexOf(cell) != from) {
+                ReorderPlanner.move(pendingOrder, from, grid.indexOf(cell));
+                showPending();
+            } else {
+                bindVisibleCells();
+            }
+            return true;
+        }
+        return super.mouseReleased(event);
+    }
+
+    @Override
+    public boolean mouseScrolled(double mouseX, double mouseY, double scrollX, double scrollY) {
+        if (grid.isScrollable() && scrollY != 0) {
+            if (grid.scrollBy(-(int) Math.signum(scrollY))) {
+                bindVisibleCells();
+            }
+            return true;
+        }
+        return super.mouseScrolled(mouseX, mouseY, scrollX, scrollY);
     }
 
     @Override
@@ -148,29 +684,30 @@ public class BundleBrowserScreen extends Screen {
 
             context.text(
                     font,
-                    title,
-                    containerX + 8,
-                    containerY + TITLE_Y,
+                    nodeTitle,
+                    grid.containerX() + 8,
+                    grid.containerY() + TITLE_Y,
                     // ARGB: GuiGraphicsExtractor.text early-returns when ARGB.alpha() is 0,
                     // so a bare 0xRRGGBB draws nothing at all
                     0xFF404040,
                     false
             );
 
-            hoveredSlot = null;
-            for (BundleSlotWidget slot : slotWidgets) {
-                if (slot.isHovered()) {
-                    hoveredSlot = slot;
-                    break;
-                }
-            }
+            // Straight from the mouse position; no need to ask every cell
+            int hoveredCell = grid.cellAt(mouseX, mouseY);
+            hoveredSlot = hoveredCell >= 0 && hoveredCell < slotWidgets.size() ? slotWidgets.get(hoveredCell) : null;
 
             super.extractRenderState(context, mouseX, mouseY, delta);
 
+            if (operation != null || job != null) {
+                drawProgressOverlay(context);
+            }
+
             // Render tooltip last (on top of everything)
             if (hoveredSlot != null) {
                 hoveredSlot.renderTooltip(context, mouseX, mouseY);
             }
+            BundleBrowserClient.renderMetricsOverlay(context);
         } catch (Exception e) {
             if (!renderFailureLogged) {
                 renderFailureLogged = true;
@@ -181,6 +718,11 @@ public class BundleBrowserScreen extends Screen {
     }
 
     private void drawContainerBackground(GuiGraphicsExtractor context) {
+        int containerX = grid.containerX();
+        int containerY = grid.containerY();
+        int containerWidth = grid.containerWidth();
+        int containerHeight = grid.containerHeight();
+
         // Main panel
         context.fill(containerX, containerY, containerX + containerWidth, containerY + containerHeight, 0xFFC6C6C6);
 
@@ -192,220 +734,296 @@ public class BundleBrowserScreen extends Screen {
         context.fill(containerX, containerY + containerHeight - 2, containerX + containerWidth, containerY + containerHeight, 0xFF555555);
         context.fill(containerX + containerWidth - 2, containerY, containerX + containerWidth, containerY + containerHeight, 0xFF555555);
 
-        // Slot area background (darker inset)
-        int slotsX = containerX + BORDER_LEFT;
-        int slotsY = containerY + BORDER_TOP;
-        int slotsWidth = columns * SLOT_SIZE + 2;
-        int slotsHeight = rows * SLOT_SIZE + 2;
-
         // Inset for slot area
+        int slotsX = grid.slotsX();
+        int slotsY = grid.slotsY();
+        int slotsWidth = grid.slotsWidth();
+        int slotsHeight = grid.slotsHeight();
         context.fill(slotsX, slotsY, slotsX + slotsWidth, slotsY + slotsHeight, 0xFF373737);
         context.fill(slotsX + 1, slotsY + 1, slotsX + slotsWidth - 1, slotsY + slotsHeight - 1, 0xFF8B8B8B);
+
+        drawCellBackgrounds(context);
+        if (grid.isScrollable()) {
+            drawScrollbar(context, slotsX + slotsWidth + 2, slotsY, slotsHeight);
+        }
     }
 
     /**
-     * The extraction chain spans many frames via nested client.execute calls, so the player
-     * can change screens mid-chain. Checking containerId is not enough to detect that: the
-     * creative screen's ItemPickerMenu reuses containerId 0, the same id as InventoryMenu,
-     * so vanilla's mismatched-container guard passes and our clicks would land on a
-     * client-side fake menu our slot indices were never computed against. Only menu
-     * identity is a safe check.
+     * Dark cell backgrounds for every filled cell, drawn as a handful of fills rather than
+     * one per cell: one block for the full rows and one for the partial last row, then the
+     * light inset color redrawn as the 2px gaps between cells.
      */
-    private boolean menuStillActive(Minecraft client) {
-        LocalPlayer player = client.player;
-        if (player == null || client.gameMode == null) return false;
-        if (player.containerMenu != screenHandler) {
-            BundleBrowserClient.LOGGER.debug("Container changed mid-operation, abandoning bundle operation");
-            return false;
+    private void drawCellBackgrounds(GuiGraphicsExtractor context) {
+        int visible = grid.visibleCells();
+        if (visible == 0) return;
+        int columns = grid.columns();
+        int fullRows = visible / columns;
+        int lastRowCells = visible % columns;
+        int left = grid.cellX(0);
+        int top = grid.cellY(0);
+        int fullBottom = top + fullRows * SLOT_SIZE;
+
+        if (fullRows > 0) {
+            context.fill(left + 1, top + 1, left + columns * SLOT_SIZE - 1, fullBottom - 1, 0xFF373737);
+        }
+        if (lastRowCells > 0) {
+            context.fill(left + 1, fullBottom + 1, left + lastRowCells * SLOT_SIZE - 1, fullBottom + SLOT_SIZE - 1, 0xFF373737);
+        }
+        for (int column = 1; column < columns; column++) {
+            int x = left + column * SLOT_SIZE;
+            int bottom = column < lastRowCells ? fullBottom + SLOT_SIZE : fullBottom;
+            if (bottom > top) {
+                context.fill(x - 1, top, x + 1, bottom, 0xFF8B8B8B);
+            }
+        }
+        for (int row = 1; row < fullRows; row++) {
+            int y = top + row * SLOT_SIZE;
+            context.fill(left, y - 1, left + columns * SLOT_SIZE, y + 1, 0xFF8B8B8B);
+        }
+        if (fullRows > 0 && lastRowCells > 0) {
+            context.fill(left, fullBottom - 1, left + lastRowCells * SLOT_SIZE, fullBottom + 1, 0xFF8B8B8B);
         }
-        return true;
     }
 
-    /** Matches on the slot's backing inventory, so it works across all container types. */
-    private int findEmptyPlayerSlot(LocalPlayer player) {
-        for (int i = 0; i < screenHandler.slots.size(); i++) {
-            Slot slot = screenHandler.getSlot(i);
-            if (i != bundleSlotId && slot.container == player.getInventory() && slot.getItem().isEmpty()) {
-                return i;
-            }
+    private void drawScrollbar(GuiGraphicsExtractor context, int x, int y, int height) {
+        int rows = grid.rows();
+        int totalRows = grid.totalRows();
+        context.fill(x, y, x + GridLayout.SCROLLBAR_WIDTH, y + height, 0xFF373737);
+        int thumbHeight = Math.max(8, height * rows / totalRows);
+        int thumbY = y + (height - thumbHeight) * grid.scrollRow() / (totalRows - rows);
+        context.fill(x, thumbY, x + GridLayout.SCROLLBAR_WIDTH, thumbY + thumbHeight, 0xFFC6C6C6);
+        context.fill(x + GridLayout.SCROLLBAR_WIDTH - 1, thumbY, x + GridLayout.SCROLLBAR_WIDTH, thumbY + thumbHeight, 0xFF555555);
+    }
+
+    private void drawProgressOverlay(GuiGraphicsExtractor context) {
+        int slotsX = grid.slotsX();
+        int slotsY = grid.slotsY();
+        int slotsWidth = grid.slotsWidth();
+        int slotsHeight = grid.slotsHeight();
+
+        // Dim the grid lightly while it is busy; the cells already show the predicted result
+        context.fill(slotsX, slotsY, slotsX + slotsWidth, slotsY + slotsHeight, 0x40000000);
+
+        float progress = operation != null ? operation.progress() : job.progress();
+        int barY = slotsY + slotsHeight + 3;
+        int filled = (int) (slotsWidth * progress);
+        context.fill(slotsX, barY, slotsX + slotsWidth, barY + 3, 0xFF373737);
+        context.fill(slotsX, barY, slotsX + filled, barY + 3, 0xFF55FF55);
+
+        int percent = (int) (progress * 100);
+        if (percent != labelPercent) {
+            labelPercent = percent;
+            progressLabel = Component.translatable("bundlebrowser.screen.working", percent);
         }
-        return -1;
+        context.text(font, progressLabel, slotsX + (slotsWidth - font.width(progressLabel)) / 2,
+                slotsY + (slotsHeight - font.lineHeight) / 2, 0xFFFFFFFF, true);
     }
 
     private void onSlotClicked(BundleSlotWidget slot) {
+        if (isBusy()) return;
         // Due to FILO, to get item at index N, we need to extract N+1 items
         // Items are displayed in extraction order (index 0 = next to extract)
-        extractSpecificItem(slot.getIndex());
+        // A plain click on a nested bundle opens it; with a selection made, it is extracted
+        // like any other item
+        if (selectedIndices.isEmpty() && BundleTree.isExpandable(slot.getItemStack())) {
+            openNested(slot.getIndex());
+            return;
+        }
+        // A plain click extracts the clicked item together with anything already selected
+        selectedIndices.set(slot.getIndex());
+        extractSelectedItems();
     }
 
-    private void extractSpecificItem(int targetIndex) {
+    private void onSlotSelectionToggled(BundleSlotWidget slot) {
+        if (isBusy()) return;
+        selectedIndices.flip(slot.getIndex());
+        slot.setSelected(selectedIndices.get(slot.getIndex()));
+    }
+
+    private void extractSelectedItems() {
         Minecraft client = Minecraft.getInstance();
         LocalPlayer player = client.player;
         if (player == null || client.gameMode == null) return;
 
-        final int extractCount = targetIndex + 1;
+        // One unwind down to the deepest target serves every target above it too
+        final ExtractionPlan plan = ExtractionPlan.forTargets(selectedIndices.stream().toArray());
+        selectedIndices.stream().forEach(i -> BundleBrowserClient.usage().recordUse(contents.get(i).getItem()));
+        selectedIndices.clear();
+        BundleBrowserClient.LOGGER.debug("Extracting {} item(s) from bundle: {}", plan.keptCount(), plan);
 
-        client.execute(() -> {
-            client.setScreenAndShow(parentScreen);
-            extractItemsAndKeepLast(client, player, extractCount, new ArrayList<>());
-        });
+        startOperation(BundleOperation.extractNested(
+                MenuView.of(client, player, screenHandler), bundleSlotId, path.clone(), plan, this::onOperationFinished));
     }
 
-    private void extractItemsAndKeepLast(Minecraft client, LocalPlayer player,
-            int remaining, List<Integer> extractedSlots) {
-        if (remaining <= 0) {
-            if (extractedSlots.size() > 1) {
-                // Keep the last extracted item (the target); return the rest, first extracted first
-                putBackItems(client, player,
-                        List.copyOf(extractedSlots.subList(0, extractedSlots.size() - 1)), 0);
-            } else {
-                reopenBrowser(client);
-            }
-            return;
+    private void startOperation(BundleOperation newOperation) {
+        operation = newOperation;
+        updateButtons();
+        for (BundleSlotWidget slot : slotWidgets) {
+            slot.setSelected(false);
         }
-
-        if (!menuStillActive(client)) return;
-
-        client.execute(() -> {
-            if (!menuStillActive(client)) return;
-            // Right-click to extract from bundle
-            client.gameMode.handleContainerInput(syncId, bundleSlotId, 1, ContainerInput.PICKUP, player);
-
-            client.execute(() -> {
-                if (!menuStillActive(client)) return;
-                int emptySlot = findEmptyPlayerSlot(player);
-                if (emptySlot == -1) {
-                    // No room: put cursor item back in bundle and abort
-                    BundleBrowserClient.LOGGER.debug("No empty inventory slot for extraction, aborting");
-                    client.gameMode.handleContainerInput(syncId, bundleSlotId, 0, ContainerInput.PICKUP, player);
-                    client.execute(() -> abortExtraction(client, player, extractedSlots));
-                    return;
-                }
-
-                // Place extracted item in the empty slot
-                client.gameMode.handleContainerInput(syncId, emptySlot, 0, ContainerInput.PICKUP, player);
-                extractedSlots.add(emptySlot);
-
-                extractItemsAndKeepLast(client, player, remaining - 1, extractedSlots);
-            });
-        });
+        BundleBrowserClient.operations().start(newOperation);
+        refreshFromMenu();
     }
 
-    /**
-     * Abort an in-progress extraction by putting all extracted items back into the bundle.
-     */
-    private void abortExtraction(Minecraft client, LocalPlayer player,
-            List<Integer> extractedSlots) {
-        if (extractedSlots.isEmpty()) {
-            reopenBrowser(client);
+    private void onOperationFinished() {
+        operation = null;
+        List<ItemStack> predicted = prediction;
+        prediction = null;
+        // The user may have left the browser mid-operation; then there is nothing to update
+        if (minecraft == null || minecraft.gui.screen() != this) return;
+        updateButtons();
+
+        // An item left on the cursor is the user's to place; the browser would hide it
+        if (!screenHandler.getCarried().isEmpty()) {
+            onClose();
             return;
         }
+        // With the prediction gone, the refresh shows what the bundle really holds; usually
+        // that is what was predicted
+        ItemStack bundle = currentBundle();
+        if (predicted != null && BundleHelper.isBundle(bundle)
+                && !ItemStack.listMatches(predicted, BundleHelper.getContents(bundle))) {
+            BundleBrowserClient.LOGGER.debug("Bundle ended up differently than predicted, showing the real contents");
+        }
+        refreshFromMenu();
+    }
 
-        if (!menuStillActive(client)) return;
-
-        int slotToReturn = extractedSlots.remove(extractedSlots.size() - 1);
-
-        client.execute(() -> {
-            if (!menuStillActive(client)) return;
-            // Pick up item from where we stashed it
-            client.gameMode.handleContainerInput(syncId, slotToReturn, 0, ContainerInput.PICKUP, player);
-
-            client.execute(() -> {
-                if (!menuStillActive(client)) return;
-                // Put it back into the bundle
-                client.gameMode.handleContainerInput(syncId, bundleSlotId, 0, ContainerInput.PICKUP, player);
-
-                client.execute(() -> abortExtraction(client, player, extractedSlots));
-            });
-        });
+    private void onEmptyButtonClicked(Button button) {
+        // The click decides, whatever the label last showed
+        updateShiftModes(shiftDown());
+        extractAllItems();
     }
 
-    /** Returns slotsToPutBack[nextIndex..] to the bundle in order, then reopens the browser. */
-    private void putBackItems(Minecraft client, LocalPlayer player,
-            List<Integer> slotsToPutBack, int nextIndex) {
-        // Counting up against the list size cannot index below zero, whatever the caller passes
-        if (nextIndex >= slotsToPutBack.size()) {
-            reopenBrowser(client);
+    private void extractAllItems() {
+        Minecraft client = Minecraft.getInstance();
+        LocalPlayer player = client.player;
+        if (player == null || client.gameMode == null || isBusy()) return;
+
+        DestinationPlan destinations = planEmptyAll();
+        if (destinations != null) {
+            BundleBrowserClient.LOGGER.debug("Empty All: {} of {} entries ({} items) fit",
+                    destinations.fitCount(), destinations.entryCount(), destinations.itemsThatFit());
+            if (destinations.fitCount() == 0) return;
+            startOperation(BundleOperation.emptyInto(
+                    MenuView.of(client, player, screenHandler), bundleSlotId, destinations, this::onOperationFinished));
             return;
         }
-
-        if (!menuStillActive(client)) return;
-
-        int slotToPutBack = slotsToPutBack.get(nextIndex);
-
-        client.execute(() -> {
-            if (!menuStillActive(client)) return;
-            // Pick up item
-            client.gameMode.handleContainerInput(syncId, slotToPutBack, 0, ContainerInput.PICKUP, player);
-
-            client.execute(() -> {
-                if (!menuStillActive(client)) return;
-                // Put into bundle (left-click on bundle with item on cursor)
-                client.gameMode.handleContainerInput(syncId, bundleSlotId, 0, ContainerInput.PICKUP, player);
-
-                client.execute(() -> {
-                    putBackItems(client, player, slotsToPutBack, nextIndex + 1);
-                });
-            });
-        });
-    }
-
-    private void reopenBrowser(Minecraft client) {
-        client.execute(() -> {
-            // Never stomp a screen the user navigated to mid-chain (e.g. the creative screen)
-            if (client.gui.screen() != parentScreen || !menuStillActive(client)) return;
-            ItemStack bundle = screenHandler.getSlot(bundleSlotId).getItem();
-            if (BundleHelper.isBundle(bundle) && !BundleHelper.isEmpty(bundle)) {
-                client.setScreenAndShow(new BundleBrowserScreen(bundle, bundleSlotId, parentScreen));
-            }
-        });
+        // Nested bundles are only reachable once unwound, so they find room as they go
+        startOperation(BundleOperation.emptyNested(
+                MenuView.of(client, player, screenHandler), bundleSlotId, path.clone(), contents.size(), this::onOperationFinished));
     }
 
-    private void onEmptyButtonClicked(Button button) {
-        extractAllItems();
+    private void onFillButtonClicked(Button button) {
+        updateShiftModes(shiftDown());
+        if (loadFromInventory) {
+            loadFromInventory();
+        } else {
+            startJob(JobPlanner.Kind.FILL);
+        }
     }
 
-    private void extractAllItems() {
+    /** Loads the bundle from the inventory along a plan made up front; nothing happens if nothing fits. */
+    private void loadFromInventory() {
         Minecraft client = Minecraft.getInstance();
         LocalPlayer player = client.player;
         if (player == null || client.gameMode == null) return;
 
-        final int count = contents.size();
+        InsertPlan inserts = planLoad();
+        if (inserts == null || inserts.isEmpty()) return;
+        BundleBrowserClient.LOGGER.debug("Load: {}, {} stack(s) left out", inserts, inserts.stacksLeftOut());
+        selectedIndices.clear();
+        startOperation(BundleOperation.insert(
+                MenuView.of(client, player, screenHandler), bundleSlotId, inserts, this::onOperationFinished));
+    }
 
-        client.execute(() -> {
-            client.setScreenAndShow(parentScreen);
+    /**
+     * The insert plan for Load: the inventory stacks matching the search, or with no search
+     * more of what the bundle already holds. Null where Load isn't offered.
+     */
+    private InsertPlan planLoad() {
+        Minecraft client = Minecraft.getInstance();
+        if (client.player == null || path.length > 0 || pendingOrder != null || isBusy()) return null;
+        BitSet sources = DestinationPlan.playerSlots(screenHandler, client.player, bundleSlotId);
+        for (int i = sources.nextSetBit(0); i >= 0; i = sources.nextSetBit(i + 1)) {
+            ItemStack stack = screenHandler.getSlot(i).getItem();
+            boolean wanted = search.isActive() ? search.matchesQuery(stack) : holdsAlready(stack);
+            if (!wanted) sources.clear(i);
+        }
+        return InsertPlan.compute(MenuView.of(client, client.player, screenHandler), currentBundle(), sources,
+                BundleBrowserClient.usage()::uses);
+    }
 
-            extractNextItem(client, player, count);
-        });
+    private boolean holdsAlready(ItemStack stack) {
+        for (ItemStack entry : contents) {
+            if (ItemStack.isSameItemSameComponents(entry, stack)) return true;
+        }
+        return false;
     }
 
-    private void extractNextItem(Minecraft client, LocalPlayer player, int remaining) {
-        if (remaining <= 0) return;
-        if (!menuStillActive(client)) return;
+    /** What Load would put in, planned while its button is hovered. */
+    private Tooltip planLoadTooltip() {
+        InsertPlan inserts = planLoad();
+        if (inserts == null) return null;
+        Component summary = inserts.isEmpty()
+                ? Component.translatable("bundlebrowser.screen.load_nothing")
+                : Component.translatable("bundlebrowser.screen.load_plan", inserts.inserts().size(),
+                        inserts.itemsThatFit(), inserts.stacksLeftOut(), inserts.expectedClicks());
+        return Tooltip.create(Component.translatable("bundlebrowser.screen.load_tooltip").append("\n").append(summary));
+    }
 
-        client.execute(() -> {
-            if (!menuStillActive(client)) return;
-            // Right-click to extract
-            client.gameMode.handleContainerInput(syncId, bundleSlotId, 1, ContainerInput.PICKUP, player);
+    /** Plans the job against the inventory as it is now and queues it; nothing happens if nothing would move. */
+    private void startJob(JobPlanner.Kind kind) {
+        Minecraft client = Minecraft.getInstance();
+        LocalPlayer player = client.player;
+        if (player == null || client.gameMode == null || isBusy() || path.length > 0) return;
+
+        BundleJob planned = new BundleJob(kind, screenHandler, () -> planJob(kind, player));
+        if (planned.isEmpty()) return;
+        BundleBrowserClient.LOGGER.debug("Bundle job {}: {} stage(s)", kind, planned.stageCount());
+        job = planned;
+        selectedIndices.clear();
+        bindVisibleCells();
+        updateButtons();
+        BundleBrowserClient.jobs().submit(job);
+    }
 
-            client.execute(() -> {
-                if (!menuStillActive(client)) return;
-                int emptySlot = findEmptyPlayerSlot(player);
-                if (emptySlot == -1) {
-                    // No room: put cursor item back in bundle and stop
-                    BundleBrowserClient.LOGGER.debug("Inventory full during Empty All, stopping");
-                    client.gameMode.handleContainerInput(syncId, bundleSlotId, 0, ContainerInput.PICKUP, player);
-                    return;
-                }
+    private List<JobPlanner.Stage> planJob(JobPlanner.Kind kind, LocalPlayer player) {
+        return switch (kind) {
+            case MERGE -> JobPlanner.merge(screenHandler, player, bundleSlotId);
+            case SPLIT -> JobPlanner.split(screenHandler, player, bundleSlotId);
+            case FILL -> JobPlanner.fill(screenHandler, player, bundleSlotId);
+        };
+    }
 
-                // Place cursor item in empty slot
-                client.gameMode.handleContainerInput(syncId, emptySlot, 0, ContainerInput.PICKUP, player);
+    /** Stops the job or operation this screen started; both put back what they stashed first. */
+    private void cancelRunning() {
+        if (job != null) {
+            job.cancel();
+        } else if (operation != null) {
+            BundleBrowserClient.operations().cancel(screenHandler);
+        }
+    }
 
-                if (remaining > 1) {
-                    extractNextItem(client, player, remaining - 1);
-                }
-            });
-        });
+    /** What the job would do, planned while its button is hovered, like Empty All's fit count. */
+    private Tooltip planJobTooltip(JobPlanner.Kind kind) {
+        LocalPlayer player = Minecraft.getInstance().player;
+        if (player == null) return null;
+        List<JobPlanner.Stage> stages = planJob(kind, player);
+        int entries = 0;
+        int items = 0;
+        int clicks = 0;
+        BitSet bundles = new BitSet();
+        for (JobPlanner.Stage stage : stages) {
+            entries += stage.entriesMoved();
+            items += stage.routes().itemsThatFit();
+            clicks += stage.expectedClicks();
+            bundles.set(stage.sourceSlotId());
+        }
+        Component summary = stages.isEmpty()
+                ? Component.translatable("bundlebrowser.screen.job_nothing")
+                : Component.translatable("bundlebrowser.screen.job_plan", entries, items, bundles.cardinality(), clicks);
+        String description = "bundlebrowser.screen." + kind.name().toLowerCase(Locale.ROOT) + "_tooltip";
+        return Tooltip.create(Component.translatable(description).append("\n").append(summary));
     }
 
     @Override
@@ -422,6 +1040,33 @@ public class BundleBrowserScreen extends Screen {
 
     @Override
     public boolean keyPressed(KeyEvent input) {
+        // Escape clears a search first; while typing, keys go to the search box
+        if (input.key() == InputConstants.KEY_ESCAPE && !searchQuery.isEmpty()) {
+            searchBox.setValue("");
+            return true;
+        }
+        if ((input.key() == InputConstants.KEY_RETURN || input.key() == InputConstants.KEY_NUMPADENTER)
+                && search.isActive()) {
+            extractMatches();
+            return true;
+        }
+        if (searchBox != null && searchBox.isFocused() && input.key() != InputConstants.KEY_ESCAPE) {
+            return super.keyPressed(input);
+        }
+        // Escape and backspace step out of a nested bundle before closing anything
+        boolean back = input.key() == InputConstants.KEY_ESCAPE || input.key() == InputConstants.KEY_BACKSPACE;
+        if (back && pendingOrder != null) {
+            exitReorder();
+            return true;
+        }
+        if (back && path.length > 0 && !isBusy()) {
+            closeNested();
+            return true;
+        }
+        if (BundleBrowserClient.metricsKey().matches(input)) {
+            MetricsOverlay.toggle();
+            return true;
+        }
         if (input.key() == InputConstants.KEY_ESCAPE || (minecraft != null && minecraft.options.keyInventory.matches(input))) {
             onClose();
             return true;
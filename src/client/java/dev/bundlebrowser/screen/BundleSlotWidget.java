@@ -2,6 +2,7 @@ package dev.bundlebrowser.screen;
 
 import java.util.function.Consumer;
 import net.minecraft.client.Minecraft;
+import net.minecraft.client.gui.Font;
 import net.minecraft.client.gui.GuiGraphicsExtractor;
 import net.minecraft.client.gui.components.AbstractWidget;
 import net.minecraft.client.gui.narration.NarrationElementOutput;
@@ -11,32 +12,56 @@ import net.minecraft.network.chat.Component;
 import net.minecraft.sounds.SoundEvents;
 import net.minecraft.world.item.ItemStack;
 
-/** One clickable item cell in the bundle grid. */
+/**
+ * One clickable item cell in the bundle grid. The dark cell background is drawn by the
+ * screen for the whole grid at once; a cell only draws its item and highlights.
+ */
 public class BundleSlotWidget extends AbstractWidget {
-    public static final int SLOT_SIZE = 18;
+    public static final int SLOT_SIZE = GridLayout.CELL_SIZE;
 
-    private final ItemStack itemStack;
-    private final int index;
+    private final Font font;
+    private ItemStack itemStack;
+    private int index;
     private final Consumer<BundleSlotWidget> onClick;
+    private final Consumer<BundleSlotWidget> onToggleSelected;
 
-    public BundleSlotWidget(int x, int y, ItemStack itemStack, int index, Consumer<BundleSlotWidget> onClick) {
+    private boolean selected;
+    private boolean matched;
+    private boolean holdsMatch;
+
+    public BundleSlotWidget(int x, int y, ItemStack itemStack, int index, Font font,
+            Consumer<BundleSlotWidget> onClick, Consumer<BundleSlotWidget> onToggleSelected) {
         super(x, y, SLOT_SIZE, SLOT_SIZE, Component.empty());
+        this.font = font;
         this.itemStack = itemStack;
         this.index = index;
         this.onClick = onClick;
+        this.onToggleSelected = onToggleSelected;
         this.active = true;
     }
 
     @Override
     protected void extractWidgetRenderState(GuiGraphicsExtractor context, int mouseX, int mouseY, float delta) {
-        Minecraft client = Minecraft.getInstance();
-
-        context.fill(getX(), getY(), getX() + width, getY() + height, 0xFF8B8B8B);
-        context.fill(getX() + 1, getY() + 1, getX() + width - 1, getY() + height - 1, 0xFF373737);
-
         if (!itemStack.isEmpty()) {
             context.item(itemStack, getX() + 1, getY() + 1);
-            context.itemDecorations(client.font, itemStack, getX() + 1, getY() + 1);
+            context.itemDecorations(font, itemStack, getX() + 1, getY() + 1);
+        }
+
+        if (matched || holdsMatch) {
+            // A solid frame for a search match, a faint one for a nested bundle holding one
+            int color = matched ? 0xFFFFD700 : 0x80FFD700;
+            int left = getX() + 1;
+            int top = getY() + 1;
+            int right = getX() + width - 1;
+            int bottom = getY() + height - 1;
+            context.fill(left, top, right, top + 1, color);
+            context.fill(left, bottom - 1, right, bottom, color);
+            context.fill(left, top + 1, left + 1, bottom - 1, color);
+            context.fill(right - 1, top + 1, right, bottom - 1, color);
+        }
+
+        if (selected) {
+            context.fill(getX() + 1, getY() + 1, getX() + width - 1, getY() + height - 1, 0x8040A0FF);
         }
 
         if (isHovered()) {
@@ -53,13 +78,18 @@ public class BundleSlotWidget extends AbstractWidget {
             Minecraft.getInstance().getSoundManager().play(
                     SimpleSoundInstance.forUI(SoundEvents.UI_BUTTON_CLICK, 1.0F)
             );
-            this.onClick.accept(this);
+            // Shift/ctrl-click builds a multi-selection instead of extracting right away
+            if ((click.hasShiftDown() || click.hasControlDown()) && onToggleSelected != null) {
+                this.onToggleSelected.accept(this);
+            } else {
+                this.onClick.accept(this);
+            }
         }
     }
 
     public void renderTooltip(GuiGraphicsExtractor context, int mouseX, int mouseY) {
         if (isHovered() && !itemStack.isEmpty()) {
-            context.setTooltipForNextFrame(Minecraft.getInstance().font, itemStack, mouseX, mouseY);
+            context.setTooltipForNextFrame(font, itemStack, mouseX, mouseY);
         }
     }
 
@@ -67,10 +97,36 @@ public class BundleSlotWidget extends AbstractWidget {
         return itemStack;
     }
 
+    /** Rebinds the cell to another stack in place, without recreating the widget. */
+    public void setItemStack(ItemStack itemStack) {
+        this.itemStack = itemStack;
+    }
+
+    /** Points the cell at another bundle entry, for recycling while the grid scrolls. */
+    public void bind(int index, ItemStack itemStack) {
+        this.index = index;
+        this.itemStack = itemStack;
+    }
+
+    /** Position of the shown entry in the bundle, not of the cell on screen. */
     public int getIndex() {
         return index;
     }
 
+    public boolean isSelected() {
+        return selected;
+    }
+
+    public void setSelected(boolean selected) {
+        this.selected = selected;
+    }
+
+    /** Search highlights: the entry itself matches, or it is a nested bundle holding a match. */
+    public void setMatch(boolean matched, boolean holdsMatch) {
+        this.matched = matched;
+        this.holdsMatch = holdsMatch;
+    }
+
     @Override
     protected void updateWidgetNarration(NarrationElementOutput builder) {
         if (!itemStack.isEmpty()) {
@@ -0,0 +1,157 @@
+package dev.bundlebrowser.screen;
+
+import dev.bundlebrowser.util.BundleHelper;
+import dev.bundlebrowser.util.ItemKey;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import net.minecraft.core.Holder;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.enchantment.Enchantment;
+import net.minecraft.world.item.enchantment.EnchantmentHelper;
+
+/**
+ * The browser's search over the entries on show. Each entry's searchable text (display
+ * name, item id, tags as #namespace:path, enchantment names and ids, all lowercase) is built
+ * once per content snapshot, and once per distinct item across snapshots, so typing never
+ * asks a stack for its name or components. A nested bundle also carries the text of
+ * everything inside it.
+ *
+ * A query is whitespace-separated terms that must all appear. Typing more only narrows the
+ * previous query, so each keystroke rechecks the entries still matching, not all of them.
+ */
+final class ContentSearch {
+    // Tokens are joined with a separator no term can contain, so a term never spans two
+    private static final char SEPARATOR = '\n';
+
+    // Per item and components, so snapshots that only moved or recounted entries cost lookups
+    private final Map<ItemKey, String> tokens = new HashMap<>();
+    private List<ItemStack> indexed;
+    private String[] own = new String[0];
+    // What nested bundles hold; null for anything else
+    private String[] inside = new String[0];
+
+    private String query = "";
+    private String[] terms = new String[0];
+    private final BitSet matches = new BitSet();
+    private final BitSet holdsMatch = new BitSet();
+
+    /** Matches the query against the contents, reindexing only if they are a new snapshot. */
+    void update(List<ItemStack> contents, String rawQuery) {
+        boolean reindexed = contents != indexed;
+        if (reindexed) {
+            index(contents);
+        }
+        String normalized = rawQuery.toLowerCase(Locale.ROOT).stripLeading();
+        if (normalized.isBlank()) {
+            query = "";
+            terms = new String[0];
+            matches.clear();
+            holdsMatch.clear();
+            return;
+        }
+        boolean narrowing = !reindexed && !query.isEmpty() && normalized.startsWith(query);
+        query = normalized;
+        terms = normalized.split("\\s+");
+
+        BitSet candidates;
+        if (narrowing) {
+            candidates = (BitSet) matches.clone();
+            candidates.or(holdsMatch);
+        } else {
+            candidates = new BitSet(own.length);
+            candidates.set(0, own.length);
+        }
+        matches.clear();
+        holdsMatch.clear();
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            if (containsAll(own[i], null, terms)) {
+                matches.set(i);
+            } else if (inside[i] != null && containsAll(own[i], inside[i], terms)) {
+                holdsMatch.set(i);
+            }
+        }
+    }
+
+    boolean isActive() {
+        return !query.isEmpty();
+    }
+
+    /** Whether a stack from outside the bundle matches the current query on its own text. */
+    boolean matchesQuery(ItemStack stack) {
+        return isActive() && containsAll(tokensOf(stack), null, terms);
+    }
+
+    /** Positions whose own entry matches. */
+    BitSet matches() {
+        return matches;
+    }
+
+    /** Nested bundles that only match through something inside them. */
+    BitSet holdsMatch() {
+        return holdsMatch;
+    }
+
+    /** Positions to show, in bundle order: the matches and the bundles holding one. */
+    int[] shown() {
+        BitSet shown = (BitSet) matches.clone();
+        shown.or(holdsMatch);
+        return shown.stream().toArray();
+    }
+
+    private void index(List<ItemStack> contents) {
+        indexed = contents;
+        own = new String[contents.size()];
+        inside = new String[contents.size()];
+        for (int i = 0; i < own.length; i++) {
+            ItemStack stack = contents.get(i);
+            own[i] = tokensOf(stack);
+            if (BundleHelper.isBundle(stack) && !BundleHelper.isEmpty(stack)) {
+                StringBuilder text = new StringBuilder();
+                appendContents(stack, text);
+                inside[i] = text.toString();
+            }
+        }
+    }
+
+    private void appendContents(ItemStack bundle, StringBuilder text) {
+        for (ItemStack entry : BundleHelper.getContents(bundle)) {
+            text.append(tokensOf(entry)).append(SEPARATOR);
+            if (BundleHelper.isBundle(entry)) {
+                appendContents(entry, text);
+            }
+        }
+    }
+
+    private String tokensOf(ItemStack stack) {
+        ItemKey key = new ItemKey(stack);
+        String cached = tokens.get(key);
+        if (cached != null) return cached;
+
+        StringBuilder text = new StringBuilder();
+        text.append(stack.getHoverName().getString()).append(SEPARATOR);
+        text.append(BuiltInRegistries.ITEM.getKey(stack.getItem())).append(SEPARATOR);
+        stack.getTags().forEach(tag -> text.append('#').append(tag.location()).append(SEPARATOR));
+        // Stored enchantments too, so enchanted books are found by what they carry
+        for (Holder<Enchantment> enchantment : EnchantmentHelper.getEnchantmentsForCrafting(stack).keySet()) {
+            text.append(enchantment.value().description().getString()).append(SEPARATOR);
+            text.append(enchantment.getRegisteredName()).append(SEPARATOR);
+        }
+        String built = text.toString().toLowerCase(Locale.ROOT);
+        // Keyed on a copy, since the key must not see the stack change
+        tokens.put(new ItemKey(stack.copyWithCount(1)), built);
+        return built;
+    }
+
+    private static boolean containsAll(String own, String inside, String[] terms) {
+        for (String term : terms) {
+            if (term.isEmpty()) continue;
+            if (!own.contains(term) && (inside == null || !inside.contains(term))) return false;
+        }
+        return true;
+    }
+}
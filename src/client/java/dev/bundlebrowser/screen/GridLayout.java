@@ -0,0 +1,176 @@
+package dev.bundlebrowser.screen;
+
+/**
+ * Geometry of the bundle grid: panel, slot inset and cell rectangles, scroll position and
+ * hit-testing. Everything is worked out once per layout in {@link #layout}, so drawing and
+ * mouse handling only read fields. Plain arithmetic with no game classes, so it can be
+ * measured outside the client.
+ *
+ * Cells are screen positions, row-major from the top-left; the bundle entry a cell shows is
+ * {@link #indexOf} it, which moves with the scroll offset.
+ */
+public final class GridLayout {
+    public static final int CELL_SIZE = 18;
+    // Like a chest: up to 9 columns and 6 rows on screen, scrolling beyond that
+    public static final int MAX_COLUMNS = 9;
+    public static final int MAX_VISIBLE_ROWS = 6;
+    public static final int SCROLLBAR_WIDTH = 6;
+    public static final int BORDER_LEFT = 7;
+    public static final int BORDER_TOP = 17;
+    // The search box's row, between the title and the slots
+    public static final int SEARCH_HEIGHT = 14;
+    // Room under the grid for the progress bar and the two button rows
+    private static final int FOOTER_HEIGHT = 14 + 28 + 24;
+    // Wide enough for two buttons side by side; a narrower grid is centered in the panel
+    public static final int BUTTON_WIDTH = 60;
+    // Three to the second row, spanning the same width as the two above
+    public static final int SMALL_BUTTON_WIDTH = (BUTTON_WIDTH * 2 + 4 - 4) / 3;
+    private static final int MIN_CONTAINER_WIDTH = BORDER_LEFT * 2 + BUTTON_WIDTH * 2 + 4;
+
+    private int itemCount;
+    private int columns = 1;
+    private int rows = 1;
+    private int totalRows = 1;
+    private int scrollRow;
+
+    private int containerX;
+    private int containerY;
+    private int containerWidth;
+    private int containerHeight;
+    private int slotsX;
+    private int slotsY;
+    private int slotsWidth;
+    private int slotsHeight;
+
+    /** Recomputes everything for a bundle size and screen size, keeping the scroll offset if it still fits. */
+    public void layout(int itemCount, int screenWidth, int screenHeight) {
+        this.itemCount = itemCount;
+        columns = Math.clamp(itemCount, 1, MAX_COLUMNS);
+        totalRows = Math.max(1, (itemCount + MAX_COLUMNS - 1) / MAX_COLUMNS);
+        rows = Math.min(totalRows, MAX_VISIBLE_ROWS);
+        scrollRow = Math.clamp(scrollRow, 0, totalRows - rows);
+
+        slotsWidth = columns * CELL_SIZE + 2;
+        slotsHeight = rows * CELL_SIZE + 2;
+        int naturalWidth = BORDER_LEFT * 2 + slotsWidth + 2 + (isScrollable() ? SCROLLBAR_WIDTH + 2 : 0);
+        containerWidth = Math.max(naturalWidth, MIN_CONTAINER_WIDTH);
+        containerHeight = BORDER_TOP + SEARCH_HEIGHT + rows * CELL_SIZE + FOOTER_HEIGHT;
+        containerX = (screenWidth - containerWidth) / 2;
+        containerY = (screenHeight - containerHeight) / 2;
+        slotsX = containerX + BORDER_LEFT + (containerWidth - naturalWidth) / 2;
+        slotsY = containerY + BORDER_TOP + SEARCH_HEIGHT;
+    }
+
+    /** Back to the top, for when the grid shows a different bundle. */
+    public void resetScroll() {
+        scrollRow = 0;
+    }
+
+    /** Scrolls by whole rows, clamped to the ends; true if the offset moved. */
+    public boolean scrollBy(int deltaRows) {
+        int scrolled = Math.clamp(scrollRow + deltaRows, 0, totalRows - rows);
+        if (scrolled == scrollRow) return false;
+        scrollRow = scrolled;
+        return true;
+    }
+
+    /** The cell under the mouse, or -1 outside the grid or past the last entry. */
+    public int cellAt(double mouseX, double mouseY) {
+        double dx = mouseX - (slotsX + 1);
+        double dy = mouseY - (slotsY + 1);
+        if (dx < 0 || dy < 0) return -1;
+        int column = (int) dx / CELL_SIZE;
+        int row = (int) dy / CELL_SIZE;
+        if (column >= columns || row >= rows) return -1;
+        int cell = row * columns + column;
+        return cell < visibleCells() ? cell : -1;
+    }
+
+    public int cellX(int cell) {
+        return slotsX + 1 + (cell % columns) * CELL_SIZE;
+    }
+
+    public int cellY(int cell) {
+        return slotsY + 1 + (cell / columns) * CELL_SIZE;
+    }
+
+    /** Bundle position shown in a cell at the current scroll offset. */
+    public int indexOf(int cell) {
+        return scrollRow * columns + cell;
+    }
+
+    /** Cells on screen, filled or not. */
+    public int cellCount() {
+        return rows * columns;
+    }
+
+    /** Cells on screen that show an entry; the rest of the last row stays blank. */
+    public int visibleCells() {
+        return Math.clamp(itemCount - scrollRow * columns, 0, rows * columns);
+    }
+
+    public boolean isScrollable() {
+        return totalRows > rows;
+    }
+
+    public int columns() {
+        return columns;
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public int totalRows() {
+        return totalRows;
+    }
+
+    public int scrollRow() {
+        return scrollRow;
+    }
+
+    public int containerX() {
+        return containerX;
+    }
+
+    public int containerY() {
+        return containerY;
+    }
+
+    public int containerWidth() {
+        return containerWidth;
+    }
+
+    public int containerHeight() {
+        return containerHeight;
+    }
+
+    /** The search box spans the panel inside its borders, just under the title. */
+    public int searchX() {
+        return containerX + BORDER_LEFT;
+    }
+
+    public int searchY() {
+        return containerY + BORDER_TOP - 1;
+    }
+
+    public int searchWidth() {
+        return containerWidth - BORDER_LEFT * 2;
+    }
+
+    public int slotsX() {
+        return slotsX;
+    }
+
+    public int slotsY() {
+        return slotsY;
+    }
+
+    public int slotsWidth() {
+        return slotsWidth;
+    }
+
+    public int slotsHeight() {
+        return slotsHeight;
+    }
+}
@@ -0,0 +1,46 @@
+package dev.bundlebrowser.screen;
+
+import dev.bundlebrowser.util.BundleFingerprint;
+
+import java.util.function.Supplier;
+import net.minecraft.client.gui.components.Button;
+import net.minecraft.client.gui.components.Tooltip;
+import net.minecraft.world.inventory.AbstractContainerMenu;
+import net.minecraft.world.item.ItemStack;
+
+/**
+ * A button's tooltip that tells what it would do (Empty All's fit count, a job's or Load's
+ * plan). The plan behind it is made when the button is first hovered and kept until the menu's
+ * stateId or the bundle's fingerprint moves, or the screen switches what the button does;
+ * hovering a button then costs one plan, not one per tick.
+ */
+final class PlannedTooltip {
+    private final Button button;
+    private final Supplier<Tooltip> planner;
+    private boolean planned;
+    private int stateId;
+    private long fingerprint;
+
+    PlannedTooltip(Button button, Supplier<Tooltip> planner) {
+        this.button = button;
+        this.planner = planner;
+    }
+
+    /** Plans again if the button is hovered and what the last plan saw has changed. */
+    void update(AbstractContainerMenu menu, ItemStack bundle) {
+        if (!button.visible || !button.active || !button.isHovered()) return;
+        int currentStateId = menu.getStateId();
+        long currentFingerprint = BundleFingerprint.of(bundle);
+        if (planned && currentStateId == stateId && currentFingerprint == fingerprint) return;
+        planned = true;
+        stateId = currentStateId;
+        fingerprint = currentFingerprint;
+        button.setTooltip(planner.get());
+    }
+
+    /** Drops the plan after a change the stateId doesn't show, such as a new mode or query. */
+    void invalidate() {
+        planned = false;
+        button.setTooltip(null);
+    }
+}
@@ -0,0 +1,267 @@
+package dev.bundlebrowser.trace;
+
+import dev.bundlebrowser.BundleBrowserClient;
+import dev.bundlebrowser.metrics.OperationStats;
+import dev.bundlebrowser.operation.ClickStrategy;
+import dev.bundlebrowser.operation.DestinationPlan;
+import dev.bundlebrowser.operation.ExtractionPlan;
+import dev.bundlebrowser.operation.InputPacer;
+import dev.bundlebrowser.operation.MenuView;
+import dev.bundlebrowser.util.BundleHelper;
+import dev.bundlebrowser.util.MenuSlotEvents;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import net.fabricmc.loader.api.FabricLoader;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.world.inventory.AbstractContainerMenu;
+import net.minecraft.world.item.ItemStack;
+
+/**
+ * A record of one bundle operation, kept when recordTraces is on and written as JSON lines
+ * to bundlebrowser-traces/ in the game directory once it finishes. Read back by
+ * {@link TraceReplay}.
+ *
+ * The first line ("start") holds what the operation was asked to do and the state it started
+ * from: the bundle's entries, every non-empty slot of the menu, and the destinations of a
+ * planned Empty All or route. Then, in order, one "plan" line per operation level (the outer
+ * unwind and inner operation of a nested extraction each get one) and again on every replan,
+ * the pacing whenever it changes, every input sent ("click"), every slot update the server
+ * pushed ("update", or "resync" for a full one), the events in between, and an "end" line
+ * with the totals. Times are microseconds since the start, next to the client tick.
+ *
+ * Items are written as registry id, count and a hash of their components: enough to tell
+ * entries apart and to replan, not to rebuild the stacks.
+ */
+public final class OperationTrace implements MenuSlotEvents.Listener {
+    public static final String DIRECTORY = BundleBrowserClient.MOD_ID + "-traces";
+    /** Bumped when a line changes shape; {@link TraceReplay} skips formats it does not know. */
+    public static final int FORMAT = 1;
+    // An operation stuck waiting on its menu still ends; this only bounds a pathological one
+    private static final int MAX_LINES = 20_000;
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+
+    private final MenuView view;
+    private final String kind;
+    private final LocalDateTime startTime = LocalDateTime.now();
+    private final long startNanos = System.nanoTime();
+    private final List<String> lines = new ArrayList<>();
+    private int tick;
+    private double lastRate = -1;
+    private int lastRttTicks = -1;
+    private boolean truncated;
+
+    public OperationTrace(String kind, MenuView view) {
+        this.kind = kind;
+        this.view = view;
+        MenuSlotEvents.register(this);
+    }
+
+    @Override
+    public AbstractContainerMenu menu() {
+        return view.menu();
+    }
+
+    /**
+     * The request and the state it starts from.
+     *
+     * @param path pop positions of the nested bundles descended through; empty for the slot's own
+     * @param leafPlan the plan for the innermost bundle, as the caller made it
+     * @param destinations planned slots per pop position, or null
+     */
+    public void start(int bundleSlotId, int[] path, ExtractionPlan leafPlan, boolean keepWhatFits,
+            boolean allowKeepOnCursor, DestinationPlan destinations) {
+        JsonObject line = line("start");
+        line.addProperty("format", FORMAT);
+        line.addProperty("version", FabricLoader.getInstance().getModContainer(BundleBrowserClient.MOD_ID)
+                .map(mod -> mod.getMetadata().getVersion().getFriendlyString()).orElse("unknown"));
+        line.addProperty("kind", kind);
+        line.addProperty("time", startTime.toString());
+        line.addProperty("menu", view.menu().getClass().getName());
+        line.addProperty("slotCount", view.slotCount());
+        line.addProperty("bundleSlot", bundleSlotId);
+        line.add("path", ints(path));
+        line.add("plan", plan(leafPlan));
+        line.addProperty("keepWhatFits", keepWhatFits);
+        line.addProperty("allowKeepOnCursor", allowKeepOnCursor);
+        if (destinations != null) {
+            JsonArray planned = new JsonArray();
+            for (int i = 0; i < destinations.fitCount(); i++) {
+                planned.add(destinations.destination(i));
+            }
+            line.add("destinations", planned);
+        }
+        JsonArray contents = new JsonArray();
+        for (ItemStack entry : BundleHelper.getContents(view.item(bundleSlotId))) {
+            contents.add(item(entry));
+        }
+        line.add("contents", contents);
+        JsonArray slots = new JsonArray();
+        for (int i = 0; i < view.slotCount(); i++) {
+            ItemStack stack = view.item(i);
+            if (stack.isEmpty()) continue;
+            JsonObject slot = item(stack);
+            slot.addProperty("slot", i);
+            slot.addProperty("player", view.isPlayerSlot(i));
+            slots.add(slot);
+        }
+        line.add("slots", slots);
+        add(line);
+    }
+
+    /**
+     * The plan one operation level runs and the strategy it picked, with the inputs that went
+     * into the choice so a replay can make it again.
+     *
+     * @param depth 0 for the slot's own bundle, one more per nested bundle
+     */
+    public void plan(int depth, int bundleSlotId, ExtractionPlan plan, boolean canCarry, boolean allowKeepOnCursor,
+            ClickStrategy.Choice choice, boolean replanned) {
+        JsonObject line = line("plan");
+        line.addProperty("depth", depth);
+        line.addProperty("bundleSlot", bundleSlotId);
+        line.add("plan", plan(plan));
+        line.addProperty("canCarry", canCarry);
+        line.addProperty("allowKeepOnCursor", allowKeepOnCursor);
+        line.addProperty("strategy", choice.strategy().name());
+        line.addProperty("keepLastOnCursor", choice.keepLastOnCursor());
+        line.addProperty("expectedClicks", choice.expectedClicks());
+        line.addProperty("replanned", replanned);
+        add(line);
+    }
+
+    /** Advances the trace's clock; the operation that owns the trace calls this every tick. */
+    public void onTick(InputPacer pacer) {
+        tick++;
+        if (pacer.rate() != lastRate || pacer.rttTicks() != lastRttTicks) {
+            lastRate = pacer.rate();
+            lastRttTicks = pacer.rttTicks();
+            JsonObject line = line("pacing");
+            line.addProperty("rate", lastRate);
+            line.addProperty("rttTicks", lastRttTicks);
+            add(line);
+        }
+    }
+
+    public void onClick(int slotId, int button) {
+        JsonObject line = line("click");
+        line.addProperty("slot", slotId);
+        line.addProperty("button", button);
+        add(line);
+    }
+
+    @Override
+    public void onSlotChanged(int slotId) {
+        JsonObject line = item(view.item(slotId));
+        line.addProperty("type", "update");
+        stamp(line);
+        line.addProperty("slot", slotId);
+        line.addProperty("stateId", view.stateId());
+        add(line);
+    }
+
+    @Override
+    public void onContentsReplaced() {
+        JsonObject line = line("resync");
+        line.addProperty("stateId", view.stateId());
+        add(line);
+    }
+
+    /** Something the operation decided: correction, replan, retry, abort, suspend, resume. */
+    public void event(String name, int stepsInFlight) {
+        JsonObject line = line("event");
+        line.addProperty("name", name);
+        line.addProperty("stepsInFlight", stepsInFlight);
+        add(line);
+    }
+
+    /** Writes the trace out; called once, with the totals of the operation that owns it. */
+    public void finish(OperationStats stats) {
+        MenuSlotEvents.unregister(this);
+        JsonObject line = line("end");
+        line.addProperty("outcome", stats.outcome());
+        line.addProperty("clicks", stats.clicks());
+        line.addProperty("expectedClicks", stats.expectedClicks());
+        line.addProperty("ticks", stats.ticks());
+        line.addProperty("frames", stats.frames());
+        line.addProperty("serverUpdates", stats.serverUpdates());
+        line.addProperty("corrections", stats.corrections());
+        line.addProperty("retries", stats.retries());
+        line.addProperty("replans", stats.replans());
+        line.addProperty("aborted", stats.aborted());
+        line.addProperty("clickToSettledMicros", stats.clickToSettledNanos() / 1000);
+        line.addProperty("truncated", truncated);
+        lines.add(line.toString());
+
+        Path path = FabricLoader.getInstance().getGameDir().resolve(DIRECTORY)
+                .resolve(FILE_TIME.format(startTime) + "-" + kind + ".jsonl");
+        try {
+            Files.createDirectories(path.getParent());
+            Files.write(path, lines);
+        } catch (IOException e) {
+            BundleBrowserClient.LOGGER.warn("Could not write operation trace {}", path, e);
+        }
+    }
+
+    private void add(JsonObject line) {
+        if (lines.size() < MAX_LINES) {
+            lines.add(line.toString());
+        } else {
+            truncated = true;
+        }
+    }
+
+    private JsonObject line(String type) {
+        JsonObject line = new JsonObject();
+        line.addProperty("type", type);
+        stamp(line);
+        return line;
+    }
+
+    private void stamp(JsonObject line) {
+        line.addProperty("tick", tick);
+        line.addProperty("t", (System.nanoTime() - startNanos) / 1000);
+    }
+
+    private static JsonObject plan(ExtractionPlan plan) {
+        JsonObject json = new JsonObject();
+        json.addProperty("popCount", plan.popCount());
+        JsonArray keep = new JsonArray();
+        for (int position = 0; position < plan.popCount(); position++) {
+            if (plan.keeps(position)) keep.add(position);
+        }
+        json.add("keep", keep);
+        if (plan.hasCustomOrder()) {
+            json.add("putBack", ints(plan.putBackOrder()));
+        }
+        return json;
+    }
+
+    private static JsonObject item(ItemStack stack) {
+        JsonObject json = new JsonObject();
+        json.addProperty("item", BuiltInRegistries.ITEM.getKey(stack.getItem()).toString());
+        json.addProperty("count", stack.getCount());
+        if (!stack.isEmpty() && !stack.getComponentsPatch().isEmpty()) {
+            json.addProperty("components", ItemStack.hashItemAndComponents(stack));
+        }
+        if (BundleHelper.isBundle(stack)) {
+            json.addProperty("entries", BundleHelper.getContents(stack).size());
+        }
+        return json;
+    }
+
+    private static JsonArray ints(int[] values) {
+        JsonArray array = new JsonArray();
+        for (int value : values) {
+            array.add(value);
+        }
+        return array;
+    }
+}
@@ -0,0 +1,199 @@
+package dev.bundlebrowser.trace;
+
+import dev.bundlebrowser.operation.ClickStrategy;
+import dev.bundlebrowser.operation.ExtractionPlan;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Feeds recorded {@link OperationTrace}s back through the planner as it is now, offline, and
+ * sets what each operation cost when it was recorded against what the current code would
+ * plan for the same request. Run with {@code ./gradlew replayTraces -Ptraces=<file or directory>}.
+ *
+ * Only the pure planning side is replayed (plans and click strategies work on pop positions,
+ * not item stacks), so this runs without starting the game. Timings cannot be replayed the
+ * same way, since they are mostly the server's; instead the replanned click count is
+ * turned into ticks at the pacing the trace recorded, next to the ticks it really took.
+ *
+ * With --fail-on-regression the exit status is 1 if any trace would now cost more clicks
+ * than it was planned to when recorded. A nested operation that stopped before reaching its
+ * deeper levels has no plan recorded for them; those levels are left out of both sums and
+ * the trace is marked incomplete, since there is nothing to compare them against. A load
+ * is planned from inventory stacks the trace doesn't keep, so it replays at its recorded cost.
+ */
+public final class TraceReplay {
+    /**
+     * One trace, replayed.
+     *
+     * @param clicks inputs the operation really sent
+     * @param recordedExpected inputs its plans expected at the start, summed over the levels
+     *                         that recorded a plan
+     * @param replannedExpected inputs the current planner expects for the same levels
+     * @param ticks client ticks it really took
+     * @param modeledTicks the replanned inputs at the recorded pacing, plus one round trip
+     * @param incomplete some levels never started, so recorded no plan to compare
+     */
+    public record Result(String file, String version, String kind, String outcome, int clicks,
+            int recordedExpected, int replannedExpected, int ticks, int modeledTicks, long clickToSettledMicros,
+            int corrections, int replans, boolean incomplete) {
+        public int delta() {
+            return replannedExpected - recordedExpected;
+        }
+    }
+
+    private TraceReplay() {}
+
+    public static void main(String[] args) throws IOException {
+        boolean failOnRegression = false;
+        List<Path> traces = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.equals("--fail-on-regression")) {
+                failOnRegression = true;
+                continue;
+            }
+            Path path = Path.of(arg);
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> files = Files.list(path)) {
+                    files.filter(file -> file.toString().endsWith(".jsonl")).sorted().forEach(traces::add);
+                }
+            } else {
+                traces.add(path);
+            }
+        }
+        if (traces.isEmpty()) {
+            System.err.println("No traces given; pass trace files or a " + OperationTrace.DIRECTORY + " directory");
+            return;
+        }
+
+        System.out.printf(Locale.ROOT, "%-36s %-16s %-7s %6s %6s %6s %6s %6s %6s %9s%n",
+                "trace", "kind", "outcome", "clicks", "plan", "now", "delta", "ticks", "model", "settle ms");
+        Map<String, long[]> byVersion = new LinkedHashMap<>();
+        boolean regressed = false;
+        for (Path trace : traces) {
+            Result result;
+            try {
+                result = replay(trace);
+            } catch (IOException | JsonParseException | IllegalStateException e) {
+                System.err.println("Skipping " + trace + ": " + e.getMessage());
+                continue;
+            }
+            if (result == null) {
+                System.err.println("Skipping " + trace + ": not a trace this version can read");
+                continue;
+            }
+            System.out.printf(Locale.ROOT, "%-36s %-16s %-7s %6d %6d %6d %+6d %6d %6d %9.1f%s%n",
+                    result.file(), result.kind(), result.outcome(), result.clicks(), result.recordedExpected(),
+                    result.replannedExpected(), result.delta(), result.ticks(), result.modeledTicks(),
+                    result.clickToSettledMicros() / 1000.0, result.incomplete() ? "  (incomplete)" : "");
+            long[] totals = byVersion.computeIfAbsent(result.version(), v -> new long[5]);
+            totals[0]++;
+            totals[1] += result.clicks();
+            totals[2] += result.replannedExpected();
+            totals[3] += result.ticks();
+            totals[4] += result.modeledTicks();
+            regressed |= result.delta() > 0;
+        }
+        for (Map.Entry<String, long[]> entry : byVersion.entrySet()) {
+            long[] totals = entry.getValue();
+            System.out.printf(Locale.ROOT, "recorded with %s: %d ops, %d clicks sent, %d now planned, %d ticks taken, %d modeled%n",
+                    entry.getKey(), totals[0], totals[1], totals[2], totals[3], totals[4]);
+        }
+        if (failOnRegression && regressed) {
+            System.exit(1);
+        }
+    }
+
+    /** Replays one trace; null if it has no start line or a format this version does not read. */
+    public static Result replay(Path trace) throws IOException {
+        JsonObject start = null;
+        JsonObject end = null;
+        Map<Integer, JsonObject> firstPlans = new HashMap<>();
+        double rate = 0;
+        int rttTicks = 0;
+        for (String text : Files.readAllLines(trace)) {
+            if (text.isBlank()) continue;
+            JsonObject line = JsonParser.parseString(text).getAsJsonObject();
+            switch (line.get("type").getAsString()) {
+                case "start" -> start = line;
+                case "plan" -> {
+                    if (!line.get("replanned").getAsBoolean()) {
+                        firstPlans.putIfAbsent(line.get("depth").getAsInt(), line);
+                    }
+                }
+                case "pacing" -> {
+                    // The rate the operation started at; adaptive pacing moves it as it goes
+                    if (rate == 0) {
+                        rate = line.get("rate").getAsDouble();
+                        rttTicks = line.get("rttTicks").getAsInt();
+                    }
+                }
+                case "end" -> end = line;
+                default -> {}
+            }
+        }
+        if (start == null || start.get("format").getAsInt() != OperationTrace.FORMAT) return null;
+
+        int[] path = ints(start.getAsJsonArray("path"));
+        ExtractionPlan leafPlan = plan(start.getAsJsonObject("plan"));
+        int recordedExpected = 0;
+        int replannedExpected = 0;
+        boolean incomplete = false;
+        boolean load = start.get("kind").getAsString().equals("load");
+        for (int depth = 0; depth <= path.length; depth++) {
+            JsonObject recorded = firstPlans.get(depth);
+            if (recorded == null) {
+                // The operation stopped before this level started; it spent nothing here
+                incomplete = true;
+                continue;
+            }
+            // The level's plan as BundleOperation derives it: unwind to the nested bundle, or the leaf plan
+            ExtractionPlan plan = depth < path.length ? ExtractionPlan.unwindTo(path[depth]) : leafPlan;
+            boolean canCarry = recorded.get("canCarry").getAsBoolean();
+            boolean allowKeepOnCursor = recorded.get("allowKeepOnCursor").getAsBoolean();
+            recordedExpected += recorded.get("expectedClicks").getAsInt();
+            // A load's clicks come from its insert plan, which the trace doesn't hold; its pop
+            // plan is empty, so replanning that would only report every load as a saving
+            replannedExpected += load ? recorded.get("expectedClicks").getAsInt()
+                    : ClickStrategy.choose(plan, canCarry, allowKeepOnCursor).expectedClicks();
+        }
+
+        int clicks = end != null ? end.get("clicks").getAsInt() : 0;
+        int ticks = end != null ? end.get("ticks").getAsInt() : 0;
+        int modeledTicks = rate > 0 ? (int) Math.ceil(replannedExpected / rate) + rttTicks : 0;
+        return new Result(trace.getFileName().toString(), start.get("version").getAsString(),
+                start.get("kind").getAsString(), end != null ? end.get("outcome").getAsString() : "UNFINISHED",
+                clicks, recordedExpected, replannedExpected, ticks, modeledTicks,
+                end != null ? end.get("clickToSettledMicros").getAsLong() : 0,
+                end != null ? end.get("corrections").getAsInt() : 0,
+                end != null ? end.get("replans").getAsInt() : 0,
+                incomplete);
+    }
+
+    private static ExtractionPlan plan(JsonObject json) {
+        if (json.has("putBack")) {
+            return ExtractionPlan.reorder(ints(json.getAsJsonArray("putBack")));
+        }
+        return ExtractionPlan.popping(json.get("popCount").getAsInt(), ints(json.getAsJsonArray("keep")));
+    }
+
+    private static int[] ints(JsonArray array) {
+        int[] values = new int[array.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = array.get(i).getAsInt();
+        }
+        return values;
+    }
+}
@@ -0,0 +1,63 @@
+package dev.bundlebrowser.util;
+
+import java.util.List;
+import net.minecraft.core.component.DataComponents;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.component.BundleContents;
+
+/**
+ * A cheap hash of a bundle's contents, in pop order, for telling whether a bundle still holds
+ * what an operation expects without comparing every entry. Folded from the bottom up, so the
+ * fingerprint of what is left after k pops is a suffix of the same fold: an operation works
+ * out the fingerprint for every pop count once, then compares a single long per step.
+ *
+ * Like the contents views, fingerprints of a live bundle are memoized per BundleContents
+ * instance. Equal fingerprints are taken as equal contents; a collision only means a change
+ * goes unnoticed, as it did before fingerprints existed.
+ */
+public final class BundleFingerprint {
+    private static final long EMPTY = 1;
+
+    private static final int CACHE_SIZE = 8;
+    private static final BundleContents[] cachedContents = new BundleContents[CACHE_SIZE];
+    private static final long[] cachedFingerprints = new long[CACHE_SIZE];
+    private static int nextEviction;
+
+    private BundleFingerprint() {}
+
+    /** Fingerprint of what the bundle holds now; non-bundles and empty bundles share one value. */
+    public static long of(ItemStack bundle) {
+        BundleContents contents = bundle.get(DataComponents.BUNDLE_CONTENTS);
+        if (contents == null || contents.isEmpty()) return EMPTY;
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            if (cachedContents[i] == contents) return cachedFingerprints[i];
+        }
+        long fingerprint = suffixes(BundleHelper.getContents(bundle))[0];
+        cachedContents[nextEviction] = contents;
+        cachedFingerprints[nextEviction] = fingerprint;
+        nextEviction = (nextEviction + 1) % CACHE_SIZE;
+        return fingerprint;
+    }
+
+    /** Fingerprint of a list of entries in pop order, as {@link #of} would give for a bundle holding them. */
+    public static long of(List<ItemStack> entries) {
+        return suffixes(entries)[0];
+    }
+
+    /**
+     * Fingerprints of the list with the top k entries popped, for every k from 0 to its size;
+     * the last is the empty bundle's.
+     */
+    public static long[] suffixes(List<ItemStack> entries) {
+        long[] suffixes = new long[entries.size() + 1];
+        suffixes[entries.size()] = EMPTY;
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            suffixes[i] = suffixes[i + 1] * 31 + entryHash(entries.get(i));
+        }
+        return suffixes;
+    }
+
+    private static long entryHash(ItemStack entry) {
+        return (long) ItemStack.hashItemAndComponents(entry) * 67 + entry.getCount();
+    }
+}
@@ -1,6 +1,7 @@
 package dev.bundlebrowser.util;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import net.minecraft.core.component.DataComponents;
 import net.minecraft.world.item.BundleItem;
@@ -8,6 +9,14 @@ import net.minecraft.world.item.ItemStack;
 import net.minecraft.world.item.component.BundleContents;
 
 public class BundleHelper {
+    // BundleContents is immutable and replaced on every change, so a view built for one
+    // instance stays valid for as long as anything holds that instance. A handful of slots
+    // covers the bundles a player flips between; the oldest is overwritten first
+    private static final int VIEW_CACHE_SIZE = 8;
+    private static final BundleContents[] cachedContents = new BundleContents[VIEW_CACHE_SIZE];
+    @SuppressWarnings("unchecked")
+    private static final List<ItemStack>[] cachedViews = new List[VIEW_CACHE_SIZE];
+    private static int nextEviction;
 
     public static boolean isBundle(ItemStack stack) {
         return stack.getItem() instanceof BundleItem;
@@ -19,23 +28,45 @@ public class BundleHelper {
         return contents == null || contents.isEmpty();
     }
 
+    /** The entry the next pop would take out, or EMPTY. */
+    public static ItemStack peekTop(ItemStack bundle) {
+        List<ItemStack> contents = getContents(bundle);
+        // Same FILO assumption as getContents: the first item is the next one out
+        return contents.isEmpty() ? ItemStack.EMPTY : contents.get(0);
+    }
+
     /**
      * Bundle contents in extraction order (first item = next to be extracted via right-click).
      *
+     * The list is a shared, read-only view: it is built once per BundleContents instance and
+     * handed out again for as long as the bundle is unchanged, so reopening the browser or
+     * resizing the window allocates nothing. Neither the list nor its stacks may be modified.
+     * Client thread only.
+     *
      * CRITICAL ASSUMPTION: itemCopies() yields FILO order (most recently added first).
-     * The extraction algorithm in BundleBrowserScreen.extractSpecificItem() depends on this:
-     * item at index N requires extracting N+1 items via right-click to reach it. If a
+     * The extraction planner (ExtractionPlan) depends on this: item at index N requires
+     * extracting N+1 items via right-click to reach it. If a
      * Minecraft version changes this ordering, the extraction index calculation breaks.
+     * VanillaBundleCheck in the simulate source set checks it against the game's own code.
      */
     public static List<ItemStack> getContents(ItemStack bundle) {
-        List<ItemStack> items = new ArrayList<>();
-        if (!isBundle(bundle)) return items;
+        if (!isBundle(bundle)) return List.of();
 
         BundleContents contents = bundle.get(DataComponents.BUNDLE_CONTENTS);
-        if (contents == null) return items;
+        if (contents == null || contents.isEmpty()) return List.of();
+
+        for (int i = 0; i < VIEW_CACHE_SIZE; i++) {
+            if (cachedContents[i] == contents) return cachedViews[i];
+        }
 
+        // The component only hands out copies; take them once for this instance
+        List<ItemStack> items = new ArrayList<>();
         contents.itemCopies().forEach(items::add);
+        List<ItemStack> view = Collections.unmodifiableList(items);
 
-        return items;
+        cachedContents[nextEviction] = contents;
+        cachedViews[nextEviction] = view;
+        nextEviction = (nextEviction + 1) % VIEW_CACHE_SIZE;
+        return view;
     }
 }
@@ -0,0 +1,158 @@
+package dev.bundlebrowser.util;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import net.minecraft.core.component.DataComponents;
+import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.inventory.AbstractContainerMenu;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.component.BundleContents;
+
+/**
+ * Every item held in a bundle anywhere in the player's inventory, by item and components,
+ * with the bundle's slot and the item's FILO depth in it.
+ *
+ * The menu is scanned once when the index is built; after that only slots that changed are
+ * re-read. Server updates to the menu name their slot through {@link MenuSlotEvents}. The
+ * player's own clicks, and inventory updates the server sends outside the menu, write the
+ * inventory directly; {@link #locate} catches those with {@link #sweep}, an identity check
+ * of each slot's stack and bundle contents, run once per lookup rather than every tick.
+ * Every item keeps its best location up to date as bundles change.
+ *
+ * So a lookup is not constant time: it is O(tracked slots), two reference compares per
+ * player-inventory slot (about 40 in any menu), plus a reindex of each bundle that changed
+ * since the last one. The callbacks alone can't replace the sweep, since they never hear of
+ * the direct writes.
+ */
+public final class BundleIndex implements MenuSlotEvents.Listener {
+    /** Where to find an item: the bundle's menu slot, and how many pops it takes minus one. */
+    public record Location(int slotId, int depth) {}
+
+    // The bundles holding one item, with the shallowest copy in each
+    private static final class Holders {
+        final Map<Integer, Integer> depthBySlot = new HashMap<>();
+        Location best;
+
+        void recomputeBest() {
+            best = null;
+            for (Map.Entry<Integer, Integer> entry : depthBySlot.entrySet()) {
+                if (best == null || entry.getValue() < best.depth()) {
+                    best = new Location(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+
+    private final AbstractContainerMenu menu;
+    private final BitSet tracked = new BitSet();
+    private final ItemStack[] seenStack;
+    private final BundleContents[] seenContents;
+    private final List<List<ItemKey>> keysAt;
+    private final Map<ItemKey, Holders> byItem = new HashMap<>();
+
+    private BundleIndex(AbstractContainerMenu menu) {
+        this.menu = menu;
+        int slots = menu.slots.size();
+        this.seenStack = new ItemStack[slots];
+        this.seenContents = new BundleContents[slots];
+        this.keysAt = new ArrayList<>(slots);
+        for (int i = 0; i < slots; i++) {
+            keysAt.add(List.of());
+        }
+    }
+
+    /** Indexes the bundles in the menu's player-inventory slots, matched on their backing inventory. */
+    public static BundleIndex forMenu(AbstractContainerMenu menu, Player player) {
+        BundleIndex index = new BundleIndex(menu);
+        for (int i = 0; i < menu.slots.size(); i++) {
+            if (menu.getSlot(i).container == player.getInventory()) {
+                index.tracked.set(i);
+                index.reindex(i);
+            }
+        }
+        return index;
+    }
+
+    @Override
+    public AbstractContainerMenu menu() {
+        return menu;
+    }
+
+    /**
+     * The bundle with the shallowest copy of the item, or null if no bundle holds one. Sweeps
+     * the tracked slots first, so this costs O(slots); see the class comment.
+     */
+    public Location locate(ItemStack item) {
+        if (item.isEmpty()) return null;
+        sweep();
+        Holders holders = byItem.get(new ItemKey(item));
+        return holders != null ? holders.best : null;
+    }
+
+    /**
+     * Picks up changes made on the client without a menu update. Bundle contents are
+     * immutable components, so an unchanged slot is two identity checks.
+     */
+    private void sweep() {
+        for (int i = tracked.nextSetBit(0); i >= 0; i = tracked.nextSetBit(i + 1)) {
+            ItemStack stack = menu.getSlot(i).getItem();
+            if (stack != seenStack[i] || stack.get(DataComponents.BUNDLE_CONTENTS) != seenContents[i]) {
+                reindex(i);
+            }
+        }
+    }
+
+    @Override
+    public void onSlotChanged(int slotId) {
+        if (slotId < 0 || slotId >= menu.slots.size()) return;
+        if (tracked.get(slotId)) {
+            reindex(slotId);
+        }
+    }
+
+    @Override
+    public void onContentsReplaced() {
+        for (int i = tracked.nextSetBit(0); i >= 0; i = tracked.nextSetBit(i + 1)) {
+            reindex(i);
+        }
+    }
+
+    private void reindex(int slotId) {
+        for (ItemKey key : keysAt.get(slotId)) {
+            Holders holders = byItem.get(key);
+            holders.depthBySlot.remove(slotId);
+            if (holders.depthBySlot.isEmpty()) {
+                byItem.remove(key);
+            } else if (holders.best.slotId() == slotId) {
+                holders.recomputeBest();
+            }
+        }
+
+        ItemStack stack = menu.getSlot(slotId).getItem();
+        seenStack[slotId] = stack;
+        seenContents[slotId] = stack.get(DataComponents.BUNDLE_CONTENTS);
+
+        // The shared contents view never changes, so its stacks can back the keys directly
+        List<ItemStack> contents = BundleHelper.getContents(stack);
+        if (contents.isEmpty()) {
+            keysAt.set(slotId, List.of());
+            return;
+        }
+        List<ItemKey> keys = new ArrayList<>();
+        for (int depth = 0; depth < contents.size(); depth++) {
+            ItemKey key = new ItemKey(contents.get(depth));
+            Holders holders = byItem.computeIfAbsent(key, k -> new Holders());
+            // Walking from the top, the first copy seen is the shallowest in this bundle
+            if (holders.depthBySlot.putIfAbsent(slotId, depth) == null) {
+                keys.add(key);
+                if (holders.best == null || depth < holders.best.depth()) {
+                    holders.best = new Location(slotId, depth);
+                }
+            }
+        }
+        keysAt.set(slotId, keys);
+    }
+}
@@ -0,0 +1,67 @@
+package dev.bundlebrowser.util;
+
+import java.util.List;
+import net.minecraft.core.component.DataComponents;
+import net.minecraft.world.item.BundleItem;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.component.BundleContents;
+
+/**
+ * Bundles inside bundles, read lazily. A nested bundle is only looked at when the browser
+ * opens it, through the same cached contents views as the top level, so a deep hierarchy
+ * costs nothing until someone walks into it.
+ *
+ * A path is the list of pop positions leading from the outer bundle to a nested one,
+ * outermost first.
+ */
+public final class BundleTree {
+    /** What a bundle holds at a glance: entries, total items, and fullness from 0 to 1. */
+    public record Summary(int entries, int items, float fullness) {}
+
+    // Memoized per BundleContents instance, like the views in BundleHelper
+    private static final int SUMMARY_CACHE_SIZE = 16;
+    private static final BundleContents[] cachedContents = new BundleContents[SUMMARY_CACHE_SIZE];
+    private static final Summary[] cachedSummaries = new Summary[SUMMARY_CACHE_SIZE];
+    private static int nextEviction;
+
+    private BundleTree() {}
+
+    /** A bundle worth opening as a node: one with something in it. */
+    public static boolean isExpandable(ItemStack stack) {
+        return BundleHelper.isBundle(stack) && !BundleHelper.isEmpty(stack);
+    }
+
+    /**
+     * The bundle the path leads to, or EMPTY if the path no longer ends at a bundle (the
+     * contents moved since the path was taken). Only the bundles on the path are read.
+     */
+    public static ItemStack resolve(ItemStack root, int[] path) {
+        ItemStack node = root;
+        for (int position : path) {
+            List<ItemStack> contents = BundleHelper.getContents(node);
+            if (position < 0 || position >= contents.size()) return ItemStack.EMPTY;
+            node = contents.get(position);
+        }
+        return BundleHelper.isBundle(node) ? node : ItemStack.EMPTY;
+    }
+
+    public static Summary summarize(ItemStack bundle) {
+        BundleContents contents = bundle.get(DataComponents.BUNDLE_CONTENTS);
+        if (contents == null) return new Summary(0, 0, 0);
+        for (int i = 0; i < SUMMARY_CACHE_SIZE; i++) {
+            if (cachedContents[i] == contents) return cachedSummaries[i];
+        }
+
+        List<ItemStack> entries = BundleHelper.getContents(bundle);
+        int items = 0;
+        for (ItemStack entry : entries) {
+            items += entry.getCount();
+        }
+        Summary summary = new Summary(entries.size(), items, BundleItem.getFullnessDisplay(bundle));
+
+        cachedContents[nextEviction] = contents;
+        cachedSummaries[nextEviction] = summary;
+        nextEviction = (nextEviction + 1) % SUMMARY_CACHE_SIZE;
+        return summary;
+    }
+}
@@ -0,0 +1,20 @@
+package dev.bundlebrowser.util;
+
+import net.minecraft.world.item.ItemStack;
+
+/**
+ * Item plus components, ignoring count; the identity vanilla uses to decide stacks merge.
+ * The wrapped stack must not change while the key is in use, so wrap a copy of anything
+ * that lives in a slot.
+ */
+public record ItemKey(ItemStack stack) {
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof ItemKey other && ItemStack.isSameItemSameComponents(stack, other.stack);
+    }
+
+    @Override
+    public int hashCode() {
+        return ItemStack.hashItemAndComponents(stack);
+    }
+}
@@ -0,0 +1,56 @@
+package dev.bundlebrowser.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import net.minecraft.world.inventory.AbstractContainerMenu;
+
+/**
+ * Slot updates the server pushes into a menu, fanned out to whoever tracks that menu.
+ * Fed by AbstractContainerMenuMixin; client clicks never go through here, since their
+ * callers already know which slots they touched.
+ */
+public final class MenuSlotEvents {
+    public interface Listener {
+        AbstractContainerMenu menu();
+
+        void onSlotChanged(int slotId);
+
+        /** The whole menu was replaced at once (a full resync). */
+        void onContentsReplaced();
+    }
+
+    private static final List<Listener> LISTENERS = new ArrayList<>();
+
+    private MenuSlotEvents() {}
+
+    public static void register(Listener listener) {
+        LISTENERS.add(listener);
+    }
+
+    public static void unregister(Listener listener) {
+        LISTENERS.remove(listener);
+    }
+
+    /** How many listeners are registered; the simulator checks finished operations leave none behind. */
+    public static int listenerCount() {
+        return LISTENERS.size();
+    }
+
+    public static void slotChanged(AbstractContainerMenu menu, int slotId) {
+        for (int i = 0; i < LISTENERS.size(); i++) {
+            Listener listener = LISTENERS.get(i);
+            if (listener.menu() == menu) {
+                listener.onSlotChanged(slotId);
+            }
+        }
+    }
+
+    public static void contentsReplaced(AbstractContainerMenu menu) {
+        for (int i = 0; i < LISTENERS.size(); i++) {
+            Listener listener = LISTENERS.get(i);
+            if (listener.menu() == menu) {
+                listener.onContentsReplaced();
+            }
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package dev.bundlebrowser.gametest;
+
+import dev.bundlebrowser.BundleBrowserClient;
+import dev.bundlebrowser.metrics.BundleMetrics;
+import dev.bundlebrowser.metrics.OperationStats;
+import dev.bundlebrowser.operation.BundleOperation;
+import dev.bundlebrowser.operation.ExtractionPlan;
+import dev.bundlebrowser.operation.MenuView;
+import dev.bundlebrowser.util.BundleHelper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
+import net.fabricmc.fabric.api.client.gametest.v1.FabricClientGameTest;
+import net.fabricmc.fabric.api.client.gametest.v1.context.ClientGameTestContext;
+import net.fabricmc.fabric.api.client.gametest.v1.context.TestServerContext;
+import net.fabricmc.fabric.api.client.gametest.v1.context.TestSingleplayerContext;
+import net.fabricmc.loader.api.FabricLoader;
+import net.minecraft.core.component.DataComponents;
+import net.minecraft.network.chat.Component;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.SimpleMenuProvider;
+import net.minecraft.world.entity.player.Inventory;
+import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.inventory.ChestMenu;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.Items;
+import net.minecraft.world.item.component.BundleContents;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Soaks bundle operations against the integrated server with container packets delayed by
+ * {@link LatencyInjector}: random bundles, random requests, and the interruptions that only
+ * matter under real timing (a cancel mid-chain, a chest opened over the inventory and closed
+ * again, an inventory with no room). After each operation it waits for client and server to
+ * agree and checks that nothing was duplicated or lost and that extractions took exactly
+ * their targets out.
+ *
+ * Run with {@code ./gradlew runClientGameTest}. System properties (or the -Psoak* Gradle
+ * properties that set them): bundlebrowser.soak.operations (default 2000), .latencyMs (60),
+ * .jitterMs (40) and .seed (1). Operation i uses seed + i, so a failure reruns alone with that
+ * seed and one operation. The report goes to the log and to bundlebrowser-soak.json in the
+ * run directory, and any failed check fails the run.
+ */
+public class BundleSoakTest implements FabricClientGameTest {
+    private static final Logger LOGGER = LoggerFactory.getLogger("bundlebrowser-gametest");
+    // InventoryMenu's first hotbar slot, inventory index 0
+    private static final int BUNDLE_SLOT = 36;
+    private static final int OPERATION_TIMEOUT_TICKS = BundleOperation.RESUME_TIMEOUT_TICKS + 200;
+    private static final int SETTLE_TIMEOUT_TICKS = 200;
+    // One item of each stack size from each group, as in the simulator
+    private static final Item[] ITEMS = {
+            Items.STONE, Items.DIRT, Items.COBBLESTONE,
+            Items.ENDER_PEARL, Items.SNOWBALL, Items.EGG,
+            Items.DIAMOND_SWORD, Items.SHEARS, Items.IRON_PICKAXE,
+    };
+
+    private enum Kind { EXTRACT, EMPTY_ALL, CANCEL, SWITCH }
+
+    /** Everything the player holds, and its item totals with bundle contents counted in. */
+    private record Snapshot(List<ItemStack> slots, ItemStack carried, Map<Item, Integer> totals, int bundleItems) {
+        static Snapshot of(Player player) {
+            Inventory inventory = player.getInventory();
+            List<ItemStack> slots = new ArrayList<>(inventory.getContainerSize());
+            Map<Item, Integer> totals = new HashMap<>();
+            for (int i = 0; i < inventory.getContainerSize(); i++) {
+                ItemStack stack = inventory.getItem(i).copy();
+                slots.add(stack);
+                count(stack, totals);
+            }
+            // The inventory's own cursor survives a chest opened over it, so count both
+            ItemStack carried = player.containerMenu.getCarried().copy();
+            count(carried, totals);
+            if (player.containerMenu != player.inventoryMenu) {
+                count(player.inventoryMenu.getCarried(), totals);
+            }
+            int bundleItems = 0;
+            for (ItemStack entry : BundleHelper.getContents(inventory.getItem(0))) {
+                bundleItems += entry.getCount();
+            }
+            return new Snapshot(slots, carried, totals, bundleItems);
+        }
+
+        private static void count(ItemStack stack, Map<Item, Integer> totals) {
+            if (stack.isEmpty()) return;
+            totals.merge(stack.getItem(), stack.getCount(), Integer::sum);
+            if (BundleHelper.isBundle(stack)) {
+                for (ItemStack entry : BundleHelper.getContents(stack)) {
+                    count(entry, totals);
+                }
+            }
+        }
+
+        boolean matches(Snapshot other) {
+            if (!ItemStack.matches(carried, other.carried)) return false;
+            for (int i = 0; i < slots.size(); i++) {
+                if (!ItemStack.matches(slots.get(i), other.slots.get(i))) return false;
+            }
+            return true;
+        }
+    }
+
+    @Override
+    public void runTest(ClientGameTestContext context) {
+        int operations = Integer.getInteger("bundlebrowser.soak.operations", 2000);
+        int latencyMs = Integer.getInteger("bundlebrowser.soak.latencyMs", 60);
+        int jitterMs = Integer.getInteger("bundlebrowser.soak.jitterMs", 40);
+        long seed = Long.getLong("bundlebrowser.soak.seed", 1);
+
+        SoakReport report = new SoakReport(latencyMs, jitterMs, seed);
+        AtomicReference<OperationStats> lastStats = new AtomicReference<>();
+        context.runOnClient(client -> {
+            LatencyInjector.configure(latencyMs, jitterMs, seed);
+            BundleMetrics.get().addListener(lastStats::set);
+        });
+        ClientTickEvents.START_CLIENT_TICK.register(client -> LatencyInjector.release());
+
+        try (TestSingleplayerContext singleplayer = context.worldBuilder().create()) {
+            singleplayer.getClientLevel().waitForChunksRender();
+            TestServerContext server = singleplayer.getServer();
+            server.runCommand("gamemode survival @a");
+            for (int i = 0; i < operations; i++) {
+                lastStats.set(null);
+                runOperation(context, server, seed + i, report, lastStats);
+            }
+        }
+
+        for (String line : report.summary()) {
+            LOGGER.info(line);
+        }
+        try {
+            report.write(FabricLoader.getInstance().getGameDir().resolve("bundlebrowser-soak.json"));
+        } catch (IOException e) {
+            LOGGER.warn("Could not write the soak report", e);
+        }
+        if (!report.passed()) {
+            throw new AssertionError("Bundle soak failed its checks; see the report above");
+        }
+    }
+
+    private static void runOperation(ClientGameTestContext context, TestServerContext server, long operationSeed,
+            SoakReport report, AtomicReference<OperationStats> lastStats) {
+        Random random = new Random(operationSeed);
+        boolean full = random.nextInt(5) == 0;
+        Snapshot before = server.computeOnServer(s -> setUp(player(s), random, full));
+        if (!settle(context, server)) {
+            report.fail("desync", operationSeed, "the client never saw the set-up inventory");
+            return;
+        }
+
+        List<ItemStack> contents = context.computeOnClient(client ->
+                BundleHelper.getContents(client.player.inventoryMenu.getSlot(BUNDLE_SLOT).getItem()));
+        if (contents.isEmpty()) {
+            report.skip();
+            return;
+        }
+        Kind kind = Kind.values()[random.nextInt(Kind.values().length)];
+        ExtractionPlan plan = plan(kind, contents.size(), random);
+        int targetItems = 0;
+        for (int i = 0; i < plan.popCount(); i++) {
+            if (plan.keeps(i)) targetItems += contents.get(i).getCount();
+        }
+
+        BundleOperation operation = context.computeOnClient(client -> {
+            MenuView view = MenuView.of(client, client.player, client.player.containerMenu);
+            BundleOperation started = kind == Kind.EMPTY_ALL
+                    ? BundleOperation.emptyAll(view, BUNDLE_SLOT, contents.size(), () -> {})
+                    : BundleOperation.extract(view, BUNDLE_SLOT, plan, () -> {});
+            BundleBrowserClient.operations().start(started);
+            return started;
+        });
+        long startNanos = System.nanoTime();
+        int interruptAt = random.nextInt(10);
+        int reopenAt = interruptAt + 5 + random.nextInt(40);
+        boolean finished = false;
+        for (int tick = 0; tick < OPERATION_TIMEOUT_TICKS; tick++) {
+            if (kind == Kind.CANCEL && tick == interruptAt) {
+                context.runOnClient(client -> operation.cancel());
+            } else if (kind == Kind.SWITCH && tick == interruptAt) {
+                server.runOnServer(s -> player(s).openMenu(new SimpleMenuProvider(
+                        (id, inventory, player) -> ChestMenu.threeRows(id, inventory), Component.literal("Soak"))));
+            } else if (kind == Kind.SWITCH && tick == reopenAt) {
+                server.runOnServer(s -> player(s).closeContainer());
+            }
+            if (context.computeOnClient(client -> operation.isFinished())) {
+                finished = true;
+                break;
+            }
+            context.waitTick();
+        }
+        long nanos = System.nanoTime() - startNanos;
+        if (!finished) {
+            report.fail("timeout", operationSeed, kind + " still " + context.computeOnClient(client -> operation.phase()) + " after "
+                    + OPERATION_TIMEOUT_TICKS + " ticks");
+            context.runOnClient(client -> operation.cancel());
+            context.waitFor(client -> operation.isFinished(), OPERATION_TIMEOUT_TICKS);
+        }
+        // A switch the operation outlasted leaves the chest open; close it before checking
+        server.runOnServer(s -> {
+            ServerPlayer player = player(s);
+            if (player.containerMenu != player.inventoryMenu) player.closeContainer();
+        });
+
+        boolean converged = settle(context, server);
+        Snapshot after = server.computeOnServer(s -> Snapshot.of(player(s)));
+        OperationStats stats = lastStats.get();
+        if (stats != null) {
+            report.record(stats);
+        }
+        report.record(kind.name().toLowerCase(), nanos, before.bundleItems() - after.bundleItems());
+
+        String what = kind + (full ? " (full inventory) " : " ") + plan;
+        if (!converged) {
+            report.fail("desync", operationSeed, what + ": client and server still disagree "
+                    + SETTLE_TIMEOUT_TICKS + " ticks after it finished");
+        }
+        for (Item item : union(before.totals(), after.totals())) {
+            int was = before.totals().getOrDefault(item, 0);
+            int now = after.totals().getOrDefault(item, 0);
+            if (now > was) {
+                report.fail("duplication", operationSeed, what + ": " + was + " " + item + " became " + now);
+            } else if (now < was) {
+                report.fail("loss", operationSeed, what + ": " + was + " " + item + " became " + now);
+            }
+        }
+        if (!after.carried().isEmpty() && !BundleBrowserClient.config().keepTargetOnCursor()) {
+            report.fail("cursor", operationSeed, what + ": left " + after.carried() + " on the cursor");
+        }
+        if (kind == Kind.EXTRACT && stats != null && stats.succeeded() && !stats.aborted()
+                && before.bundleItems() - after.bundleItems() != targetItems) {
+            report.fail("extraction", operationSeed, what + ": took " + (before.bundleItems() - after.bundleItems())
+                    + " items out, its targets hold " + targetItems);
+        }
+    }
+
+    private static ExtractionPlan plan(Kind kind, int entries, Random random) {
+        return switch (kind) {
+            case EMPTY_ALL -> {
+                int[] everything = new int[entries];
+                for (int i = 0; i < entries; i++) {
+                    everything[i] = i;
+                }
+                yield ExtractionPlan.forTargets(everything);
+            }
+            // The deepest entry, so there is a long chain to cut short
+            case CANCEL -> ExtractionPlan.forTargets(entries - 1);
+            default -> {
+                List<Integer> targets = new ArrayList<>();
+                int wanted = 1 + random.nextInt(Math.min(entries, 3));
+                while (targets.size() < wanted) {
+                    int target = random.nextInt(entries);
+                    if (!targets.contains(target)) targets.add(target);
+                }
+                yield ExtractionPlan.forTargets(targets.stream().mapToInt(Integer::intValue).toArray());
+            }
+        };
+    }
+
+    /** Waits until nothing is held back and the client's view matches the server's; false on timeout. */
+    private static boolean settle(ClientGameTestContext context, TestServerContext server) {
+        for (int tick = 0; tick < SETTLE_TIMEOUT_TICKS; tick++) {
+            Snapshot authoritative = server.computeOnServer(s -> Snapshot.of(player(s)));
+            boolean agrees = context.computeOnClient(client ->
+                    LatencyInjector.idle() && Snapshot.of(client.player).matches(authoritative));
+            if (agrees) return true;
+            context.waitTick();
+        }
+        return false;
+    }
+
+    private static Snapshot setUp(ServerPlayer player, Random random, boolean full) {
+        if (player.containerMenu != player.inventoryMenu) {
+            player.closeContainer();
+        }
+        player.inventoryMenu.setCarried(ItemStack.EMPTY);
+        Inventory inventory = player.getInventory();
+        inventory.clearContent();
+        inventory.setItem(0, randomBundle(random, 1 + random.nextInt(30), true));
+        // A full inventory leaves nowhere to pop to, which the operations must abort cleanly on
+        double density = full ? 1 : random.nextDouble() * 0.6;
+        for (int slot = 1; slot < Inventory.INVENTORY_SIZE; slot++) {
+            if ((full || slot >= 9) && random.nextDouble() < density) {
+                Item item = ITEMS[random.nextInt(ITEMS.length)];
+                inventory.setItem(slot, new ItemStack(item, 1 + random.nextInt(new ItemStack(item).getMaxStackSize())));
+            }
+        }
+        player.inventoryMenu.broadcastChanges();
+        return Snapshot.of(player);
+    }
+
+    private static ItemStack randomBundle(Random random, int inserts, boolean nest) {
+        BundleContents.Mutable contents = new BundleContents.Mutable(BundleContents.EMPTY);
+        for (int i = 0; i < inserts; i++) {
+            if (nest && random.nextInt(12) == 0) {
+                contents.tryInsert(randomBundle(random, random.nextInt(3), false));
+            } else {
+                Item item = ITEMS[random.nextInt(ITEMS.length)];
+                contents.tryInsert(new ItemStack(item, 1 + random.nextInt(new ItemStack(item).getMaxStackSize())));
+            }
+        }
+        ItemStack bundle = new ItemStack(Items.BUNDLE);
+        bundle.set(DataComponents.BUNDLE_CONTENTS, contents.toImmutable());
+        return bundle;
+    }
+
+    private static ServerPlayer player(MinecraftServer server) {
+        return server.getPlayerList().getPlayers().getFirst();
+    }
+
+    private static List<Item> union(Map<Item, Integer> a, Map<Item, Integer> b) {
+        List<Item> items = new ArrayList<>(a.keySet());
+        for (Item item : b.keySet()) {
+            if (!a.containsKey(item)) items.add(item);
+        }
+        return items;
+    }
+}
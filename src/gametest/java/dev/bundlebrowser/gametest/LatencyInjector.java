@@ -0,0 +1,88 @@
+package dev.bundlebrowser.gametest;
+
+import java.util.ArrayDeque;
+import java.util.Random;
+import net.minecraft.client.Minecraft;
+
+/**
+ * Holds container packets back for a configurable latency plus random jitter, in both
+ * directions: slot, content and cursor updates on their way in, clicks and closes on their
+ * way out. Each direction stays in order, as it would over TCP, so jitter stretches the gaps
+ * between packets but never swaps two of them.
+ *
+ * Held packets are released from the start of each client tick, so delays are effectively
+ * rounded up to whole ticks. Everything here runs on the client thread: the mixins only hold
+ * a packet once vanilla has moved its handling there.
+ */
+public final class LatencyInjector {
+    private record Held(long releaseNanos, Runnable delivery) {}
+
+    private static final ArrayDeque<Held> incoming = new ArrayDeque<>();
+    private static final ArrayDeque<Held> outgoing = new ArrayDeque<>();
+    private static long latencyNanos;
+    private static long jitterNanos;
+    private static Random random = new Random();
+    private static boolean delivering;
+    private static long held;
+
+    private LatencyInjector() {}
+
+    /** Sets the delay each held packet gets: latency plus up to jitter more, both one way. */
+    public static void configure(int latencyMs, int jitterMs, long seed) {
+        latencyNanos = latencyMs * 1_000_000L;
+        jitterNanos = jitterMs * 1_000_000L;
+        random = new Random(seed);
+    }
+
+    /** Queues an incoming packet's handling; false if it should be handled now. */
+    public static boolean holdIncoming(Runnable delivery) {
+        if (!Minecraft.getInstance().isSameThread()) return false;
+        return hold(incoming, delivery);
+    }
+
+    /** Queues an outgoing packet's send; false if it should go now. */
+    public static boolean holdOutgoing(Runnable send) {
+        return hold(outgoing, send);
+    }
+
+    private static boolean hold(ArrayDeque<Held> queue, Runnable delivery) {
+        if (delivering || (latencyNanos == 0 && jitterNanos == 0)) return false;
+        long delay = latencyNanos + (jitterNanos > 0 ? (long) (random.nextDouble() * jitterNanos) : 0);
+        long release = System.nanoTime() + delay;
+        // Never before the packet ahead of it
+        if (!queue.isEmpty()) {
+            release = Math.max(release, queue.peekLast().releaseNanos());
+        }
+        queue.addLast(new Held(release, delivery));
+        held++;
+        return true;
+    }
+
+    /** Delivers every held packet that is due; call at the start of each client tick. */
+    public static void release() {
+        long now = System.nanoTime();
+        delivering = true;
+        try {
+            deliver(outgoing, now);
+            deliver(incoming, now);
+        } finally {
+            delivering = false;
+        }
+    }
+
+    private static void deliver(ArrayDeque<Held> queue, long now) {
+        while (!queue.isEmpty() && queue.peekFirst().releaseNanos() <= now) {
+            queue.removeFirst().delivery().run();
+        }
+    }
+
+    /** True when nothing is held in either direction. */
+    public static boolean idle() {
+        return incoming.isEmpty() && outgoing.isEmpty();
+    }
+
+    /** Packets held since the game started. */
+    public static long held() {
+        return held;
+    }
+}
@@ -0,0 +1,166 @@
+package dev.bundlebrowser.gametest;
+
+import dev.bundlebrowser.metrics.OperationStats;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * What a soak run measured: operation latency per kind (from the start call to the client
+ * seeing the operation finish), items moved out of bundles, what the operations themselves
+ * reported through BundleMetrics, and every check that failed.
+ */
+final class SoakReport {
+    private static final int MAX_FAILURES_KEPT = 50;
+
+    private final int latencyMs;
+    private final int jitterMs;
+    private final long seed;
+    private final Map<String, List<Long>> latencies = new TreeMap<>();
+    private final Map<String, Integer> failuresByCheck = new TreeMap<>();
+    private final List<String> failures = new ArrayList<>();
+    private final long startNanos = System.nanoTime();
+    private long operationNanos;
+    private long itemsMoved;
+    private int skipped;
+    private int succeeded;
+    private int failed;
+    private int aborted;
+    private long clicks;
+    private long corrections;
+    private long replans;
+
+    SoakReport(int latencyMs, int jitterMs, long seed) {
+        this.latencyMs = latencyMs;
+        this.jitterMs = jitterMs;
+        this.seed = seed;
+    }
+
+    void record(String kind, long nanos, int items) {
+        latencies.computeIfAbsent(kind, k -> new ArrayList<>()).add(nanos);
+        operationNanos += nanos;
+        itemsMoved += Math.max(0, items);
+    }
+
+    /** Adds what the operation reported about itself; called from a BundleMetrics listener. */
+    void record(OperationStats stats) {
+        if (stats.succeeded()) succeeded++; else failed++;
+        if (stats.aborted()) aborted++;
+        clicks += stats.clicks();
+        corrections += stats.corrections();
+        replans += stats.replans();
+    }
+
+    void skip() {
+        skipped++;
+    }
+
+    /**
+     * @param check which check failed: desync, duplication, loss, cursor, extraction, timeout
+     */
+    void fail(String check, long operationSeed, String what) {
+        failuresByCheck.merge(check, 1, Integer::sum);
+        if (failures.size() < MAX_FAILURES_KEPT) {
+            failures.add("seed " + operationSeed + ": " + check + ": " + what);
+        }
+    }
+
+    boolean passed() {
+        return failuresByCheck.isEmpty();
+    }
+
+    int operations() {
+        int total = 0;
+        for (List<Long> kind : latencies.values()) {
+            total += kind.size();
+        }
+        return total;
+    }
+
+    /** Items moved per second of operation time, setup and settling excluded. */
+    double itemsPerSecond() {
+        return operationNanos == 0 ? 0 : itemsMoved / (operationNanos / 1e9);
+    }
+
+    List<String> summary() {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format(Locale.ROOT,
+                "%d operations (%d skipped) at %d ms latency + %d ms jitter in %.0f s: %d done, %d failed, %d aborted",
+                operations(), skipped, latencyMs, jitterMs, (System.nanoTime() - startNanos) / 1e9,
+                succeeded, failed, aborted));
+        lines.add(String.format(Locale.ROOT, "%d items moved, %.1f items/s; %d clicks, %d corrections, %d replans",
+                itemsMoved, itemsPerSecond(), clicks, corrections, replans));
+        List<Long> all = new ArrayList<>();
+        for (Map.Entry<String, List<Long>> kind : latencies.entrySet()) {
+            long[] sorted = sorted(kind.getValue());
+            lines.add(String.format(Locale.ROOT, "  %-10s %5d ops  p50 %7.1f ms  p99 %7.1f ms  max %7.1f ms",
+                    kind.getKey(), sorted.length, millis(sorted, 0.50), millis(sorted, 0.99), millis(sorted, 1)));
+            all.addAll(kind.getValue());
+        }
+        long[] sorted = sorted(all);
+        lines.add(String.format(Locale.ROOT, "  %-10s %5d ops  p50 %7.1f ms  p99 %7.1f ms  max %7.1f ms",
+                "all", sorted.length, millis(sorted, 0.50), millis(sorted, 0.99), millis(sorted, 1)));
+        lines.add(passed() ? "No desyncs, duplications or losses" : "Failed checks: " + failuresByCheck);
+        lines.addAll(failures);
+        return lines;
+    }
+
+    void write(Path path) throws IOException {
+        JsonObject json = new JsonObject();
+        json.addProperty("latencyMs", latencyMs);
+        json.addProperty("jitterMs", jitterMs);
+        json.addProperty("seed", seed);
+        json.addProperty("operations", operations());
+        json.addProperty("skipped", skipped);
+        json.addProperty("succeeded", succeeded);
+        json.addProperty("failed", failed);
+        json.addProperty("aborted", aborted);
+        json.addProperty("itemsMoved", itemsMoved);
+        json.addProperty("itemsPerSecond", itemsPerSecond());
+        json.addProperty("clicks", clicks);
+        json.addProperty("corrections", corrections);
+        json.addProperty("replans", replans);
+        JsonObject byKind = new JsonObject();
+        for (Map.Entry<String, List<Long>> kind : latencies.entrySet()) {
+            long[] sorted = sorted(kind.getValue());
+            JsonObject latency = new JsonObject();
+            latency.addProperty("count", sorted.length);
+            latency.addProperty("p50Ms", millis(sorted, 0.50));
+            latency.addProperty("p99Ms", millis(sorted, 0.99));
+            latency.addProperty("maxMs", millis(sorted, 1));
+            byKind.add(kind.getKey(), latency);
+        }
+        json.add("latency", byKind);
+        JsonObject checks = new JsonObject();
+        failuresByCheck.forEach(checks::addProperty);
+        json.add("failedChecks", checks);
+        JsonArray failureLines = new JsonArray();
+        failures.forEach(failureLines::add);
+        json.add("failures", failureLines);
+        Files.createDirectories(path.getParent());
+        Files.writeString(path, new GsonBuilder().setPrettyPrinting().create().toJson(json));
+    }
+
+    private static long[] sorted(List<Long> values) {
+        long[] sorted = values.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    // Nearest-rank percentile
+    private static double millis(long[] sorted, double percentile) {
+        if (sorted.length == 0) return 0;
+        int rank = (int) Math.ceil(percentile * sorted.length);
+        return sorted[Math.max(0, rank - 1)] / 1e6;
+    }
+}
@@ -0,0 +1,31 @@
+package dev.bundlebrowser.gametest.mixin;
+
+import dev.bundlebrowser.gametest.LatencyInjector;
+
+import net.minecraft.client.multiplayer.ClientCommonPacketListenerImpl;
+import net.minecraft.network.protocol.Packet;
+import net.minecraft.network.protocol.game.ServerboundContainerClickPacket;
+import net.minecraft.network.protocol.game.ServerboundContainerClosePacket;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+/**
+ * Delays container clicks and closes on their way to the server. Closes are held with the
+ * clicks so a close can never overtake a click sent before it.
+ */
+@Mixin(ClientCommonPacketListenerImpl.class)
+public abstract class ClientCommonPacketListenerImplMixin {
+
+    @Inject(method = "send(Lnet/minecraft/network/protocol/Packet;)V", at = @At("HEAD"), cancellable = true)
+    private void bundlebrowser$delayContainerInput(Packet<?> packet, CallbackInfo ci) {
+        if (!(packet instanceof ServerboundContainerClickPacket) && !(packet instanceof ServerboundContainerClosePacket)) {
+            return;
+        }
+        ClientCommonPacketListenerImpl self = (ClientCommonPacketListenerImpl) (Object) this;
+        if (LatencyInjector.holdOutgoing(() -> self.send(packet))) {
+            ci.cancel();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package dev.bundlebrowser.gametest.mixin;
+
+import dev.bundlebrowser.gametest.LatencyInjector;
+
+import net.minecraft.client.multiplayer.ClientPacketListener;
+import net.minecraft.network.protocol.game.ClientboundContainerSetContentPacket;
+import net.minecraft.network.protocol.game.ClientboundContainerSetSlotPacket;
+import net.minecraft.network.protocol.game.ClientboundSetCursorItemPacket;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+/**
+ * Delays the container updates the server sends. Each handler first runs on the network
+ * thread, where vanilla hands it over to the client thread; only that second call is held,
+ * and replayed later through the same handler.
+ */
+@Mixin(ClientPacketListener.class)
+public abstract class ClientPacketListenerMixin {
+
+    @Inject(method = "handleContainerSetSlot", at = @At("HEAD"), cancellable = true)
+    private void bundlebrowser$delaySetSlot(ClientboundContainerSetSlotPacket packet, CallbackInfo ci) {
+        ClientPacketListener self = (ClientPacketListener) (Object) this;
+        if (LatencyInjector.holdIncoming(() -> self.handleContainerSetSlot(packet))) {
+            ci.cancel();
+        }
+    }
+
+    @Inject(method = "handleContainerContent", at = @At("HEAD"), cancellable = true)
+    private void bundlebrowser$delayContent(ClientboundContainerSetContentPacket packet, CallbackInfo ci) {
+        ClientPacketListener self = (ClientPacketListener) (Object) this;
+        if (LatencyInjector.holdIncoming(() -> self.handleContainerContent(packet))) {
+            ci.cancel();
+        }
+    }
+
+    @Inject(method = "handleSetCursorItem", at = @At("HEAD"), cancellable = true)
+    private void bundlebrowser$delayCursor(ClientboundSetCursorItemPacket packet, CallbackInfo ci) {
+        ClientPacketListener self = (ClientPacketListener) (Object) this;
+        if (LatencyInjector.holdIncoming(() -> self.handleSetCursorItem(packet))) {
+            ci.cancel();
+        }
+    }
+}
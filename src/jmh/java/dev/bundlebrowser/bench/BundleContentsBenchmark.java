@@ -0,0 +1,79 @@
+package dev.bundlebrowser.bench;
+
+import dev.bundlebrowser.util.BundleFingerprint;
+import dev.bundlebrowser.util.BundleHelper;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import net.minecraft.world.item.ItemStack;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Reading bundle contents: the cached view BundleHelper hands out, the same call when every
+ * bundle misses the cache, and the fingerprints taken before every pop.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BundleContentsBenchmark {
+    // Twice the view cache, so cycling through them always misses
+    private static final int DISTINCT_BUNDLES = 16;
+
+    @Param({"1", "8", "32", "64"})
+    public int entries;
+
+    private ItemStack bundle;
+    private ItemStack[] bundles;
+    private List<ItemStack> contents;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        GameClasses.start();
+        bundle = GameClasses.bundle(entries, 0);
+        bundles = new ItemStack[DISTINCT_BUNDLES];
+        for (int i = 0; i < DISTINCT_BUNDLES; i++) {
+            bundles[i] = GameClasses.bundle(entries, i + 1);
+        }
+        contents = BundleHelper.getContents(bundle);
+    }
+
+    @Benchmark
+    public List<ItemStack> getContentsCached() {
+        return BundleHelper.getContents(bundle);
+    }
+
+    @Benchmark
+    public List<ItemStack> getContentsUncached() {
+        ItemStack current = bundles[next];
+        next = (next + 1) % DISTINCT_BUNDLES;
+        return BundleHelper.getContents(current);
+    }
+
+    @Benchmark
+    public boolean isEmpty() {
+        return BundleHelper.isEmpty(bundle);
+    }
+
+    @Benchmark
+    public ItemStack peekTop() {
+        return BundleHelper.peekTop(bundle);
+    }
+
+    @Benchmark
+    public long fingerprint() {
+        return BundleFingerprint.of(bundle);
+    }
+
+    @Benchmark
+    public long[] fingerprintSuffixes() {
+        return BundleFingerprint.suffixes(contents);
+    }
+}
@@ -0,0 +1,48 @@
+package dev.bundlebrowser.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import net.minecraft.SharedConstants;
+import net.minecraft.core.component.DataComponents;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.server.Bootstrap;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.Items;
+import net.minecraft.world.item.component.BundleContents;
+
+/**
+ * Starts the game's registries once per benchmark fork, without a client, and builds bundles
+ * to measure against.
+ */
+final class GameClasses {
+    private static boolean started;
+
+    private GameClasses() {}
+
+    static synchronized void start() {
+        if (started) return;
+        SharedConstants.tryDetectVersion();
+        Bootstrap.bootStrap();
+        started = true;
+    }
+
+    /**
+     * A bundle of the given number of entries, one item each of distinct items stacking to
+     * 64, so every size up to 64 fits and no two entries merge. The offset picks which items,
+     * so bundles of one size can still differ.
+     */
+    static ItemStack bundle(int entries, int offset) {
+        List<Item> items = new ArrayList<>();
+        for (Item item : BuiltInRegistries.ITEM) {
+            if (item.getDefaultMaxStackSize() == 64 && item != Items.AIR) items.add(item);
+        }
+        BundleContents.Mutable contents = new BundleContents.Mutable(BundleContents.EMPTY);
+        for (int i = 0; i < entries; i++) {
+            contents.tryInsert(new ItemStack(items.get((offset + i) % items.size())));
+        }
+        ItemStack bundle = new ItemStack(Items.BUNDLE);
+        bundle.set(DataComponents.BUNDLE_CONTENTS, contents.toImmutable());
+        return bundle;
+    }
+}
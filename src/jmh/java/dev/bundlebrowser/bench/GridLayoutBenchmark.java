@@ -0,0 +1,74 @@
+package dev.bundlebrowser.bench;
+
+import dev.bundlebrowser.screen.BundleSlotWidget;
+import dev.bundlebrowser.screen.GridLayout;
+
+import java.util.concurrent.TimeUnit;
+import net.minecraft.world.item.ItemStack;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * What the browser does before drawing: the grid layout for a bundle and window size, the
+ * per-cell rectangles, the slot widgets init() builds, and the hover hit-test every frame.
+ * The widgets get no font, which only drawing would use.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GridLayoutBenchmark {
+    private static final int SCREEN_WIDTH = 854;
+    private static final int SCREEN_HEIGHT = 480;
+
+    @Param({"1", "27", "64", "256"})
+    public int entries;
+
+    private final GridLayout grid = new GridLayout();
+    private double mouseX;
+    private double mouseY;
+
+    @Setup
+    public void setUp() {
+        GameClasses.start();
+        grid.layout(entries, SCREEN_WIDTH, SCREEN_HEIGHT);
+        mouseX = grid.slotsX() + grid.slotsWidth() / 2.0;
+        mouseY = grid.slotsY() + grid.slotsHeight() / 2.0;
+    }
+
+    @Benchmark
+    public GridLayout layout() {
+        grid.layout(entries, SCREEN_WIDTH, SCREEN_HEIGHT);
+        return grid;
+    }
+
+    @Benchmark
+    public void layoutAndCells(Blackhole blackhole) {
+        grid.layout(entries, SCREEN_WIDTH, SCREEN_HEIGHT);
+        for (int cell = 0; cell < grid.visibleCells(); cell++) {
+            blackhole.consume(grid.cellX(cell));
+            blackhole.consume(grid.cellY(cell));
+            blackhole.consume(grid.indexOf(cell));
+        }
+    }
+
+    @Benchmark
+    public void buildWidgets(Blackhole blackhole) {
+        grid.layout(entries, SCREEN_WIDTH, SCREEN_HEIGHT);
+        for (int cell = 0; cell < grid.visibleCells(); cell++) {
+            blackhole.consume(new BundleSlotWidget(grid.cellX(cell), grid.cellY(cell), ItemStack.EMPTY, cell,
+                    null, slot -> {}, slot -> {}));
+        }
+    }
+
+    @Benchmark
+    public int hitTest() {
+        return grid.cellAt(mouseX, mouseY);
+    }
+}
@@ -0,0 +1,122 @@
+package dev.bundlebrowser.bench;
+
+import dev.bundlebrowser.operation.BundleOperation;
+import dev.bundlebrowser.operation.ClickStrategy;
+import dev.bundlebrowser.operation.ExtractionPlan;
+import dev.bundlebrowser.operation.InputPacer;
+import dev.bundlebrowser.operation.ReorderPlanner;
+import dev.bundlebrowser.simulate.SimMenu;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The extraction and put-back planners: making a plan, picking its click strategy, working
+ * out a reorder, and a whole extraction run by BundleOperation against a simulated menu,
+ * which also reports the inputs it issued per operation. The simulated menu shows real
+ * ItemStacks, so the game's registries are started once.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PlannerBenchmark {
+    private static final int CONTAINER_SLOTS = 27;
+    private static final int PLAYER_SLOTS = 36;
+    private static final int MAX_TICKS = 10_000;
+
+    @Param({"8", "32", "64"})
+    public int entries;
+
+    @Param({"1", "4"})
+    public int targets;
+
+    private int[] targetPositions;
+    private int[] order;
+    private ExtractionPlan plan;
+    private SimMenu.Stack bundle;
+
+    /** Inputs a simulated extraction issued, as an extra column next to the timings. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Inputs {
+        public long inputs;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            inputs = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        SimMenu.bootstrap();
+        Random random = new Random(entries * 31L + targets);
+        targetPositions = random.ints(targets, 0, entries).toArray();
+        order = new int[entries];
+        for (int i = 0; i < entries; i++) {
+            order[i] = i;
+        }
+        // A drag from near the bottom to the top, the costly reorder the browser allows
+        ReorderPlanner.move(order, entries - 2, 0);
+        plan = ExtractionPlan.forTargets(targetPositions);
+        bundle = SimMenu.stack(SimMenu.BUNDLE, 1);
+        for (int i = 0; i < entries; i++) {
+            // Items stacking to 64, one each, all different, so every size fits unmerged
+            SimMenu.insert(bundle, SimMenu.stack(3 + 3 * i, 1));
+        }
+    }
+
+    @Benchmark
+    public ExtractionPlan extractionPlan() {
+        return ExtractionPlan.forTargets(targetPositions);
+    }
+
+    @Benchmark
+    public ClickStrategy.Choice chooseStrategy() {
+        return ClickStrategy.choose(plan, true, true);
+    }
+
+    @Benchmark
+    public int[] putBackOrder() {
+        return plan.putBackOrder();
+    }
+
+    @Benchmark
+    public ExtractionPlan reorderPlan() {
+        return ReorderPlanner.plan(order);
+    }
+
+    @Benchmark
+    public BundleOperation simulatedExtraction(Inputs inputs) {
+        SimMenu menu = new SimMenu(CONTAINER_SLOTS, PLAYER_SLOTS);
+        menu.set(CONTAINER_SLOTS, copyOf(bundle));
+        BundleOperation operation = BundleOperation.extractNested(menu, CONTAINER_SLOTS, new int[0],
+                ExtractionPlan.forTargets(targetPositions), false, () -> {});
+        // An unlimited budget, so every step goes out as soon as the operation lets it
+        InputPacer pacer = new InputPacer(Integer.MAX_VALUE, Integer.MAX_VALUE, false);
+        for (int tick = 0; tick < MAX_TICKS && !operation.isFinished(); tick++) {
+            pacer.onTick();
+            operation.tick(pacer);
+        }
+        inputs.inputs += menu.inputs();
+        return operation;
+    }
+
+    private static SimMenu.Stack copyOf(SimMenu.Stack bundle) {
+        SimMenu.Stack copy = SimMenu.stack(SimMenu.BUNDLE, 1);
+        for (int i = bundle.contents().size() - 1; i >= 0; i--) {
+            SimMenu.insert(copy, SimMenu.stack(bundle.contents().get(i).item(), bundle.contents().get(i).count()));
+        }
+        return copy;
+    }
+}
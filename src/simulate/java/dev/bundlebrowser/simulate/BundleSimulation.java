@@ -0,0 +1,668 @@
+package dev.bundlebrowser.simulate;
+
+import dev.bundlebrowser.config.BundleBrowserConfig;
+import dev.bundlebrowser.operation.BundleOperation;
+import dev.bundlebrowser.operation.ClickStrategy;
+import dev.bundlebrowser.operation.DestinationPlan;
+import dev.bundlebrowser.operation.ExtractionPlan;
+import dev.bundlebrowser.operation.InputPacer;
+import dev.bundlebrowser.operation.InsertPlan;
+import dev.bundlebrowser.operation.ReorderPlanner;
+import dev.bundlebrowser.util.BundleHelper;
+import dev.bundlebrowser.util.MenuSlotEvents;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.IntPredicate;
+import net.minecraft.world.item.Item;
+
+/**
+ * Runs the real {@link BundleOperation} against thousands of random bundles in {@link SimMenu},
+ * ticked with an {@link InputPacer} as in the game, and checks every result: the targets end
+ * up in slots (or on the cursor), everything else is back in the bundle in its old order (or
+ * the new one, for a reorder), no other slot changed, and the inputs sent are exactly what
+ * {@link ClickStrategy} expected. A nested extraction takes only from the nested bundle, an
+ * Empty All along a {@link DestinationPlan} only fills the side it was planned for, and a
+ * load takes what its {@link InsertPlan} says fits. Without a free slot per pop a reorder
+ * must not start, and anything else must give up or stop cleanly.
+ *
+ * Some trials close the menu partway through, to reopen it, leave it closed or drop the
+ * player, and some have the server take back clicks still in flight. Those must still end,
+ * lose no item and leave no slot listener registered. Then {@link VanillaBundleCheck} holds the
+ * simulator and BundleHelper against the game's own bundle code. Run with
+ * {@code ./gradlew simulate}; the exit status is 1 on any failure.
+ *
+ * Arguments: --trials N (default 20000), --seed S (default 1), --no-vanilla. Trial i runs
+ * with seed S + i, so a failing trial reruns alone with --seed S+i --trials 1.
+ */
+public final class BundleSimulation {
+    private static final int CONTAINER_SLOTS = 27;
+    private static final int PLAYER_SLOTS = 36;
+    private static final int MAX_FAILURES_SHOWN = 10;
+    // Far more than any trial needs; an operation still running then is stuck
+    private static final int MAX_TICKS = 10_000;
+
+    // Simulator items in play: nine types, three of each stack size
+    private static final int FIRST_ITEM = 3;
+    private static final int ITEM_TYPES = 9;
+
+    private enum Scenario { EXTRACT, EMPTY_ALL, EMPTY_INTO, REORDER, NESTED, LOAD }
+
+    // What happens to the menu while the operation runs: it closes at some tick and comes back
+    // soon, never does (the operation times out), or goes along with the player
+    private enum Disturbance { NONE, CLOSE_AND_REOPEN, CLOSE_FOR_GOOD, DISCONNECT }
+
+    private BundleSimulation() {}
+
+    public static void main(String[] args) {
+        int trials = 20_000;
+        long seed = 1;
+        boolean vanilla = true;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--trials" -> trials = Integer.parseInt(args[++i]);
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                case "--no-vanilla" -> vanilla = false;
+                default -> throw new IllegalArgumentException("Unknown argument " + args[i]);
+            }
+        }
+
+        SimMenu.bootstrap();
+        long startNanos = System.nanoTime();
+        int ran = 0;
+        int skipped = 0;
+        long clicks = 0;
+        List<String> failures = new ArrayList<>();
+        for (int trial = 0; trial < trials; trial++) {
+            Random random = new Random(seed + trial);
+            String failure;
+            int[] sent = new int[1];
+            try {
+                failure = runTrial(random, sent);
+            } catch (RuntimeException e) {
+                failure = "threw " + e;
+            }
+            if (failure == null && sent[0] < 0) {
+                skipped++;
+                continue;
+            }
+            ran++;
+            clicks += Math.max(0, sent[0]);
+            if (failure != null) {
+                failures.add("seed " + (seed + trial) + ": " + failure);
+            }
+        }
+        System.out.printf(Locale.ROOT, "%d bundles simulated (%d skipped), %d inputs, %d failures in %.2f s%n",
+                ran, skipped, clicks, failures.size(), (System.nanoTime() - startNanos) / 1e9);
+        for (int i = 0; i < Math.min(MAX_FAILURES_SHOWN, failures.size()); i++) {
+            System.out.println("  " + failures.get(i));
+        }
+
+        boolean vanillaFailed = false;
+        if (vanilla) {
+            List<String> mismatches = VanillaBundleCheck.run(seed, 2_000);
+            System.out.println(mismatches.isEmpty()
+                    ? "Simulator and BundleHelper agree with vanilla bundles"
+                    : mismatches.size() + " disagreements with vanilla bundles");
+            for (int i = 0; i < Math.min(MAX_FAILURES_SHOWN, mismatches.size()); i++) {
+                System.out.println("  " + mismatches.get(i));
+            }
+            vanillaFailed = !mismatches.isEmpty();
+        }
+        if (!failures.isEmpty() || vanillaFailed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * One random bundle and one random request. Null if every check passed; sent[0] is the
+     * inputs sent, or -1 if the trial had nothing to check (an empty bundle, nothing that fits).
+     */
+    private static String runTrial(Random random, int[] sent) {
+        SimMenu menu = new SimMenu(CONTAINER_SLOTS, PLAYER_SLOTS);
+        int bundleSlot = random.nextInt(5) == 0
+                ? random.nextInt(CONTAINER_SLOTS) : CONTAINER_SLOTS + random.nextInt(PLAYER_SLOTS);
+        Scenario scenario = Scenario.values()[random.nextInt(Scenario.values().length)];
+        SimMenu.Stack bundle = randomBundle(random, 1 + random.nextInt(40));
+        if (scenario == Scenario.NESTED && nestedBundles(bundle).isEmpty()) {
+            SimMenu.insert(bundle, randomBundle(random, 1 + random.nextInt(4)));
+        }
+        menu.set(bundleSlot, bundle);
+        double density = random.nextDouble() * 0.7;
+        for (int i = 0; i < menu.size(); i++) {
+            if (i != bundleSlot && random.nextDouble() < density) {
+                int item = randomItem(random);
+                menu.set(i, SimMenu.stack(item, 1 + random.nextInt(SimMenu.maxStackSize(item))));
+            }
+        }
+        List<SimMenu.Stack> original = copies(bundle.contents());
+        int size = original.size();
+        // A load is the one request an empty bundle still makes sense for
+        if (size == 0 && scenario != Scenario.LOAD) {
+            sent[0] = -1;
+            return null;
+        }
+        SimMenu.Stack[] before = new SimMenu.Stack[menu.size()];
+        for (int i = 0; i < menu.size(); i++) {
+            before[i] = menu.slot(i) != null ? menu.slot(i).copy() : null;
+        }
+        Map<Integer, Integer> itemsBefore = tally(Arrays.asList(before));
+
+        int[] order = null;
+        // For NESTED, the nested bundle's position in ours; the plan is for its contents
+        int nestedAt = -1;
+        // The slots an EMPTY_INTO fills or a LOAD takes from
+        BitSet slots = new BitSet();
+        DestinationPlan destinations = null;
+        InsertPlan inserts = null;
+        ExtractionPlan plan;
+        switch (scenario) {
+            case EXTRACT -> plan = randomTargets(random, size);
+            case EMPTY_ALL -> plan = ExtractionPlan.forTargets(firstPositions(size));
+            case EMPTY_INTO -> {
+                // Into the chest, or into the player's inventory as the browser's Empty All does
+                boolean intoContainer = random.nextBoolean();
+                for (int i = 0; i < menu.size(); i++) {
+                    if (i != bundleSlot && menu.isPlayerSlot(i) != intoContainer) slots.set(i);
+                }
+                destinations = DestinationPlan.compute(menu, BundleHelper.getContents(menu.item(bundleSlot)), slots);
+                if (destinations.fitCount() == 0) {
+                    sent[0] = -1;
+                    return null;
+                }
+                plan = ExtractionPlan.forTargets(firstPositions(destinations.fitCount()));
+            }
+            case NESTED -> {
+                List<Integer> nested = nestedBundles(bundle);
+                if (nested.isEmpty()) {
+                    sent[0] = -1;
+                    return null;
+                }
+                nestedAt = nested.get(random.nextInt(nested.size()));
+                plan = randomTargets(random, original.get(nestedAt).contents().size());
+            }
+            case LOAD -> {
+                for (int i = 0; i < menu.size(); i++) {
+                    if (i != bundleSlot && menu.isPlayerSlot(i) && random.nextInt(4) != 0) slots.set(i);
+                }
+                Map<Item, Integer> uses = new HashMap<>();
+                for (int item = FIRST_ITEM; item < FIRST_ITEM + ITEM_TYPES; item++) {
+                    uses.put(SimMenu.realItem(item), random.nextInt(10));
+                }
+                inserts = InsertPlan.compute(menu, menu.item(bundleSlot), slots, item -> uses.getOrDefault(item, 0));
+                plan = ExtractionPlan.forTargets();
+            }
+            default -> {
+                order = new int[size];
+                for (int i = 0; i < size; i++) {
+                    order[i] = i;
+                }
+                // Mostly single drags, as in the browser, sometimes a whole new order
+                int drags = random.nextInt(4) == 0 ? size * 2 : 1 + random.nextInt(2);
+                for (int i = 0; i < drags; i++) {
+                    ReorderPlanner.move(order, random.nextInt(size), random.nextInt(size));
+                }
+                plan = ReorderPlanner.plan(order);
+                if (plan == null) {
+                    sent[0] = -1;
+                    return ReorderPlanner.movesNeeded(order) == 0 ? null : "no plan for an order that needs moves";
+                }
+                if (plan.popCount() != ReorderPlanner.movesNeeded(order)) {
+                    return "reorder pops " + plan.popCount() + ", needs " + ReorderPlanner.movesNeeded(order);
+                }
+            }
+        }
+
+        // With a slot for every pop the operation never runs out of room, and the checks below
+        // are exact. A nested extraction also stashes everything down to the nested bundle; a
+        // destination plan or a load only plans what fits. Without that room a reorder must
+        // not start, and anything else gives up or stops partway (see checkNoRoom)
+        int pops = plan.popCount() + (nestedAt >= 0 ? nestedAt + 1 : 0);
+        boolean roomy = destinations != null || inserts != null || emptyPlayerSlots(menu, bundleSlot) >= pops;
+        // The nested bundle goes back by carrying ours to it, so ours must be free to pick up
+        boolean canCarry = nestedAt >= 0 || random.nextBoolean();
+        if (!canCarry) menu.lock(bundleSlot);
+        boolean keepOnCursor = random.nextBoolean();
+        int listenersBefore = MenuSlotEvents.listenerCount();
+        BundleOperation operation = switch (scenario) {
+            case EMPTY_ALL -> BundleOperation.emptyAll(menu, bundleSlot, size, () -> {});
+            case EMPTY_INTO -> BundleOperation.emptyInto(menu, bundleSlot, destinations, () -> {});
+            case NESTED -> BundleOperation.extractNested(menu, bundleSlot, new int[] {nestedAt}, plan,
+                    keepOnCursor, () -> {});
+            case LOAD -> BundleOperation.insert(menu, bundleSlot, inserts, () -> {});
+            default -> BundleOperation.extractNested(menu, bundleSlot, new int[0], plan, keepOnCursor, () -> {});
+        };
+        InputPacer pacer = new InputPacer(1 + random.nextInt(BundleBrowserConfig.INPUT_CEILING),
+                BundleBrowserConfig.INPUT_CEILING, random.nextBoolean());
+        Disturbance disturbance = random.nextInt(4) != 0
+                ? Disturbance.NONE : Disturbance.values()[1 + random.nextInt(Disturbance.values().length - 1)];
+        int closeTick = 1 + random.nextInt(8);
+        int reopenTick = disturbance == Disturbance.CLOSE_AND_REOPEN ? closeTick + 1 + random.nextInt(40) : -1;
+        // Now and then the server takes back a click the operation has not seen confirmed yet
+        boolean corrections = random.nextInt(4) == 0;
+        if (corrections) menu.allowCorrections();
+        boolean closed = false;
+        boolean corrected = false;
+        for (int tick = 1; tick <= MAX_TICKS && !operation.isFinished(); tick++) {
+            menu.advanceTick();
+            if (tick == closeTick && disturbance != Disturbance.NONE) {
+                closed = true;
+                if (disturbance == Disturbance.DISCONNECT) menu.disconnect(); else menu.close();
+            }
+            if (tick == reopenTick) menu.reopen();
+            if (corrections && random.nextInt(5) == 0 && menu.correct(random)) corrected = true;
+            pacer.onTick();
+            operation.tick(pacer);
+        }
+        sent[0] = menu.inputs();
+        ClickStrategy.Choice choice = operation.choice();
+        String request = inserts != null ? inserts.toString() : (nestedAt >= 0 ? "at " + nestedAt + " " : "") + plan;
+        String what = scenario + " " + request + " via " + choice.strategy() + (closed ? " with " + disturbance : "")
+                + (corrected ? " with corrections" : "") + " of " + describe(original);
+
+        // Whatever happened, the operation ends, unhooks itself and counts every input it sent,
+        // and each item is still somewhere: in a slot, a bundle, on the cursor or dropped
+        if (!operation.isFinished()) {
+            return what + ": still " + operation.phase() + " after " + MAX_TICKS + " ticks";
+        }
+        if (MenuSlotEvents.listenerCount() != listenersBefore) {
+            return what + ": left " + (MenuSlotEvents.listenerCount() - listenersBefore) + " slot listeners behind";
+        }
+        if (operation.inputsSent() != menu.inputs()) {
+            return what + ": sent " + menu.inputs() + " inputs, counted " + operation.inputsSent();
+        }
+        List<SimMenu.Stack> everything = new ArrayList<>(menu.dropped());
+        everything.add(menu.cursor());
+        for (int i = 0; i < menu.size(); i++) {
+            everything.add(menu.slot(i));
+        }
+        if (!tally(everything).equals(itemsBefore)) {
+            return what + ": items went from " + itemsBefore + " to " + tally(everything);
+        }
+        if (closed || corrected) {
+            return checkDisturbed(what, closed ? disturbance : Disturbance.NONE, corrected, operation, menu, bundle);
+        }
+        if (inserts != null) {
+            return checkLoad(what, operation, menu, bundle, bundleSlot, before, slots, inserts, canCarry);
+        }
+        if (nestedAt >= 0) {
+            return checkNested(what, operation, menu, bundle, bundleSlot, before, original, nestedAt, plan, roomy);
+        }
+
+        if (!roomy && order != null) {
+            if (operation.phase() != BundleOperation.Phase.FAILED || menu.inputs() > 0) {
+                return what + ": started without a free slot per move";
+            }
+            for (int i = 0; i < menu.size(); i++) {
+                if (!same(menu.slot(i), before[i])) return what + ": slot " + i + " changed";
+            }
+            return null;
+        }
+        if (operation.phase() != BundleOperation.Phase.DONE) {
+            return what + ": ended " + operation.phase() + " after " + menu.inputs() + " inputs";
+        }
+        if (menu.slot(bundleSlot) != bundle) {
+            return what + ": bundle not back in its slot";
+        }
+        if (!roomy) {
+            return checkNoRoom(what, choice, menu, bundle, bundleSlot, before, original, plan, canCarry);
+        }
+
+        // A nested bundle can't go back by cursor, so ours is carried to it (one input more),
+        // or it stays out when our bundle can't be picked up
+        boolean carry = choice.strategy() == ClickStrategy.BUNDLE_ON_CURSOR;
+        List<Integer> leftOut = new ArrayList<>();
+        int bundleReturns = 0;
+        for (int position = 0; position < plan.popCount(); position++) {
+            if (carry || plan.keeps(position) || original.get(position).item() != SimMenu.BUNDLE) continue;
+            if (canCarry) bundleReturns++; else leftOut.add(position);
+        }
+        int expectedInputs = choice.expectedClicks() + bundleReturns
+                - leftOut.size() * ClickStrategy.CURSOR_ON_BUNDLE.returnInputs();
+        if (menu.inputs() != expectedInputs) {
+            return what + ": sent " + menu.inputs() + " inputs, expected " + expectedInputs;
+        }
+
+        List<SimMenu.Stack> expected = new ArrayList<>();
+        if (order != null) {
+            for (int target : order) {
+                if (!leftOut.contains(target)) expected.add(original.get(target));
+            }
+        } else {
+            for (int position = 0; position < size; position++) {
+                if (!plan.keeps(position) && !leftOut.contains(position)) expected.add(original.get(position));
+            }
+        }
+        if (!sameStacks(bundle.contents(), expected)) {
+            return what + ": bundle holds " + describe(bundle.contents()) + ", expected " + describe(expected);
+        }
+
+        // Every entry that stayed out sits alone in a slot that was empty, topped up a stack,
+        // or (the last target, if kept there) rides the cursor; no other slot changed
+        List<SimMenu.Stack> out = new ArrayList<>();
+        for (int position = 0; position < plan.popCount(); position++) {
+            if (plan.keeps(position) || leftOut.contains(position)) out.add(original.get(position));
+        }
+        if (menu.cursor() != null && (!choice.keepLastOnCursor() || !takeOut(out, menu.cursor(), null))) {
+            return what + ": left " + describe(List.of(menu.cursor())) + " on the cursor";
+        }
+        if (destinations != null) {
+            for (int i = 0; i < menu.size(); i++) {
+                if (i != bundleSlot && !slots.get(i) && !same(menu.slot(i), before[i])) {
+                    return what + ": slot " + i + " changed, though it is not on the side emptied into";
+                }
+            }
+        }
+        return checkOut(what, menu, bundleSlot, before, out);
+    }
+
+    /**
+     * Out of room partway: an extraction gives up and puts back what it can, Empty All stops
+     * where the inventory is full. Either way the bundle only lost entries, the rest in their
+     * old order: targets that found a slot, or bundles that could not go back without ours.
+     */
+    private static String checkNoRoom(String what, ClickStrategy.Choice choice, SimMenu menu, SimMenu.Stack bundle,
+            int bundleSlot, SimMenu.Stack[] before, List<SimMenu.Stack> original, ExtractionPlan plan,
+            boolean canCarry) {
+        boolean strandsBundles = !canCarry && choice.strategy() != ClickStrategy.BUNDLE_ON_CURSOR;
+        List<Integer> removed = removed(bundle.contents(), original, position -> plan.keeps(position)
+                || (strandsBundles && original.get(position).item() == SimMenu.BUNDLE));
+        if (removed == null) {
+            return what + ": bundle holds " + describe(bundle.contents()) + ", not what it held less some targets";
+        }
+        List<SimMenu.Stack> out = new ArrayList<>();
+        for (int position : removed) {
+            out.add(original.get(position));
+        }
+        if (menu.cursor() != null && (!choice.keepLastOnCursor() || !takeOut(out, menu.cursor(), null))) {
+            return what + ": left " + describe(List.of(menu.cursor())) + " on the cursor";
+        }
+        return checkOut(what, menu, bundleSlot, before, out);
+    }
+
+    /**
+     * A nested extraction: only targets inside the nested bundle come out (with room, all of
+     * them); everything above it in ours, and the nested bundle itself, goes back where it was.
+     */
+    private static String checkNested(String what, BundleOperation operation, SimMenu menu, SimMenu.Stack bundle,
+            int bundleSlot, SimMenu.Stack[] before, List<SimMenu.Stack> original, int nestedAt, ExtractionPlan plan,
+            boolean roomy) {
+        if (operation.phase() != BundleOperation.Phase.DONE) {
+            return what + ": ended " + operation.phase() + " after " + menu.inputs() + " inputs";
+        }
+        List<SimMenu.Stack> nestedContents = original.get(nestedAt).contents();
+        if (roomy) {
+            // Each bundle entry that goes back costs one input more than planned when ours is
+            // not the one carried, and which level carries is up to each level's own strategy
+            int bundleEntries = 0;
+            for (int position = 0; position <= nestedAt; position++) {
+                if (original.get(position).item() == SimMenu.BUNDLE) bundleEntries++;
+            }
+            for (int position = 0; position < plan.popCount(); position++) {
+                if (!plan.keeps(position) && nestedContents.get(position).item() == SimMenu.BUNDLE) bundleEntries++;
+            }
+            int expected = operation.expectedClicks();
+            if (menu.inputs() < expected || menu.inputs() > expected + bundleEntries) {
+                return what + ": sent " + menu.inputs() + " inputs, expected " + expected
+                        + " plus up to " + bundleEntries;
+            }
+        }
+        if (menu.slot(bundleSlot) != bundle) {
+            return what + ": bundle not back in its slot";
+        }
+        if (menu.cursor() != null) {
+            return what + ": left " + describe(List.of(menu.cursor())) + " on the cursor";
+        }
+
+        List<SimMenu.Stack> contents = bundle.contents();
+        SimMenu.Stack nested = contents.size() == original.size() ? contents.get(nestedAt) : null;
+        if (nested == null || nested.item() != SimMenu.BUNDLE) {
+            return what + ": bundle holds " + describe(contents) + ", no nested bundle at " + nestedAt;
+        }
+        for (int position = 0; position < original.size(); position++) {
+            if (position != nestedAt && !same(contents.get(position), original.get(position))) {
+                return what + ": bundle holds " + describe(contents) + " around the nested one";
+            }
+        }
+        List<Integer> removed = removed(nested.contents(), nestedContents, plan::keeps);
+        if (removed == null || (roomy && removed.size() != plan.keptCount())) {
+            return what + ": nested bundle holds " + describe(nested.contents());
+        }
+        List<SimMenu.Stack> out = new ArrayList<>();
+        for (int position : removed) {
+            out.add(nestedContents.get(position));
+        }
+        return checkOut(what, menu, bundleSlot, before, out);
+    }
+
+    /**
+     * A load: the bundle went out and came back, and every slot that changed is a source that
+     * gave up items, as many in all as the plan said would fit. A bundle that can't be picked
+     * up loads nothing.
+     */
+    private static String checkLoad(String what, BundleOperation operation, SimMenu menu, SimMenu.Stack bundle,
+            int bundleSlot, SimMenu.Stack[] before, BitSet sources, InsertPlan inserts, boolean canCarry) {
+        if (operation.phase() != BundleOperation.Phase.DONE) {
+            return what + ": ended " + operation.phase() + " after " + menu.inputs() + " inputs";
+        }
+        int expectedInputs = canCarry ? inserts.expectedClicks() : 0;
+        if (menu.inputs() != expectedInputs) {
+            return what + ": sent " + menu.inputs() + " inputs, expected " + expectedInputs;
+        }
+        if (menu.slot(bundleSlot) != bundle) {
+            return what + ": bundle not back in its slot";
+        }
+        if (menu.cursor() != null) {
+            return what + ": left " + describe(List.of(menu.cursor())) + " on the cursor";
+        }
+        int loaded = 0;
+        for (int i = 0; i < menu.size(); i++) {
+            SimMenu.Stack now = menu.slot(i);
+            if (i == bundleSlot || same(now, before[i])) continue;
+            boolean gaveUp = sources.get(i) && before[i] != null
+                    && (now == null || (now.item() == before[i].item() && now.count() < before[i].count()));
+            if (!gaveUp) {
+                return what + ": slot " + i + " changed to " + (now == null ? "nothing" : describe(List.of(now)));
+            }
+            loaded += before[i].count() - (now == null ? 0 : now.count());
+        }
+        int planned = canCarry ? inserts.itemsThatFit() : 0;
+        if (loaded != planned) {
+            return what + ": loaded " + loaded + " items, planned " + planned;
+        }
+        return null;
+    }
+
+    /**
+     * After the menu closed or the server took back a click partway: an operation that could
+     * not get its menu back must have failed, and one that finished left nothing on the
+     * cursor but a target it kept there. Where stashed entries went is up to how far it got;
+     * the item count covers them.
+     */
+    private static String checkDisturbed(String what, Disturbance disturbance, boolean corrected,
+            BundleOperation operation, SimMenu menu, SimMenu.Stack bundle) {
+        if (disturbance == Disturbance.CLOSE_FOR_GOOD || disturbance == Disturbance.DISCONNECT) {
+            return operation.phase() == BundleOperation.Phase.FAILED ? null
+                    : what + ": ended " + operation.phase() + " without its menu";
+        }
+        if (operation.phase() != BundleOperation.Phase.DONE) return null;
+        if (menu.cursor() != null && !operation.choice().keepLastOnCursor()) {
+            return what + ": left " + describe(List.of(menu.cursor())) + " on the cursor";
+        }
+        // A correction puts back copies of the stacks it undoes, ours among them
+        if (corrected) return null;
+        for (int i = 0; i < menu.size(); i++) {
+            if (menu.slot(i) == bundle) return null;
+        }
+        return what + ": bundle is in no slot";
+    }
+
+    /** Every slot but the bundle's is as it was, or took one of the entries out. */
+    private static String checkOut(String what, SimMenu menu, int bundleSlot, SimMenu.Stack[] before,
+            List<SimMenu.Stack> out) {
+        for (int i = 0; i < menu.size(); i++) {
+            if (i == bundleSlot || same(menu.slot(i), before[i])) continue;
+            if (!takeOut(out, menu.slot(i), before[i])) {
+                return what + ": slot " + i + " changed to "
+                        + (menu.slot(i) == null ? "nothing" : describe(List.of(menu.slot(i))));
+            }
+        }
+        if (!out.isEmpty()) {
+            return what + ": " + describe(out) + " never came out";
+        }
+        return null;
+    }
+
+    /**
+     * Which positions of was are missing from now, if now is was with some entries taken out
+     * and the rest in their old order, taking out only positions droppable allows; null if not.
+     */
+    private static List<Integer> removed(List<SimMenu.Stack> now, List<SimMenu.Stack> was, IntPredicate droppable) {
+        // matches[p][n]: was from position p on can still turn into now from index n on
+        boolean[][] matches = new boolean[was.size() + 1][now.size() + 1];
+        matches[was.size()][now.size()] = true;
+        for (int p = was.size() - 1; p >= 0; p--) {
+            for (int n = now.size(); n >= 0; n--) {
+                matches[p][n] = (droppable.test(p) && matches[p + 1][n])
+                        || (n < now.size() && same(now.get(n), was.get(p)) && matches[p + 1][n + 1]);
+            }
+        }
+        if (!matches[0][0]) return null;
+        List<Integer> removed = new ArrayList<>();
+        for (int p = 0, n = 0; p < was.size(); p++) {
+            if (droppable.test(p) && matches[p + 1][n]) {
+                removed.add(p);
+            } else {
+                n++;
+            }
+        }
+        return removed;
+    }
+
+    /** Removes the entry that turned a slot's old stack into its new one from out; false if none did. */
+    private static boolean takeOut(List<SimMenu.Stack> out, SimMenu.Stack now, SimMenu.Stack before) {
+        for (int i = 0; i < out.size(); i++) {
+            SimMenu.Stack entry = out.get(i);
+            boolean added = before == null ? same(now, entry)
+                    : now != null && now.contents() == null && now.item() == before.item()
+                            && entry.item() == now.item() && now.count() - before.count() == entry.count();
+            if (added) {
+                out.remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int emptyPlayerSlots(SimMenu menu, int bundleSlot) {
+        int empty = 0;
+        for (int i = 0; i < menu.size(); i++) {
+            if (i != bundleSlot && menu.isPlayerSlot(i) && menu.slot(i) == null) empty++;
+        }
+        return empty;
+    }
+
+    private static int[] firstPositions(int count) {
+        int[] positions = new int[count];
+        for (int i = 0; i < count; i++) {
+            positions[i] = i;
+        }
+        return positions;
+    }
+
+    private static ExtractionPlan randomTargets(Random random, int size) {
+        List<Integer> targets = new ArrayList<>();
+        int wanted = 1 + random.nextInt(Math.min(size, 6));
+        while (targets.size() < wanted) {
+            int target = random.nextInt(size);
+            if (!targets.contains(target)) targets.add(target);
+        }
+        return ExtractionPlan.forTargets(targets.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    /** Positions in the bundle holding a bundle with something in it. */
+    private static List<Integer> nestedBundles(SimMenu.Stack bundle) {
+        List<Integer> positions = new ArrayList<>();
+        for (int position = 0; position < bundle.contents().size(); position++) {
+            SimMenu.Stack entry = bundle.contents().get(position);
+            if (entry.item() == SimMenu.BUNDLE && !entry.contents().isEmpty()) positions.add(position);
+        }
+        return positions;
+    }
+
+    /** Item counts over the stacks and everything inside the bundles among them. */
+    private static Map<Integer, Integer> tally(List<SimMenu.Stack> stacks) {
+        Map<Integer, Integer> counts = new HashMap<>();
+        for (SimMenu.Stack stack : stacks) {
+            tally(stack, counts);
+        }
+        return counts;
+    }
+
+    private static void tally(SimMenu.Stack stack, Map<Integer, Integer> counts) {
+        if (stack == null) return;
+        counts.merge(stack.item(), stack.count(), Integer::sum);
+        if (stack.contents() != null) {
+            for (SimMenu.Stack entry : stack.contents()) {
+                tally(entry, counts);
+            }
+        }
+    }
+
+    private static SimMenu.Stack randomBundle(Random random, int inserts) {
+        SimMenu.Stack bundle = SimMenu.stack(SimMenu.BUNDLE, 1);
+        for (int i = 0; i < inserts; i++) {
+            SimMenu.Stack entry;
+            if (random.nextInt(12) == 0) {
+                entry = randomBundle(random, random.nextInt(3));
+            } else {
+                int item = randomItem(random);
+                entry = SimMenu.stack(item, 1 + random.nextInt(SimMenu.maxStackSize(item)));
+            }
+            SimMenu.insert(bundle, entry);
+        }
+        return bundle;
+    }
+
+    private static int randomItem(Random random) {
+        return FIRST_ITEM + random.nextInt(ITEM_TYPES);
+    }
+
+    private static List<SimMenu.Stack> copies(List<SimMenu.Stack> stacks) {
+        List<SimMenu.Stack> copies = new ArrayList<>(stacks.size());
+        for (SimMenu.Stack stack : stacks) {
+            copies.add(stack.copy());
+        }
+        return copies;
+    }
+
+    private static boolean sameStacks(List<SimMenu.Stack> a, List<SimMenu.Stack> b) {
+        if (a.size() != b.size()) return false;
+        for (int i = 0; i < a.size(); i++) {
+            if (!same(a.get(i), b.get(i))) return false;
+        }
+        return true;
+    }
+
+    static boolean same(SimMenu.Stack a, SimMenu.Stack b) {
+        if (a == null || b == null) return a == b;
+        if (a.item() != b.item() || a.count() != b.count()) return false;
+        return a.contents() == null || sameStacks(a.contents(), b.contents());
+    }
+
+    static String describe(List<SimMenu.Stack> stacks) {
+        StringBuilder text = new StringBuilder("[");
+        for (SimMenu.Stack stack : stacks) {
+            if (text.length() > 1) text.append(", ");
+            text.append(stack.item() == SimMenu.BUNDLE ? "bundle" + describe(stack.contents())
+                    : stack.item() + "x" + stack.count());
+        }
+        return text.append(']').toString();
+    }
+}
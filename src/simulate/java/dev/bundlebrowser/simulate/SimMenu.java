@@ -0,0 +1,521 @@
+package dev.bundlebrowser.simulate;
+
+import dev.bundlebrowser.operation.MenuView;
+import dev.bundlebrowser.util.MenuSlotEvents;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import net.minecraft.SharedConstants;
+import net.minecraft.core.component.DataComponents;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.server.Bootstrap;
+import net.minecraft.world.inventory.AbstractContainerMenu;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.Items;
+import net.minecraft.world.item.component.BundleContents;
+
+/**
+ * A container menu modelled in plain Java: slots, a cursor and bundles, with vanilla's click
+ * rules for PICKUP, SWAP and QUICK_MOVE, including the ones bundles add. Items are ints; item
+ * {@link #BUNDLE} is a bundle, and its contents are a list with the next entry to pop first.
+ *
+ * Slots below {@link #containerSlots} are the container's side, the rest the player's
+ * inventory with the hotbar as its last nine, as in a chest menu.
+ *
+ * As a {@link MenuView} it shows every stack as the real ItemStack it stands for (see
+ * {@link #realItem}), bundles with real BundleContents, so BundleOperation runs against it
+ * unchanged. That needs the game's registries: call {@link #bootstrap} first. Like the
+ * game's menus it can {@link #close} under a running operation, and the server can
+ * {@link #correct} a click the operation has not seen confirmed yet.
+ */
+public final class SimMenu implements MenuView {
+    public static final int BUNDLE = 0;
+    // A bundle holds one full stack's worth of weight; weights are in 1/64ths of that
+    public static final int BUNDLE_WEIGHT = 64;
+
+    /** One slot's stack. A bundle carries its contents; any other item has none. */
+    public static final class Stack {
+        final int item;
+        int count;
+        final List<Stack> contents;
+
+        Stack(int item, int count) {
+            this.item = item;
+            this.count = count;
+            this.contents = item == BUNDLE ? new ArrayList<>() : null;
+        }
+
+        public int item() {
+            return item;
+        }
+
+        public int count() {
+            return count;
+        }
+
+        public List<Stack> contents() {
+            return contents;
+        }
+
+        Stack copy() {
+            Stack copy = new Stack(item, count);
+            if (contents != null) {
+                for (Stack entry : contents) {
+                    copy.contents.add(entry.copy());
+                }
+            }
+            return copy;
+        }
+    }
+
+    private record Click(int slotId, int button, int tick, Stack[] slotsBefore, Stack cursorBefore) {}
+
+    // Real items per stack size (64, 16, 1): a few picked by hand, then for 64 every other
+    // item stacking to 64, so a bundle can hold 64 different entries
+    private static final List<List<Item>> REAL_ITEMS = new ArrayList<>();
+
+    private final Stack[] slots;
+    private final int containerSlots;
+    // The ItemStacks shown for slots and cursor, built when read and dropped when they change
+    private final ItemStack[] shown;
+    private ItemStack shownCursor;
+    private final BitSet locked = new BitSet();
+    private Stack cursor;
+    private int inputs;
+    private boolean open = true;
+    private boolean playerGone;
+    private int stateId;
+    private int tick;
+    // Null unless corrections are on: the clicks of this tick and the last, oldest first,
+    // each with the menu as it was before it
+    private List<Click> inFlight;
+    // What a closing menu could not fit back into the inventory, dropped at the player's feet
+    private final List<Stack> dropped = new ArrayList<>();
+
+    public SimMenu(int containerSlots, int playerSlots) {
+        this.slots = new Stack[containerSlots + playerSlots];
+        this.shown = new ItemStack[slots.length];
+        this.containerSlots = containerSlots;
+    }
+
+    /** Starts the game's registries once, for the ItemStacks this menu shows. */
+    public static synchronized void bootstrap() {
+        if (!REAL_ITEMS.isEmpty()) return;
+        SharedConstants.tryDetectVersion();
+        Bootstrap.bootStrap();
+        List<Item> stacking = new ArrayList<>(List.of(Items.STONE, Items.DIRT, Items.COBBLESTONE));
+        for (Item item : BuiltInRegistries.ITEM) {
+            if (item.getDefaultMaxStackSize() == 64 && item != Items.AIR && !stacking.contains(item)) {
+                stacking.add(item);
+            }
+        }
+        REAL_ITEMS.add(stacking);
+        REAL_ITEMS.add(List.of(Items.ENDER_PEARL, Items.SNOWBALL, Items.EGG));
+        REAL_ITEMS.add(List.of(Items.DIAMOND_SWORD, Items.SHEARS, Items.IRON_PICKAXE));
+    }
+
+    /** The real item a simulator item stands for: id % 3 picks the stack size, id / 3 the item. */
+    public static Item realItem(int item) {
+        if (item == BUNDLE) return Items.BUNDLE;
+        List<Item> items = REAL_ITEMS.get(item % 3);
+        if (item / 3 - 1 >= items.size()) {
+            throw new IllegalArgumentException("No real item for simulator item " + item);
+        }
+        return items.get(item / 3 - 1);
+    }
+
+    /** The stack as the game would hold it; bundles get their contents as vanilla inserts them. */
+    public static ItemStack toItemStack(Stack stack) {
+        if (stack == null) return ItemStack.EMPTY;
+        ItemStack real = new ItemStack(realItem(stack.item), stack.count);
+        if (stack.item == BUNDLE) {
+            BundleContents.Mutable contents = new BundleContents.Mutable(BundleContents.EMPTY);
+            // Bottom entry first, so the last one in is the first to pop, as in the simulator
+            for (int i = stack.contents.size() - 1; i >= 0; i--) {
+                contents.tryInsert(toItemStack(stack.contents.get(i)));
+            }
+            real.set(DataComponents.BUNDLE_CONTENTS, contents.toImmutable());
+        }
+        return real;
+    }
+
+    /** Stack size for an item: a few stack to 64, some to 16, the rest not at all. */
+    public static int maxStackSize(int item) {
+        if (item == BUNDLE) return 1;
+        return switch (item % 3) {
+            case 0 -> 64;
+            case 1 -> 16;
+            default -> 1;
+        };
+    }
+
+    /** What an entry weighs inside a bundle; a bundle inside a bundle weighs what it holds plus 4. */
+    public static int weight(Stack stack) {
+        if (stack.item == BUNDLE) return 4 + occupancy(stack);
+        return stack.count * (64 / maxStackSize(stack.item));
+    }
+
+    private static int occupancy(Stack bundle) {
+        int total = 0;
+        for (Stack entry : bundle.contents) {
+            total += weight(entry);
+        }
+        return total;
+    }
+
+    public int size() {
+        return slots.length;
+    }
+
+    @Override
+    public boolean isPlayerSlot(int slotId) {
+        return slotId >= containerSlots;
+    }
+
+    public Stack slot(int slotId) {
+        return slots[slotId];
+    }
+
+    public void set(int slotId, Stack stack) {
+        slots[slotId] = stack;
+        shown[slotId] = null;
+    }
+
+    /**
+     * Makes the slot refuse plain pick-ups and placements, like a locked slot. Clicks that go
+     * into or out of a bundle in it still work, so its bundle can't be carried, only clicked.
+     */
+    public void lock(int slotId) {
+        locked.set(slotId);
+    }
+
+    public Stack cursor() {
+        return cursor;
+    }
+
+    public int inputs() {
+        return inputs;
+    }
+
+    public List<Stack> dropped() {
+        return dropped;
+    }
+
+    /**
+     * Closes the menu, as another screen opening over it would. As in vanilla, the cursor's
+     * stack goes back into the player's inventory, hotbar first: topping up a stack of the
+     * same item, else into an empty slot, else it is dropped.
+     */
+    public void close() {
+        open = false;
+        // What the server answers for the clicks before this is settled once the menu is back
+        if (inFlight != null) inFlight.clear();
+        if (cursor == null) return;
+        Stack back = cursor;
+        cursor = null;
+        shownCursor = null;
+        int max = maxStackSize(back.item);
+        for (int slotId : playerSlotsHotbarFirst()) {
+            Stack inSlot = slots[slotId];
+            if (max > 1 && inSlot != null && inSlot.item == back.item && inSlot.count < max) {
+                int moved = Math.min(back.count, max - inSlot.count);
+                inSlot.count += moved;
+                back.count -= moved;
+                shown[slotId] = null;
+                if (back.count == 0) return;
+            }
+        }
+        for (int slotId : playerSlotsHotbarFirst()) {
+            if (slots[slotId] == null) {
+                slots[slotId] = back;
+                shown[slotId] = null;
+                return;
+            }
+        }
+        dropped.add(back);
+    }
+
+    /** Keeps what {@link #correct} needs from here on. */
+    public void allowCorrections() {
+        inFlight = new ArrayList<>();
+    }
+
+    /** A client tick passed; ticks date the clicks a correction can take back. */
+    public void advanceTick() {
+        tick++;
+    }
+
+    /**
+     * The server disagrees with one of the clicks sent this tick or the last, which no
+     * operation has taken as confirmed yet: it never happened, the clicks after it happened
+     * against what the server had instead, and the whole menu is sent again under a new
+     * stateId. False if there was no such click to take back.
+     */
+    public boolean correct(Random random) {
+        if (inFlight == null || !isOpen()) return false;
+        inFlight.removeIf(click -> click.tick < tick - 1);
+        if (inFlight.isEmpty()) return false;
+        int undone = random.nextInt(inFlight.size());
+        Click click = inFlight.get(undone);
+        System.arraycopy(click.slotsBefore, 0, slots, 0, slots.length);
+        cursor = click.cursorBefore;
+        for (Click later : inFlight.subList(undone + 1, inFlight.size())) {
+            click(later.slotId, later.button);
+        }
+        inFlight.clear();
+        stateId++;
+        Arrays.fill(shown, null);
+        shownCursor = null;
+        MenuSlotEvents.contentsReplaced(null);
+        return true;
+    }
+
+    /** The same menu is shown again, with the same slots. */
+    public void reopen() {
+        open = true;
+    }
+
+    /** The player leaves the world: the menu closes and can never come back. */
+    public void disconnect() {
+        close();
+        playerGone = true;
+    }
+
+    private int[] playerSlotsHotbarFirst() {
+        int[] order = new int[slots.length - containerSlots];
+        int hotbar = slots.length - 9;
+        int next = 0;
+        for (int i = hotbar; i < slots.length; i++) {
+            order[next++] = i;
+        }
+        for (int i = containerSlots; i < hotbar; i++) {
+            order[next++] = i;
+        }
+        return order;
+    }
+
+    public static Stack stack(int item, int count) {
+        return new Stack(item, count);
+    }
+
+    /**
+     * Puts an entry on top of the bundle the way vanilla does: as much of it as fits, into
+     * an existing entry of the same stackable item if there is one (which then moves to the
+     * top). So a bundle filled by play never holds two entries of one stackable item.
+     *
+     * @return how many items went in
+     */
+    public static int insert(Stack bundle, Stack entry) {
+        int room = BUNDLE_WEIGHT - occupancy(bundle);
+        int each = entry.item == BUNDLE ? weight(entry) : 64 / maxStackSize(entry.item);
+        int fits = Math.min(entry.count, room / each);
+        if (fits <= 0 || (entry.item == BUNDLE && entry == bundle)) return 0;
+        // Only stackable items merge into an entry already inside
+        if (maxStackSize(entry.item) > 1) {
+            for (int i = 0; i < bundle.contents.size(); i++) {
+                Stack existing = bundle.contents.get(i);
+                if (existing.item == entry.item) {
+                    bundle.contents.remove(i);
+                    existing.count += fits;
+                    bundle.contents.add(0, existing);
+                    entry.count -= fits;
+                    return fits;
+                }
+            }
+        }
+        Stack added = entry.copy();
+        added.count = fits;
+        bundle.contents.add(0, added);
+        entry.count -= fits;
+        return fits;
+    }
+
+    @Override
+    public AbstractContainerMenu menu() {
+        return null;
+    }
+
+    // Moves only when a correction comes in
+    @Override
+    public int stateId() {
+        return stateId;
+    }
+
+    @Override
+    public int slotCount() {
+        return slots.length;
+    }
+
+    @Override
+    public ItemStack item(int slotId) {
+        if (shown[slotId] == null) {
+            shown[slotId] = toItemStack(slots[slotId]);
+        }
+        return shown[slotId];
+    }
+
+    @Override
+    public ItemStack carried() {
+        if (shownCursor == null) {
+            shownCursor = toItemStack(cursor);
+        }
+        return shownCursor;
+    }
+
+    @Override
+    public boolean mayPickup(int slotId) {
+        return !locked.get(slotId);
+    }
+
+    @Override
+    public boolean mayPlace(int slotId, ItemStack stack) {
+        return !locked.get(slotId);
+    }
+
+    @Override
+    public int maxStackSize(int slotId, ItemStack stack) {
+        return stack.getMaxStackSize();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open && !playerGone;
+    }
+
+    @Override
+    public boolean canResume() {
+        return !playerGone;
+    }
+
+    @Override
+    public void pickup(int slotId, int button) {
+        // The game would send it to whatever menu is open now; here that is a bug in the caller
+        if (!isOpen()) throw new IllegalStateException("Input on slot " + slotId + " while the menu is closed");
+        inputs++;
+        if (inFlight != null) {
+            inFlight.removeIf(click -> click.tick < tick - 1);
+            Stack[] slotsBefore = new Stack[slots.length];
+            for (int i = 0; i < slots.length; i++) {
+                slotsBefore[i] = slots[i] != null ? slots[i].copy() : null;
+            }
+            inFlight.add(new Click(slotId, button, tick, slotsBefore, cursor != null ? cursor.copy() : null));
+        }
+        click(slotId, button);
+    }
+
+    private void click(int slotId, int button) {
+        // A click only ever changes its slot and the cursor
+        shown[slotId] = null;
+        shownCursor = null;
+        Stack inSlot = slots[slotId];
+        // Bundle rules first, as in ItemStack.overrideStackedOnOther / overrideOtherStackedOnMe
+        if (cursor != null && cursor.item == BUNDLE) {
+            if (button == 0 && inSlot != null) {
+                insert(cursor, inSlot);
+                if (inSlot.count == 0) slots[slotId] = null;
+                return;
+            }
+            if (button == 1 && inSlot == null && !cursor.contents.isEmpty()) {
+                slots[slotId] = cursor.contents.remove(0);
+                return;
+            }
+        }
+        if (inSlot != null && inSlot.item == BUNDLE) {
+            if (button == 0 && cursor != null) {
+                insert(inSlot, cursor);
+                if (cursor.count == 0) cursor = null;
+                return;
+            }
+            // An empty bundle has nothing to pop, so the click picks the bundle itself up
+            if (button == 1 && cursor == null && !inSlot.contents.isEmpty()) {
+                cursor = inSlot.contents.remove(0);
+                return;
+            }
+        }
+        if (button == 0) {
+            leftClick(slotId, inSlot);
+        } else {
+            rightClick(slotId, inSlot);
+        }
+    }
+
+    private void leftClick(int slotId, Stack inSlot) {
+        if (locked.get(slotId)) return;
+        if (cursor == null) {
+            cursor = inSlot;
+            slots[slotId] = null;
+        } else if (inSlot == null) {
+            slots[slotId] = cursor;
+            cursor = null;
+        } else if (inSlot.item == cursor.item && inSlot.item != BUNDLE) {
+            int moved = Math.min(cursor.count, maxStackSize(inSlot.item) - inSlot.count);
+            inSlot.count += moved;
+            cursor.count -= moved;
+            if (cursor.count == 0) cursor = null;
+        } else {
+            slots[slotId] = cursor;
+            cursor = inSlot;
+        }
+    }
+
+    private void rightClick(int slotId, Stack inSlot) {
+        if (locked.get(slotId)) return;
+        if (cursor == null) {
+            if (inSlot == null) return;
+            int taken = (inSlot.count + 1) / 2;
+            cursor = new Stack(inSlot.item, taken);
+            inSlot.count -= taken;
+            if (inSlot.count == 0) slots[slotId] = null;
+        } else if (inSlot == null) {
+            slots[slotId] = new Stack(cursor.item, 1);
+            if (--cursor.count == 0) cursor = null;
+        } else if (inSlot.item == cursor.item && inSlot.count < maxStackSize(inSlot.item)) {
+            inSlot.count++;
+            if (--cursor.count == 0) cursor = null;
+        } else if (inSlot.item != cursor.item) {
+            slots[slotId] = cursor;
+            cursor = inSlot;
+        }
+    }
+
+    /** SWAP with a hotbar slot (number keys 1-9): the two slots trade stacks. */
+    public void swap(int slotId, int hotbar) {
+        inputs++;
+        int hotbarSlot = slots.length - 9 + hotbar;
+        shown[slotId] = null;
+        shown[hotbarSlot] = null;
+        Stack held = slots[hotbarSlot];
+        slots[hotbarSlot] = slots[slotId];
+        slots[slotId] = held;
+    }
+
+    /** QUICK_MOVE (shift-click): to the other side of the menu, topping up stacks first. */
+    public void quickMove(int slotId) {
+        inputs++;
+        Arrays.fill(shown, null);
+        Stack moving = slots[slotId];
+        if (moving == null) return;
+        int from = isPlayerSlot(slotId) ? 0 : containerSlots;
+        int to = isPlayerSlot(slotId) ? containerSlots : slots.length;
+        int max = maxStackSize(moving.item);
+        for (int i = from; i < to && moving.count > 0; i++) {
+            Stack target = slots[i];
+            if (target != null && target.item == moving.item && moving.item != BUNDLE && target.count < max) {
+                int moved = Math.min(moving.count, max - target.count);
+                target.count += moved;
+                moving.count -= moved;
+            }
+        }
+        for (int i = from; i < to && moving.count > 0; i++) {
+            if (slots[i] == null) {
+                slots[i] = moving.copy();
+                moving.count = 0;
+            }
+        }
+        if (moving.count == 0) slots[slotId] = null;
+    }
+}
@@ -0,0 +1,76 @@
+package dev.bundlebrowser.simulate;
+
+import dev.bundlebrowser.util.BundleHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import net.minecraft.core.component.DataComponents;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.Items;
+import net.minecraft.world.item.component.BundleContents;
+
+/**
+ * Fills real bundles (vanilla's BundleContents.Mutable) and simulated ones with the same
+ * random inserts, and compares them through BundleHelper.getContents. That checks three
+ * things at once: the simulator's insert rules, the weights behind them, and the FILO order
+ * BundleHelper relies on (the entry inserted last is the first one listed). A game update
+ * that changes any of them shows up here before it shows up as wrong clicks.
+ */
+final class VanillaBundleCheck {
+    private VanillaBundleCheck() {}
+
+    static List<String> run(long seed, int trials) {
+        SimMenu.bootstrap();
+
+        List<String> mismatches = new ArrayList<>();
+        for (int trial = 0; trial < trials; trial++) {
+            Random random = new Random(seed + trial);
+            SimMenu.Stack simulated = SimMenu.stack(SimMenu.BUNDLE, 1);
+            BundleContents.Mutable real = new BundleContents.Mutable(BundleContents.EMPTY);
+            Item lastInserted = null;
+            int inserts = 1 + random.nextInt(40);
+            for (int i = 0; i < inserts; i++) {
+                int item = 3 + random.nextInt(9);
+                int count = 1 + random.nextInt(SimMenu.maxStackSize(item));
+                int simulatedIn = SimMenu.insert(simulated, SimMenu.stack(item, count));
+                int realIn = real.tryInsert(new ItemStack(real(item), count));
+                if (simulatedIn != realIn) {
+                    mismatches.add("seed " + (seed + trial) + ": inserting " + count + " of " + real(item)
+                            + ", vanilla took " + realIn + ", the simulator " + simulatedIn);
+                    break;
+                }
+                if (realIn > 0) lastInserted = real(item);
+            }
+
+            ItemStack bundle = new ItemStack(Items.BUNDLE);
+            bundle.set(DataComponents.BUNDLE_CONTENTS, real.toImmutable());
+            List<ItemStack> contents = BundleHelper.getContents(bundle);
+            if (lastInserted != null && (contents.isEmpty() || contents.get(0).getItem() != lastInserted)) {
+                mismatches.add("seed " + (seed + trial) + ": BundleHelper lists "
+                        + (contents.isEmpty() ? "nothing" : contents.get(0).getItem()) + " first, but "
+                        + lastInserted + " went in last; the FILO assumption no longer holds");
+                continue;
+            }
+            if (!same(contents, simulated.contents())) {
+                mismatches.add("seed " + (seed + trial) + ": vanilla holds " + contents + ", the simulator "
+                        + BundleSimulation.describe(simulated.contents()));
+            }
+        }
+        return mismatches;
+    }
+
+    private static Item real(int item) {
+        return SimMenu.realItem(item);
+    }
+
+    private static boolean same(List<ItemStack> real, List<SimMenu.Stack> simulated) {
+        if (real.size() != simulated.size()) return false;
+        for (int i = 0; i < real.size(); i++) {
+            SimMenu.Stack entry = simulated.get(i);
+            if (real.get(i).getItem() != real(entry.item()) || real.get(i).getCount() != entry.count()) return false;
+        }
+        return true;
+    }
+}